@@ -0,0 +1,53 @@
+package com.payline.payment.template.jmh;
+
+import com.payline.payment.template.utils.EndpointTemplate;
+import com.payline.payment.template.utils.PartnerEndpoints;
+import com.payline.payment.template.utils.PartnerOperation;
+import com.payline.payment.template.utils.TemplateCardConstants;
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.message.BasicHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the construction of a capture request: URIBuilder with headers built on each call, as done before the
+ * endpoint templates, against the precompiled template. Run with -prof gc to compare the allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EndpointBenchmark {
+    private static final String PAYMENT_ID = "pay_1090001685_uniqueid_EUR";
+    private static final String AUTHENTICATION = "Basic cHNjX3Rlc3RfYXBpX2tleTo=";
+
+    private final PartnerEndpoints endpoints = new PartnerEndpoints("gzip, deflate");
+
+    @Benchmark
+    public HttpPost uriBuilder() throws URISyntaxException {
+        String path = "/" + TemplateCardConstants.PATH_VERSION + "/" + TemplateCardConstants.PATH + "/" + PAYMENT_ID
+                + "/" + TemplateCardConstants.PATH_CAPTURE + "/";
+        HttpPost post = new HttpPost(new URIBuilder()
+                .setScheme(TemplateCardConstants.SCHEME)
+                .setHost(TemplateCardConstants.PRODUCTION_URL)
+                .setPath(path)
+                .build());
+        post.setHeaders(new Header[]{
+                new BasicHeader("Content-Type", "application/json"),
+                new BasicHeader("Authorization", AUTHENTICATION),
+                new BasicHeader("Accept-Encoding", "gzip, deflate")
+        });
+        return post;
+    }
+
+    @Benchmark
+    public HttpPost template() throws URISyntaxException {
+        EndpointTemplate endpoint = endpoints.get(PartnerOperation.CAPTURE, false);
+        HttpPost post = new HttpPost(endpoint.createUri(PAYMENT_ID));
+        post.setHeaders(endpoint.createHeaders(AUTHENTICATION));
+        return post;
+    }
+}
@@ -0,0 +1,54 @@
+package com.payline.payment.template.jmh;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.payline.payment.template.bean.TemplatePaymentRequest;
+import com.payline.payment.template.bean.TemplatePaymentResponse;
+import com.payline.payment.template.utils.TemplateGson;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the reflective binding of Gson with the streaming adapters of the beans, on the JSON of an initiate request and
+ * of a captured payment. Run with -prof gc to compare the allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GsonBenchmark {
+    private static final String REQUEST = "{\"type\":\"TEMPLATE\",\"amount\":\"10.00\",\"currency\":\"EUR\","
+            + "\"redirect\":{\"success_url\":\"https://succesurl.com/\",\"failure_url\":\"http://cancelurl.com/\"},"
+            + "\"notification_url\":\"http://notificationurl.com/\",\"customer\":{\"id\":\"776551327175\",\"min_age\":\"18\","
+            + "\"kyc_level\":\"FULL\",\"country_restriction\":\"FR\"},\"submerchant_id\":\"1\",\"shop_id\":\"shop\",\"capture\":false}";
+    private static final String PAYMENT = "{\"object\":\"PAYMENT\",\"id\":\"pay_1000005843_testCorrelationId_EUR\","
+            + "\"created\":1521817281384,\"updated\":1521817281384,\"amount\":10.00,\"currency\":\"EUR\",\"status\":\"SUCCESS\","
+            + "\"type\":\"TEMPLATE\",\"redirect\":{\"success_url\":\"https://succesurl.com/\",\"failure_url\":\"http://cancelurl.com/\"},"
+            + "\"customer\":{\"id\":\"776551327175\"},\"notification_url\":\"http://notificationurl.com/\","
+            + "\"card_details\":[{\"serial\":\"0000000009903127\",\"type\":\"00002\",\"country\":\"FR\",\"currency\":\"EUR\",\"amount\":10.00}]}";
+
+    private final Gson reflective = new GsonBuilder().create();
+    private final Gson streaming = TemplateGson.getInstance();
+    // built from its JSON, the request beans are only created from Payline requests
+    private final TemplatePaymentRequest request = reflective.fromJson(REQUEST, TemplatePaymentRequest.class);
+
+    @Benchmark
+    public String writeReflective() {
+        return reflective.toJson(request);
+    }
+
+    @Benchmark
+    public String writeStreaming() {
+        return streaming.toJson(request);
+    }
+
+    @Benchmark
+    public TemplatePaymentResponse readReflective() {
+        return reflective.fromJson(PAYMENT, TemplatePaymentResponse.class);
+    }
+
+    @Benchmark
+    public TemplatePaymentResponse readStreaming() {
+        return streaming.fromJson(PAYMENT, TemplatePaymentResponse.class);
+    }
+}
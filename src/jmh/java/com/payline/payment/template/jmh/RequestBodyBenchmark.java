@@ -0,0 +1,79 @@
+package com.payline.payment.template.jmh;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import com.payline.payment.template.bean.TemplatePaymentRequest;
+import com.payline.payment.template.utils.HttpCompression;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.PooledEntity;
+import com.payline.payment.template.utils.RequestBufferPool;
+import com.payline.payment.template.utils.TemplateGson;
+import org.apache.http.HttpEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and sending of an initiate request body: through a String and a StringEntity, or straight into a pooled
+ * buffer sent without copy. Run with -prof gc to compare the allocations per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestBodyBenchmark {
+    private static final String REQUEST = "{\"type\":\"TEMPLATE\",\"amount\":\"10.00\",\"currency\":\"EUR\","
+            + "\"redirect\":{\"success_url\":\"https://succesurl.com/\",\"failure_url\":\"http://cancelurl.com/\"},"
+            + "\"notification_url\":\"http://notificationurl.com/\",\"customer\":{\"id\":\"776551327175\",\"min_age\":\"18\","
+            + "\"kyc_level\":\"FULL\",\"country_restriction\":\"FR\"},\"submerchant_id\":\"1\",\"shop_id\":\"shop\",\"capture\":false}";
+
+    // the socket, which only counts the bytes
+    private static final OutputStream SOCKET = new OutputStream() {
+        @Override
+        public void write(int b) {
+            // discarded
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // discarded
+        }
+    };
+
+    private final Gson parser = TemplateGson.getInstance();
+    // built from its JSON, the request beans are only created from Payline requests
+    private final TemplatePaymentRequest request = new GsonBuilder().create().fromJson(REQUEST, TemplatePaymentRequest.class);
+    private HttpCompression compression;
+    private RequestBufferPool buffers;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        HttpConfiguration configuration = new HttpConfiguration(new Properties());
+        HttpMetrics metrics = new HttpMetrics();
+        buffers = new RequestBufferPool(configuration, metrics);
+        compression = new HttpCompression(configuration, metrics, buffers);
+    }
+
+    @Benchmark
+    public long string() throws IOException {
+        HttpEntity entity = compression.createEntity(parser.toJson(request), false);
+        entity.writeTo(SOCKET);
+        return entity.getContentLength();
+    }
+
+    @Benchmark
+    public long pooled() throws IOException {
+        RequestBufferPool.Buffer buffer = buffers.acquire();
+        JsonWriter writer = new JsonWriter(buffer.getWriter());
+        parser.toJson(request, TemplatePaymentRequest.class, writer);
+        writer.flush();
+        PooledEntity entity = compression.createEntity(buffer, false);
+        entity.writeTo(SOCKET);
+        entity.release();
+        return entity.getContentLength();
+    }
+}
@@ -0,0 +1,73 @@
+package com.payline.payment.template.jmh;
+
+import com.payline.payment.template.bean.TemplateCaptureRequest;
+import com.payline.payment.template.bean.TemplatePaymentResponse;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.HttpTransports;
+import com.payline.payment.template.utils.InvalidRequestException;
+import com.payline.payment.template.utils.SimulatorHttpTransport;
+import com.payline.payment.template.utils.TemplateCardConstants;
+import com.payline.payment.template.utils.TemplateHttpClient;
+import com.payline.pmapi.bean.payment.ContractConfiguration;
+import com.payline.pmapi.bean.payment.ContractProperty;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of the whole client (policies, transport and parsing) on the retrieve and capture of a payment, against
+ * the partner simulator: in process to measure the plugin alone, or behind a loopback server to add the HTTP stack.
+ * The simulated latency is 0 by default, use -Dhttp.simulator.latency.median=... to load test with a realistic one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class SimulatorBenchmark {
+    @Param({SimulatorHttpTransport.IN_PROCESS, SimulatorHttpTransport.LOOPBACK})
+    public String mode;
+
+    private final AtomicLong payments = new AtomicLong();
+    private TemplateHttpClient client;
+    private ContractConfiguration contract;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.SIMULATOR_MODE, mode);
+        // the production settings are measured
+        properties.setProperty(HttpConfiguration.SIMULATOR_PRODUCTION, "true");
+        properties.setProperty(HttpConfiguration.SIMULATOR_LATENCY_MEDIAN, "0");
+        properties.setProperty(HttpConfiguration.SIMULATOR_OUTCOME_AUTHORIZED, "1");
+        properties.setProperty(HttpConfiguration.SIMULATOR_OUTCOME_CANCELED_CUSTOMER, "0");
+        properties.setProperty(HttpConfiguration.SIMULATOR_OUTCOME_EXPIRED, "0");
+        // the benchmark measures the plugin, not its protections
+        properties.setProperty(HttpConfiguration.RATE_LIMIT_ENABLED, "false");
+        properties.setProperty(HttpConfiguration.BULKHEAD_ENABLED, "false");
+        HttpConfiguration configuration = new HttpConfiguration(properties);
+        HttpMetrics metrics = new HttpMetrics();
+        client = new TemplateHttpClient(HttpTransports.create(HttpTransports.SIMULATOR, configuration, metrics), configuration, metrics);
+
+        contract = new ContractConfiguration("", new HashMap<>());
+        contract.getContractProperties().put(TemplateCardConstants.AUTHORISATIONKEY_KEY, new ContractProperty("psc_benchmark"));
+    }
+
+    @Benchmark
+    public TemplatePaymentResponse retrieveAndCapture() throws IOException, URISyntaxException, InvalidRequestException {
+        // unknown payments are created by the simulator
+        TemplateCaptureRequest request = new TemplateCaptureRequest("pay_" + payments.incrementAndGet(), contract);
+        client.retrievePaymentData(request, false);
+        return client.capture(request, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.getLifecycle().shutdown();
+    }
+}
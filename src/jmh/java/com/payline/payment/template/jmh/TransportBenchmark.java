@@ -0,0 +1,127 @@
+package com.payline.payment.template.jmh;
+
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.HttpTransport;
+import com.payline.payment.template.utils.HttpTransports;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the throughput of the apache and jdk transports on concurrent retrieve calls.
+ * By default the calls are sent to a loopback server which counts the connections it receives, reported with the
+ * requests as counters of each iteration. This server only speaks HTTP/1.1, the JDK has no HTTP/2 server: both
+ * transports then use a connection per concurrent call, and the HTTP/2 multiplexing of the jdk transport is not
+ * measured. Use -Dbenchmark.uri=https://... to target a real HTTP/2 endpoint for that; no connection is counted then.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class TransportBenchmark {
+    private static final byte[] PAYMENT = ("{\"object\":\"PAYMENT\",\"id\":\"pay_1090001685_uniqueid_EUR\",\"amount\":1.00,"
+            + "\"currency\":\"EUR\",\"status\":\"AUTHORIZED\",\"type\":\"TEMPLATE\"}").getBytes(StandardCharsets.UTF_8);
+
+    @Param({HttpTransports.APACHE, HttpTransports.JDK})
+    public String backend;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private HttpTransport transport;
+    private URI uri;
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Counters of each iteration, summed over the threads.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long requests;
+        private TransportBenchmark benchmark;
+        private boolean first;
+
+        @Setup(Level.Iteration)
+        public void setup(TransportBenchmark benchmark, ThreadParams threadParams) {
+            this.requests = 0;
+            this.benchmark = benchmark;
+            this.first = threadParams.getThreadIndex() == 0;
+        }
+
+        /**
+         * @return the connections used during the iteration, counted by the first thread only
+         */
+        public long connections() {
+            return first ? benchmark.connections.size() : 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String target = System.getProperty("benchmark.uri");
+        if (target == null) {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            executor = Executors.newFixedThreadPool(16);
+            server.setExecutor(executor);
+            server.createContext("/", exchange -> {
+                connections.add(exchange.getRemoteAddress());
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, PAYMENT.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(PAYMENT);
+                }
+            });
+            server.start();
+            target = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/payments/pay_1090001685_uniqueid_EUR/";
+        }
+        uri = URI.create(target);
+
+        transport = HttpTransports.create(backend, new HttpConfiguration(new Properties()), new HttpMetrics());
+        if (HttpTransports.JDK.equals(backend) && !"JdkHttpTransport".equals(transport.getClass().getSimpleName())) {
+            throw new IllegalStateException("the jdk transport needs Java 11 or later");
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetConnections() {
+        // the connections kept alive are counted again on their next request
+        connections.clear();
+    }
+
+    @Benchmark
+    public int retrieve(Counters counters) throws IOException {
+        HttpResponse response = transport.execute(new HttpGet(uri));
+        EntityUtils.consume(response.getEntity());
+        counters.requests++;
+        return response.getStatusLine().getStatusCode();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try {
+            transport.close();
+        } finally {
+            if (server != null) {
+                server.stop(0);
+                executor.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.payline.payment.template.bean;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Streaming adapters of the beans sent to and received from the partner, which replace the reflective binding of Gson.
+ * Each bean has its own adapter, written next to its fields: a field added to a bean must be added to its adapter too,
+ * which is checked by the tests comparing the output with the reflective adapters.
+ * The payment responses can be read without their unused fields, see {@link TemplatePaymentResponse.JsonAdapter}.
+ */
+public class BeanTypeAdapterFactory implements TypeAdapterFactory {
+    // the adapters of the nested beans are called directly, null values included
+    static final TypeAdapter<Redirect> REDIRECT = new Redirect.JsonAdapter().nullSafe();
+    static final TypeAdapter<Customer> CUSTOMER = new Customer.JsonAdapter().nullSafe();
+    static final TypeAdapter<CardDetail> CARD_DETAIL = new CardDetail.JsonAdapter().nullSafe();
+
+    private final TypeAdapter<TemplatePaymentResponse> paymentResponse;
+
+    public BeanTypeAdapterFactory() {
+        this(false);
+    }
+
+    /**
+     * @param skipUnused true to read the payment responses without the fields unused by the plugin
+     */
+    public BeanTypeAdapterFactory(boolean skipUnused) {
+        this.paymentResponse = new TemplatePaymentResponse.JsonAdapter(skipUnused).nullSafe();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        if (raw == TemplatePaymentResponse.class) {
+            return (TypeAdapter<T>) paymentResponse;
+        } else if (raw == TemplatePaymentRequest.class) {
+            TypeAdapter<TemplatePaymentRequest> reader = gson.getDelegateAdapter(this, TypeToken.get(TemplatePaymentRequest.class));
+            return (TypeAdapter<T>) new TemplatePaymentRequest.JsonAdapter(reader).nullSafe();
+        } else if (raw == TemplateCaptureRequest.class) {
+            TypeAdapter<TemplateCaptureRequest> reader = gson.getDelegateAdapter(this, TypeToken.get(TemplateCaptureRequest.class));
+            return (TypeAdapter<T>) new TemplateCaptureRequest.JsonAdapter(reader).nullSafe();
+        } else if (raw == Redirect.class) {
+            return (TypeAdapter<T>) REDIRECT;
+        } else if (raw == Customer.class) {
+            return (TypeAdapter<T>) CUSTOMER;
+        } else if (raw == CardDetail.class) {
+            return (TypeAdapter<T>) CARD_DETAIL;
+        }
+        return null;
+    }
+}
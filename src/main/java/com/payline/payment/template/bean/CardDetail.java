@@ -1,5 +1,11 @@
 package com.payline.payment.template.bean;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
 public class CardDetail {
     private String serial;
     private String type;
@@ -10,4 +16,51 @@ public class CardDetail {
     public String getSerial() {
         return serial;
     }
+
+    /**
+     * Streaming JSON adapter registered by {@link BeanTypeAdapterFactory}, writing the same JSON as the reflective adapter of Gson.
+     */
+    static final class JsonAdapter extends TypeAdapter<CardDetail> {
+        @Override
+        public void write(JsonWriter out, CardDetail value) throws IOException {
+            out.beginObject();
+            out.name("serial").value(value.serial);
+            out.name("type").value(value.type);
+            out.name("country").value(value.country);
+            out.name("currency").value(value.currency);
+            out.name("amount").value(value.amount);
+            out.endObject();
+        }
+
+        @Override
+        public CardDetail read(JsonReader in) throws IOException {
+            CardDetail value = new CardDetail();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "serial":
+                        value.serial = JsonFields.readString(in);
+                        break;
+                    case "type":
+                        value.type = JsonFields.readString(in);
+                        break;
+                    case "country":
+                        value.country = JsonFields.readString(in);
+                        break;
+                    case "currency":
+                        value.currency = JsonFields.readCurrency(in);
+                        break;
+                    case "amount":
+                        value.amount = JsonFields.readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
 }
+
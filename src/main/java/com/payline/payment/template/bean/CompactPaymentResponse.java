@@ -0,0 +1,144 @@
+package com.payline.payment.template.bean;
+
+import java.math.BigDecimal;
+
+/**
+ * What the services need of a payment response, and all they keep of it: a fraction of the heap of a
+ * {@link TemplatePaymentResponse}, whose values are all Strings, with its nested beans.
+ * <ul>
+ * <li>the status is an enum, the raw value is only kept when the status is unknown</li>
+ * <li>the amount is a number of hundredths, the format of the amounts exchanged with the partner (see
+ * {@link TemplatePaymentRequest#createAmount(int)})</li>
+ * <li>the dates are epoch milliseconds</li>
+ * <li>the currencies are shared by all the responses</li>
+ * <li>the redirect, the customer and the card details are dropped, except the auth url and the serial of the first card</li>
+ * </ul>
+ * An amount or a date the partner sends in another format is not a failure of the payment: it is kept as
+ * {@link #NO_AMOUNT} or {@link #NO_DATE}.
+ */
+public final class CompactPaymentResponse {
+    public static final long NO_AMOUNT = Long.MIN_VALUE;
+    public static final long NO_DATE = 0;
+
+    private final String id;
+    private final PaymentStatus status;
+    private final String unknownStatus;
+    private final long amount;
+    private final String currency;
+    private final long created;
+    private final String authUrl;
+    private final String cardSerial;
+    private final String code;
+    private final String message;
+    private final String number;
+
+    private CompactPaymentResponse(TemplatePaymentResponse response) {
+        this.id = response.getId();
+        this.status = PaymentStatus.of(response.getStatus());
+        this.unknownStatus = status == PaymentStatus.UNKNOWN ? response.getStatus() : null;
+        this.amount = toHundredths(response.getAmount());
+        this.currency = JsonFields.internCurrency(response.getCurrency());
+        this.created = toMillis(response.getCreated());
+        this.authUrl = response.getRedirect() == null ? null : response.getRedirect().getAuthUrl();
+        this.cardSerial = response.getCardDetails() == null || response.getCardDetails().isEmpty() || response.getFirstCardDetails() == null
+                ? null : response.getFirstCardDetails().getSerial();
+        this.code = response.getCode();
+        this.message = response.getMessage();
+        this.number = response.getNumber();
+    }
+
+    public static CompactPaymentResponse of(TemplatePaymentResponse response) {
+        return new CompactPaymentResponse(response);
+    }
+
+    /**
+     * @return the amount in hundredths, {@link #NO_AMOUNT} if it is missing, not a number or has a fraction of hundredth
+     */
+    static long toHundredths(String amount) {
+        if (amount == null) {
+            return NO_AMOUNT;
+        }
+        try {
+            return new BigDecimal(amount.trim()).movePointRight(2).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return NO_AMOUNT;
+        }
+    }
+
+    private static long toMillis(String date) {
+        if (date == null) {
+            return NO_DATE;
+        }
+        try {
+            return Long.parseLong(date.trim());
+        } catch (NumberFormatException e) {
+            return NO_DATE;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the status, null if the response has none (an error response)
+     */
+    public PaymentStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the status as sent by the partner
+     */
+    public String getStatusValue() {
+        return status == PaymentStatus.UNKNOWN ? unknownStatus : status == null ? null : status.getValue();
+    }
+
+    /**
+     * @return the amount in hundredths of the currency, {@link #NO_AMOUNT} if the response has none or not in hundredths
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the creation date in epoch milliseconds, {@link #NO_DATE} if the response has none
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    public String getAuthUrl() {
+        return authUrl;
+    }
+
+    /**
+     * @return the serial of the first card used to pay, null if there is none
+     */
+    public String getCardSerial() {
+        return cardSerial;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    /**
+     * @return true for an error response
+     */
+    public boolean isError() {
+        return code != null;
+    }
+}
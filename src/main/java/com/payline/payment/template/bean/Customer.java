@@ -1,8 +1,13 @@
 package com.payline.payment.template.bean;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.payline.payment.template.utils.TemplateCardConstants;
 
+import java.io.IOException;
+
 public class Customer {
     private String id;
     @SerializedName("min_age")
@@ -27,4 +32,54 @@ public class Customer {
         this.id = id;
         this.email = email;
     }
-}
\ No newline at end of file
+
+    private Customer() {
+        // read from JSON
+    }
+
+    /**
+     * Streaming JSON adapter registered by {@link BeanTypeAdapterFactory}, writing the same JSON as the reflective adapter of Gson.
+     */
+    static final class JsonAdapter extends TypeAdapter<Customer> {
+        @Override
+        public void write(JsonWriter out, Customer value) throws IOException {
+            out.beginObject();
+            out.name("id").value(value.id);
+            out.name("min_age").value(value.minAge);
+            out.name("kyc_level").value(value.kycLevel);
+            out.name("country_restriction").value(value.countryRestriction);
+            out.name("email").value(value.email);
+            out.endObject();
+        }
+
+        @Override
+        public Customer read(JsonReader in) throws IOException {
+            Customer value = new Customer();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        value.id = JsonFields.readString(in);
+                        break;
+                    case "min_age":
+                        value.minAge = JsonFields.readString(in);
+                        break;
+                    case "kyc_level":
+                        value.kycLevel = JsonFields.readString(in);
+                        break;
+                    case "country_restriction":
+                        value.countryRestriction = JsonFields.readString(in);
+                        break;
+                    case "email":
+                        value.email = JsonFields.readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.payline.payment.template.bean;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reading helpers shared by the JSON adapters of the beans, with the same leniency as the reflective adapters of Gson.
+ */
+final class JsonFields {
+    // a few hundred currencies exist, the map never grows beyond
+    private static final int MAX_CURRENCIES = 512;
+    private static final ConcurrentMap<String, String> CURRENCIES = new ConcurrentHashMap<>();
+
+    private JsonFields() {
+        // ras.
+    }
+
+    /**
+     * @return the string, number or boolean value as a String, null for a JSON null
+     */
+    static String readString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        } else if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    /**
+     * @return the currency, as the same String instance for all the responses
+     */
+    static String readCurrency(JsonReader in) throws IOException {
+        return internCurrency(readString(in));
+    }
+
+    static String internCurrency(String currency) {
+        if (currency == null) {
+            return null;
+        }
+        String shared = CURRENCIES.get(currency);
+        if (shared != null) {
+            return shared;
+        }
+        if (CURRENCIES.size() >= MAX_CURRENCIES) {
+            return currency;
+        }
+        shared = CURRENCIES.putIfAbsent(currency, currency);
+        return shared == null ? currency : shared;
+    }
+
+    /**
+     * Skip a value which is not used.
+     *
+     * @return null
+     */
+    static <T> T skip(JsonReader in) throws IOException {
+        in.skipValue();
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+package com.payline.payment.template.bean;
+
+import com.payline.payment.template.utils.TemplateCardConstants;
+
+/**
+ * Status of a payment or of a refund at the partner.
+ */
+public enum PaymentStatus {
+    INITIATED("INITIATED"),
+    REDIRECTED("REDIRECTED"),
+    AUTHORIZED(TemplateCardConstants.STATUS_AUTHORIZED),
+    SUCCESS(TemplateCardConstants.STATUS_SUCCESS),
+    CANCELED_MERCHANT(TemplateCardConstants.STATUS_CANCELED_MERCHANT),
+    CANCELED_CUSTOMER(TemplateCardConstants.STATUS_CANCELED_CUSTOMER),
+    EXPIRED(TemplateCardConstants.STATUS_EXPIRED),
+    VALIDATION_SUCCESSFUL(TemplateCardConstants.STATUS_REFUND_SUCCESS),
+    // a status added by the partner since
+    UNKNOWN(null);
+
+    private static final PaymentStatus[] VALUES = values();
+
+    private final String value;
+
+    PaymentStatus(String value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the status sent by the partner, null for UNKNOWN
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @param value the status sent by the partner
+     * @return the matching status, UNKNOWN for any other value, null if there is no status
+     */
+    public static PaymentStatus of(String value) {
+        if (value == null) {
+            return null;
+        }
+        for (PaymentStatus status : VALUES) {
+            if (value.equals(status.value)) {
+                return status;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -1,9 +1,14 @@
 package com.payline.payment.template.bean;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.payline.payment.template.utils.InvalidRequestException;
 import com.payline.pmapi.bean.payment.Environment;
 
+import java.io.IOException;
+
 public class Redirect {
     @SerializedName("success_url")
     private String successUrl;
@@ -23,7 +28,50 @@ public class Redirect {
         this.failureUrl = environment.getRedirectionCancelURL();
     }
 
+    private Redirect() {
+        // read from JSON
+    }
+
     public String getAuthUrl() {
         return authUrl;
     }
+
+    /**
+     * Streaming JSON adapter registered by {@link BeanTypeAdapterFactory}, writing the same JSON as the reflective adapter of Gson.
+     */
+    static final class JsonAdapter extends TypeAdapter<Redirect> {
+        @Override
+        public void write(JsonWriter out, Redirect value) throws IOException {
+            out.beginObject();
+            out.name("success_url").value(value.successUrl);
+            out.name("failure_url").value(value.failureUrl);
+            out.name("auth_url").value(value.authUrl);
+            out.endObject();
+        }
+
+        @Override
+        public Redirect read(JsonReader in) throws IOException {
+            Redirect value = new Redirect();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "success_url":
+                        value.successUrl = JsonFields.readString(in);
+                        break;
+                    case "failure_url":
+                        value.failureUrl = JsonFields.readString(in);
+                        break;
+                    case "auth_url":
+                        value.authUrl = JsonFields.readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
 }
+
@@ -1,11 +1,17 @@
 package com.payline.payment.template.bean;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
 import com.payline.payment.template.utils.InvalidRequestException;
 import com.payline.payment.template.utils.TemplateCardConstants;
 import com.payline.pmapi.bean.payment.ContractConfiguration;
 import com.payline.pmapi.bean.payment.request.RedirectionPaymentRequest;
 import com.payline.pmapi.bean.payment.request.TransactionStatusRequest;
 
+import java.io.IOException;
+
 public class TemplateCaptureRequest extends TemplateRequest {
     private String paymentId;
 
@@ -27,4 +33,29 @@ public class TemplateCaptureRequest extends TemplateRequest {
     public String getPaymentId() {
         return paymentId;
     }
+
+    /**
+     * Streaming JSON adapter registered by {@link BeanTypeAdapterFactory}, writing the same JSON as the reflective adapter of
+     * Gson. Requests are never read by the plugin: reading is left to the reflective adapter.
+     */
+    static final class JsonAdapter extends TypeAdapter<TemplateCaptureRequest> {
+        private final TypeAdapter<TemplateCaptureRequest> reader;
+
+        JsonAdapter(TypeAdapter<TemplateCaptureRequest> reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public void write(JsonWriter out, TemplateCaptureRequest value) throws IOException {
+            out.beginObject();
+            out.name("paymentId").value(value.paymentId);
+            out.endObject();
+        }
+
+        @Override
+        public TemplateCaptureRequest read(JsonReader in) throws IOException {
+            return reader.read(in);
+        }
+    }
 }
+
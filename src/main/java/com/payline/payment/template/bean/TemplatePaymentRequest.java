@@ -1,7 +1,10 @@
 package com.payline.payment.template.bean;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.payline.payment.template.utils.DataChecker;
 import com.payline.payment.template.utils.InvalidRequestException;
 import com.payline.payment.template.utils.TemplateCardConstants;
@@ -13,6 +16,8 @@ import com.payline.pmapi.bean.payment.Environment;
 import com.payline.pmapi.bean.payment.request.PaymentRequest;
 import com.payline.pmapi.bean.refund.request.RefundRequest;
 
+import java.io.IOException;
+
 public class TemplatePaymentRequest extends TemplateRequest {
     private String type = "TEMPLATE";
     private String amount;
@@ -35,6 +40,7 @@ public class TemplatePaymentRequest extends TemplateRequest {
         super(request.getContractConfiguration());
         this.amount = "0.01";
         this.currency = "EUR";
+        setCheck(true);
 
         setCustomer("dumbId", request.getContractConfiguration());
     }
@@ -148,4 +154,40 @@ public class TemplatePaymentRequest extends TemplateRequest {
         this.capture = capture;
     }
 
+    /**
+     * Streaming JSON adapter registered by {@link BeanTypeAdapterFactory}, writing the same JSON as the reflective adapter of
+     * Gson (which ignores {@link Expose}, so the payment id is written when set). Requests are never read by the plugin:
+     * reading is left to the reflective adapter.
+     */
+    static final class JsonAdapter extends TypeAdapter<TemplatePaymentRequest> {
+        private final TypeAdapter<TemplatePaymentRequest> reader;
+
+        JsonAdapter(TypeAdapter<TemplatePaymentRequest> reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public void write(JsonWriter out, TemplatePaymentRequest value) throws IOException {
+            out.beginObject();
+            out.name("type").value(value.type);
+            out.name("amount").value(value.amount);
+            out.name("currency").value(value.currency);
+            out.name("redirect");
+            BeanTypeAdapterFactory.REDIRECT.write(out, value.redirect);
+            out.name("notification_url").value(value.notificationUrl);
+            out.name("customer");
+            BeanTypeAdapterFactory.CUSTOMER.write(out, value.customer);
+            out.name("submerchant_id").value(value.submerchantId);
+            out.name("shop_id").value(value.shopId);
+            out.name("paymentId").value(value.paymentId);
+            out.name("capture").value(value.capture);
+            out.endObject();
+        }
+
+        @Override
+        public TemplatePaymentRequest read(JsonReader in) throws IOException {
+            return reader.read(in);
+        }
+    }
 }
+
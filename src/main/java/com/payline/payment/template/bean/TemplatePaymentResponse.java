@@ -1,7 +1,14 @@
 package com.payline.payment.template.bean;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class TemplatePaymentResponse {
@@ -59,6 +66,13 @@ public class TemplatePaymentResponse {
         return status;
     }
 
+    /**
+     * @return the status, null if the response has none
+     */
+    public PaymentStatus getPaymentStatus() {
+        return PaymentStatus.of(status);
+    }
+
     public String getType() {
         return type;
     }
@@ -106,4 +120,140 @@ public class TemplatePaymentResponse {
     public String getRedirectURL() {
         return this.getRedirect().getAuthUrl();
     }
+
+    /**
+     * Streaming JSON adapter registered by {@link BeanTypeAdapterFactory}, reading and writing the same JSON as the
+     * reflective adapter of Gson. When the unused fields are skipped, object, updated, customer and the card details
+     * after the first one are not read.
+     */
+    static final class JsonAdapter extends TypeAdapter<TemplatePaymentResponse> {
+        private final boolean skipUnused;
+
+        JsonAdapter(boolean skipUnused) {
+            this.skipUnused = skipUnused;
+        }
+
+        @Override
+        public void write(JsonWriter out, TemplatePaymentResponse value) throws IOException {
+            out.beginObject();
+            out.name("object").value(value.object);
+            out.name("id").value(value.id);
+            out.name("created").value(value.created);
+            out.name("updated").value(value.updated);
+            out.name("amount").value(value.amount);
+            out.name("currency").value(value.currency);
+            out.name("status").value(value.status);
+            out.name("type").value(value.type);
+            out.name("redirect");
+            BeanTypeAdapterFactory.REDIRECT.write(out, value.redirect);
+            out.name("customer");
+            BeanTypeAdapterFactory.CUSTOMER.write(out, value.customer);
+            out.name("notification_url").value(value.notificationUrl);
+            out.name("subMerchant_id").value(value.subMerchantId);
+            out.name("card_details");
+            if (value.cardDetails == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (CardDetail cardDetail : value.cardDetails) {
+                    BeanTypeAdapterFactory.CARD_DETAIL.write(out, cardDetail);
+                }
+                out.endArray();
+            }
+            out.name("code").value(value.code);
+            out.name("message").value(value.message);
+            out.name("number").value(value.number);
+            out.name("param").value(value.param);
+            out.endObject();
+        }
+
+        @Override
+        public TemplatePaymentResponse read(JsonReader in) throws IOException {
+            TemplatePaymentResponse value = new TemplatePaymentResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "object":
+                        value.object = skipUnused ? JsonFields.skip(in) : JsonFields.readString(in);
+                        break;
+                    case "id":
+                        value.id = JsonFields.readString(in);
+                        break;
+                    case "created":
+                        value.created = JsonFields.readString(in);
+                        break;
+                    case "updated":
+                        value.updated = skipUnused ? JsonFields.skip(in) : JsonFields.readString(in);
+                        break;
+                    case "amount":
+                        value.amount = JsonFields.readString(in);
+                        break;
+                    case "currency":
+                        value.currency = JsonFields.readCurrency(in);
+                        break;
+                    case "status":
+                        value.status = JsonFields.readString(in);
+                        break;
+                    case "type":
+                        value.type = JsonFields.readString(in);
+                        break;
+                    case "redirect":
+                        value.redirect = BeanTypeAdapterFactory.REDIRECT.read(in);
+                        break;
+                    case "customer":
+                        value.customer = skipUnused ? JsonFields.skip(in) : BeanTypeAdapterFactory.CUSTOMER.read(in);
+                        break;
+                    case "notification_url":
+                        value.notificationUrl = JsonFields.readString(in);
+                        break;
+                    case "subMerchant_id":
+                        value.subMerchantId = JsonFields.readString(in);
+                        break;
+                    case "card_details":
+                        value.cardDetails = readCardDetails(in);
+                        break;
+                    case "code":
+                        value.code = JsonFields.readString(in);
+                        break;
+                    case "message":
+                        value.message = JsonFields.readString(in);
+                        break;
+                    case "number":
+                        value.number = JsonFields.readString(in);
+                        break;
+                    case "param":
+                        value.param = JsonFields.readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private List<CardDetail> readCardDetails(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<CardDetail> cardDetails = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                if (skipUnused && !cardDetails.isEmpty()) {
+                    in.skipValue();
+                } else {
+                    cardDetails.add(BeanTypeAdapterFactory.CARD_DETAIL.read(in));
+                }
+            }
+            in.endArray();
+            if (skipUnused) {
+                // only the first card is used
+                return cardDetails.isEmpty() ? Collections.emptyList() : Collections.singletonList(cardDetails.get(0));
+            }
+            return cardDetails;
+        }
+    }
 }
+
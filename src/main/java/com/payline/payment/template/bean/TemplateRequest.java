@@ -3,11 +3,14 @@ package com.payline.payment.template.bean;
 import com.payline.payment.template.utils.InvalidRequestException;
 import com.payline.payment.template.utils.TemplateCardConstants;
 import com.payline.pmapi.bean.payment.ContractConfiguration;
+import com.payline.pmapi.bean.payment.ContractProperty;
 
 import java.util.Base64;
 
 public abstract class TemplateRequest {
     private transient String authenticationHeader;
+    private transient boolean check;
+    private transient String merchantId;
 
     TemplateRequest(ContractConfiguration configuration) throws InvalidRequestException {
         if (configuration == null || configuration.getProperty(TemplateCardConstants.AUTHORISATIONKEY_KEY).getValue() == null) {
@@ -15,12 +18,32 @@ public abstract class TemplateRequest {
         } else {
             this.authenticationHeader = "Basic " + encodeToBase64(configuration.getProperty(TemplateCardConstants.AUTHORISATIONKEY_KEY).getValue());
         }
+        ContractProperty merchantIdProperty = configuration.getProperty(TemplateCardConstants.MERCHANT_ID_KEY);
+        this.merchantId = merchantIdProperty == null ? null : merchantIdProperty.getValue();
     }
 
     public String getAuthenticationHeader() {
         return authenticationHeader;
     }
 
+    /**
+     * @return the MERCHANT_ID contract property, null if it is not set
+     */
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    /**
+     * @return true if the request is only sent to check the contract parameters
+     */
+    public boolean isCheck() {
+        return check;
+    }
+
+    void setCheck(boolean check) {
+        this.check = check;
+    }
+
     public static String encodeToBase64(String toEncode) {
         if (toEncode == null) toEncode = "";
         return Base64.getEncoder().encodeToString(toEncode.getBytes());
@@ -136,7 +136,8 @@ public class ConfigurationServiceImpl implements ConfigurationService {
             return errors;
         }
 
-        try {
+        try (Deadline deadline = Deadline.start(HttpConfiguration.DEADLINE_CHECK);
+             HttpLifecycle.Flow flow = httpClient.startFlow()) {
             // create a CheckRequest
             TemplatePaymentRequest checkRequest = new TemplatePaymentRequest(contractParametersCheckRequest);
 
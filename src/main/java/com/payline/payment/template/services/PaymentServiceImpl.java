@@ -2,6 +2,10 @@ package com.payline.payment.template.services;
 
 import com.payline.payment.template.bean.TemplatePaymentRequest;
 import com.payline.payment.template.bean.TemplatePaymentResponse;
+import com.payline.payment.template.utils.CallRejectedException;
+import com.payline.payment.template.utils.Deadline;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpLifecycle;
 import com.payline.payment.template.utils.InvalidRequestException;
 import com.payline.payment.template.utils.TemplateCardConstants;
 import com.payline.payment.template.utils.TemplateErrorHandler;
@@ -28,7 +32,8 @@ public class PaymentServiceImpl implements PaymentService {
 
     @Override
     public PaymentResponse paymentRequest(PaymentRequest paymentRequest) {
-        try {
+        try (Deadline deadline = Deadline.start(HttpConfiguration.DEADLINE_PAYMENT);
+             HttpLifecycle.Flow flow = httpClient.startFlow()) {
             // create the payment request
             TemplatePaymentRequest request = new TemplatePaymentRequest(paymentRequest);
 
@@ -60,6 +65,9 @@ public class PaymentServiceImpl implements PaymentService {
                         .build();
             }
 
+        } catch (CallRejectedException e) {
+            logger.warn("payment not initiated: {}", e.getMessage());
+            return TemplateErrorHandler.getPaymentResponseFailure(e);
         } catch (IOException | URISyntaxException | InvalidRequestException e) {
             logger.error("unable init the payment: {}", e.getMessage(), e);
             return TemplateErrorHandler.getPaymentResponseFailure(FailureCause.INTERNAL_ERROR);
@@ -1,9 +1,14 @@
 package com.payline.payment.template.services;
 
+import com.payline.payment.template.bean.CompactPaymentResponse;
+import com.payline.payment.template.bean.PaymentStatus;
 import com.payline.payment.template.bean.TemplateCaptureRequest;
-import com.payline.payment.template.bean.TemplatePaymentResponse;
+import com.payline.payment.template.utils.CallRejectedException;
+import com.payline.payment.template.utils.Deadline;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpLifecycle;
 import com.payline.payment.template.utils.InvalidRequestException;
-import com.payline.payment.template.utils.TemplateCardConstants;
+import com.payline.payment.template.utils.RetryPolicy;
 import com.payline.payment.template.utils.TemplateErrorHandler;
 import com.payline.payment.template.utils.TemplateHttpClient;
 import com.payline.pmapi.bean.common.FailureCause;
@@ -32,19 +37,16 @@ public class PaymentWithRedirectionServiceImpl implements PaymentWithRedirection
 
     @Override
     public PaymentResponse finalizeRedirectionPayment(RedirectionPaymentRequest redirectionPaymentRequest) {
-        try {
+        try (Deadline deadline = Deadline.start(HttpConfiguration.DEADLINE_REDIRECTION);
+             HttpLifecycle.Flow flow = httpClient.startFlow()) {
             TemplateCaptureRequest request = createRequest(redirectionPaymentRequest);
             boolean isSandbox = redirectionPaymentRequest.getEnvironment().isSandbox();
 
-            // first try
-            PaymentResponse response = validatePayment(request, isSandbox);
-            if (PaymentResponseSuccess.class.equals(response.getClass())) {
-                return response;
-            } else {
-                // second try
-                return validatePayment(request, isSandbox);
-            }
-
+            // the retrieve and the capture are one flow: a drain does not cut it in the middle
+            return validatePayment(request, isSandbox);
+        } catch (CallRejectedException e) {
+            logger.warn("payment not finalized: {}", e.getMessage());
+            return TemplateErrorHandler.getPaymentResponseFailure(e);
         } catch (InvalidRequestException e) {
             logger.error("unable to finalize the payment: {}", e.getMessage(), e);
             return TemplateErrorHandler.getPaymentResponseFailure(FailureCause.INTERNAL_ERROR);
@@ -53,11 +55,15 @@ public class PaymentWithRedirectionServiceImpl implements PaymentWithRedirection
 
     @Override
     public PaymentResponse handleSessionExpired(TransactionStatusRequest transactionStatusRequest) {
-        try {
+        try (Deadline deadline = Deadline.start(HttpConfiguration.DEADLINE_REDIRECTION);
+             HttpLifecycle.Flow flow = httpClient.startFlow()) {
             TemplateCaptureRequest request = createRequest(transactionStatusRequest);
             boolean isSandbox = transactionStatusRequest.getEnvironment().isSandbox();
 
             return validatePayment(request, isSandbox);
+        } catch (CallRejectedException e) {
+            logger.warn("session expiration not handled: {}", e.getMessage());
+            return TemplateErrorHandler.getPaymentResponseFailure(e);
         } catch (InvalidRequestException e) {
             logger.error("unable to handle the session expiration: {}", e.getMessage(), e);
             return TemplateErrorHandler.getPaymentResponseFailure(FailureCause.INVALID_DATA);
@@ -86,22 +92,25 @@ public class PaymentWithRedirectionServiceImpl implements PaymentWithRedirection
         return new TemplateCaptureRequest(redirectionPaymentRequest);
     }
 
-    private PaymentResponse getErrorFromStatus(String status) {
+    private PaymentResponse getErrorFromStatus(PaymentStatus status) {
+        if (status == null) {
+            return TemplateErrorHandler.getPaymentResponseFailure(FailureCause.PARTNER_UNKNOWN_ERROR);
+        }
         switch (status) {
-            case TemplateCardConstants.STATUS_CANCELED_CUSTOMER:
+            case CANCELED_CUSTOMER:
                 return TemplateErrorHandler.getPaymentResponseFailure(FailureCause.CANCEL);
-            case TemplateCardConstants.STATUS_CANCELED_MERCHANT:
+            case CANCELED_MERCHANT:
                 return TemplateErrorHandler.getPaymentResponseFailure(FailureCause.CANCEL);
-            case TemplateCardConstants.STATUS_EXPIRED:
+            case EXPIRED:
                 return TemplateErrorHandler.getPaymentResponseFailure(FailureCause.SESSION_EXPIRED);
             default:
                 return TemplateErrorHandler.getPaymentResponseFailure(FailureCause.PARTNER_UNKNOWN_ERROR);
         }
     }
 
-    private PaymentResponseSuccess createResponseSuccess(TemplatePaymentResponse response) {
+    private PaymentResponseSuccess createResponseSuccess(CompactPaymentResponse response) {
         Card card = Card.CardBuilder.aCard()
-                .withPan(response.getFirstCardDetails().getSerial())
+                .withPan(response.getCardSerial())
                 .withExpirationDate(YearMonth.now())
                 .build();
 
@@ -116,28 +125,54 @@ public class PaymentWithRedirectionServiceImpl implements PaymentWithRedirection
                 .build();
     }
 
+    private static boolean hasTimeLeft() {
+        Deadline deadline = Deadline.current();
+        return deadline == null || deadline.remainingMillis() > 0;
+    }
+
     private PaymentResponse validatePayment(TemplateCaptureRequest request, boolean isSandbox) {
+        return validatePayment(request, isSandbox, true);
+    }
+
+    /**
+     * @param recover true to retrieve the payment again when the capture may have reached the partner but failed
+     */
+    private PaymentResponse validatePayment(TemplateCaptureRequest request, boolean isSandbox, boolean recover) {
         try {
-            // retrieve payment data
-            TemplatePaymentResponse response = httpClient.retrievePaymentData(request, isSandbox);
-            if (response.getCode() != null) {
+            // retrieve payment data, only what is used is kept
+            CompactPaymentResponse response = CompactPaymentResponse.of(httpClient.retrievePaymentData(request, isSandbox));
+            if (response.isError()) {
                 return TemplateErrorHandler.findError(response);
             } else {
                 // check if the payment has to be captured
-                if (TemplateCardConstants.STATUS_AUTHORIZED.equals(response.getStatus())) {
-                    response = httpClient.capture(request, isSandbox);
+                if (response.getStatus() == PaymentStatus.AUTHORIZED) {
+                    try {
+                        response = CompactPaymentResponse.of(httpClient.capture(request, isSandbox));
+                    } catch (IOException e) {
+                        // the http client only retries a capture which was not sent: once sent, the partner may
+                        // have captured the payment, its status tells
+                        if (!recover || e instanceof CallRejectedException || RetryPolicy.isConnectFailure(e) || !hasTimeLeft()) {
+                            throw e;
+                        }
+                        logger.warn("capture failed, retrieving the payment again: {}", e.getMessage());
+                        return validatePayment(request, isSandbox, false);
+                    }
                 }
 
-                if (response.getCode() != null) {
+                if (response.isError()) {
                     return TemplateErrorHandler.findError(response);
                 }
                 // check if the payment is well captured
-                if (TemplateCardConstants.STATUS_SUCCESS.equals(response.getStatus())) {
+                PaymentStatus status = response.getStatus();
+                if (status == PaymentStatus.SUCCESS) {
                     return createResponseSuccess(response);
                 } else {
-                    return getErrorFromStatus(response.getStatus());
+                    return getErrorFromStatus(status);
                 }
             }
+        } catch (CallRejectedException e) {
+            logger.warn("payment not validated: {}", e.getMessage());
+            return TemplateErrorHandler.getPaymentResponseFailure(e);
         } catch (IOException | URISyntaxException e) {
             logger.error("unable to validate the payment: {}", e.getMessage(), e);
             return TemplateErrorHandler.getPaymentResponseFailure(FailureCause.COMMUNICATION_ERROR);
@@ -1,9 +1,13 @@
 package com.payline.payment.template.services;
 
+import com.payline.payment.template.bean.CompactPaymentResponse;
+import com.payline.payment.template.bean.PaymentStatus;
 import com.payline.payment.template.bean.TemplatePaymentRequest;
-import com.payline.payment.template.bean.TemplatePaymentResponse;
+import com.payline.payment.template.utils.CallRejectedException;
+import com.payline.payment.template.utils.Deadline;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpLifecycle;
 import com.payline.payment.template.utils.InvalidRequestException;
-import com.payline.payment.template.utils.TemplateCardConstants;
 import com.payline.payment.template.utils.TemplateErrorHandler;
 import com.payline.payment.template.utils.TemplateHttpClient;
 import com.payline.pmapi.bean.common.FailureCause;
@@ -29,24 +33,25 @@ public class RefundServiceImpl implements RefundService {
     @Override
     public RefundResponse refundRequest(RefundRequest refundRequest) {
         String transactionId = refundRequest.getTransactionId();
-        try {
+        try (Deadline deadline = Deadline.start(HttpConfiguration.DEADLINE_REFUND);
+             HttpLifecycle.Flow flow = client.startFlow()) {
             boolean isSandbox = refundRequest.getEnvironment().isSandbox();
             TemplatePaymentRequest request = createRequest(refundRequest);
 
-            TemplatePaymentResponse response = client.refund(request, isSandbox);
+            CompactPaymentResponse response = CompactPaymentResponse.of(client.refund(request, isSandbox));
 
-            if (response.getCode() != null) {
+            if (response.isError()) {
                 return TemplateErrorHandler.findRefundError(response, transactionId);
-            } else if (!TemplateCardConstants.STATUS_REFUND_SUCCESS.equals(response.getStatus())) {
+            } else if (response.getStatus() != PaymentStatus.VALIDATION_SUCCESSFUL) {
                 return TemplateErrorHandler.getRefundResponseFailure(FailureCause.PARTNER_UNKNOWN_ERROR, transactionId);
             }
 
             updateRequest(request);
-            response = client.refund(request, isSandbox);
+            response = CompactPaymentResponse.of(client.refund(request, isSandbox));
 
-            if (response.getCode() != null) {
+            if (response.isError()) {
                 return TemplateErrorHandler.findRefundError(response, transactionId);
-            } else if (!TemplateCardConstants.STATUS_SUCCESS.equals(response.getStatus())) {
+            } else if (response.getStatus() != PaymentStatus.SUCCESS) {
                 return TemplateErrorHandler.getRefundResponseFailure(FailureCause.PARTNER_UNKNOWN_ERROR, transactionId);
             }
 
@@ -57,6 +62,9 @@ public class RefundServiceImpl implements RefundService {
                     .build();
 
 
+        } catch (CallRejectedException e) {
+            LOGGER.warn("refund not sent: {}", e.getMessage());
+            return TemplateErrorHandler.getRefundResponseFailure(e, transactionId);
         } catch (InvalidRequestException | URISyntaxException | IOException e) {
             LOGGER.error("unable to refund the payment: {}" , e.getMessage(), e);
             return TemplateErrorHandler.getRefundResponseFailure(FailureCause.CANCEL, transactionId);
@@ -0,0 +1,453 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.entity.ContentType;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.pool.PoolStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * HTTP transport based on Apache HttpClient 4.
+ * The default instance is shared by all the services of the plugin: every TemplateHttpClient sends its requests through
+ * the same connection pool, so TLS connections to the partner are reused whatever the service that opened them.
+ */
+public class ApacheHttpTransport implements HttpTransport {
+    private static final Logger LOGGER = LogManager.getLogger(ApacheHttpTransport.class);
+    private static final int HTTPS_PORT = 443;
+
+    private final HttpConfiguration configuration;
+    private final HttpMetrics metrics;
+    private final SharedSslContext sslContext;
+    private final RequestConfig requestConfig;
+    private final LeakTrackingConnectionManager connectionManager;
+    private final TemplateKeepAliveStrategy keepAliveStrategy;
+    private final CachingDnsResolver dnsResolver;
+    private final ConnectionEvictor evictor;
+    private final CloseableHttpClient client;
+    private final List<HttpRoute> sandboxRoutes;
+    private final List<HttpRoute> productionRoutes;
+    private final boolean asyncMode;
+    private final long maxResponseBytes;
+
+    // non-blocking client, only started when a request is sent asynchronously
+    private PoolingNHttpClientConnectionManager asyncConnectionManager;
+    private CloseableHttpAsyncClient asyncClient;
+    private boolean closed;
+
+    public ApacheHttpTransport(HttpConfiguration configuration) {
+        this(configuration, new HttpMetrics());
+    }
+
+    public ApacheHttpTransport(HttpConfiguration configuration, HttpMetrics metrics) {
+        this(configuration, metrics, SharedSslContext.getInstance());
+    }
+
+    public ApacheHttpTransport(HttpConfiguration configuration, HttpMetrics metrics, SharedSslContext sslContext) {
+        this.configuration = configuration;
+        this.metrics = metrics;
+        this.sslContext = sslContext;
+        this.asyncMode = configuration.getBoolean(HttpConfiguration.ASYNC_ENABLED, false);
+        this.maxResponseBytes = configuration.getLong(HttpConfiguration.RESPONSE_MAX_BYTES, 1024 * 1024);
+
+        final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register(TemplateCardConstants.SCHEME, new InstrumentedSslSocketFactory(sslContext, metrics))
+                .build();
+
+        this.dnsResolver = new CachingDnsResolver(configuration.getLong(HttpConfiguration.DNS_TTL, 60 * 1000L), metrics);
+        this.connectionManager = new LeakTrackingConnectionManager(registry, dnsResolver);
+        connectionManager.setMaxTotal(configuration.getInt(HttpConfiguration.POOL_MAX_TOTAL, 200));
+        connectionManager.setDefaultMaxPerRoute(configuration.getInt(HttpConfiguration.POOL_MAX_PER_ROUTE, 50));
+        connectionManager.setDefaultSocketConfig(createSocketConfig(configuration));
+
+        // the sandbox and the production hosts have their own limits, so tests on the sandbox never starve the production traffic,
+        // and each host of an environment has its own connections, so a slow region never holds those of the others
+        this.sandboxRoutes = createRoutes(configuration.getHosts(true));
+        this.productionRoutes = createRoutes(configuration.getHosts(false));
+        for (HttpRoute route : sandboxRoutes) {
+            connectionManager.setMaxPerRoute(route, configuration.getInt(HttpConfiguration.POOL_SANDBOX_MAX_PER_ROUTE, 20));
+        }
+        for (HttpRoute route : productionRoutes) {
+            connectionManager.setMaxPerRoute(route, configuration.getInt(HttpConfiguration.POOL_PRODUCTION_MAX_PER_ROUTE, 100));
+        }
+
+        this.requestConfig = RequestConfig.custom()
+                .setConnectTimeout(configuration.getInt(HttpConfiguration.TIMEOUT_CONNECT, 2 * 1000))
+                .setConnectionRequestTimeout(configuration.getInt(HttpConfiguration.TIMEOUT_CONNECTION_REQUEST, 3 * 1000))
+                .setSocketTimeout(configuration.getInt(HttpConfiguration.TIMEOUT_SOCKET, 4 * 1000)).build();
+
+        this.keepAliveStrategy = new TemplateKeepAliveStrategy(
+                configuration.getLong(HttpConfiguration.KEEP_ALIVE_DEFAULT, 30 * 1000L),
+                configuration.getLong(HttpConfiguration.KEEP_ALIVE_MAX, 60 * 1000L));
+
+        this.client = HttpClientBuilder.create()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(requestConfig)
+                .setDefaultCredentialsProvider(new BasicCredentialsProvider())
+                // the responses are decoded by TemplateHttpClient, whatever the transport
+                .disableContentCompression()
+                // the calls are retried by TemplateHttpClient, with backoff and within the retry budget
+                .disableAutomaticRetries()
+                .build();
+
+        this.evictor = new ConnectionEvictor(connectionManager, configuration, metrics);
+        metrics.gauge("http.pool.leased", () -> getPoolStats().getLeased());
+        metrics.gauge("http.pool.pending", () -> getPoolStats().getPending());
+        metrics.gauge("http.pool.available", () -> getPoolStats().getAvailable());
+        metrics.gauge("http.pool.max", () -> getPoolStats().getMax());
+    }
+
+    private static SocketConfig createSocketConfig(HttpConfiguration configuration) {
+        SocketConfig.Builder builder = SocketConfig.custom()
+                .setTcpNoDelay(configuration.getBoolean(HttpConfiguration.SOCKET_TCP_NO_DELAY, true))
+                .setSoKeepAlive(true);
+
+        // 0 means that the system default is kept
+        int sendBufferSize = configuration.getInt(HttpConfiguration.SOCKET_SEND_BUFFER_SIZE, 0);
+        if (sendBufferSize > 0) {
+            builder.setSndBufSize(sendBufferSize);
+        }
+        int receiveBufferSize = configuration.getInt(HttpConfiguration.SOCKET_RECEIVE_BUFFER_SIZE, 0);
+        if (receiveBufferSize > 0) {
+            builder.setRcvBufSize(receiveBufferSize);
+        }
+        return builder.build();
+    }
+
+    private static IOReactorConfig createIOReactorConfig(HttpConfiguration configuration) {
+        int ioThreads = configuration.getInt(HttpConfiguration.ASYNC_IO_THREADS, 0);
+        IOReactorConfig.Builder builder = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors())
+                .setTcpNoDelay(configuration.getBoolean(HttpConfiguration.SOCKET_TCP_NO_DELAY, true))
+                .setSoKeepAlive(true)
+                .setConnectTimeout(configuration.getInt(HttpConfiguration.TIMEOUT_CONNECT, 2 * 1000))
+                .setSoTimeout(configuration.getInt(HttpConfiguration.TIMEOUT_SOCKET, 4 * 1000));
+
+        int sendBufferSize = configuration.getInt(HttpConfiguration.SOCKET_SEND_BUFFER_SIZE, 0);
+        if (sendBufferSize > 0) {
+            builder.setSndBufSize(sendBufferSize);
+        }
+        int receiveBufferSize = configuration.getInt(HttpConfiguration.SOCKET_RECEIVE_BUFFER_SIZE, 0);
+        if (receiveBufferSize > 0) {
+            builder.setRcvBufSize(receiveBufferSize);
+        }
+        return builder.build();
+    }
+
+    private static List<HttpRoute> createRoutes(List<String> hosts) {
+        List<HttpRoute> routes = new ArrayList<>();
+        for (String host : hosts) {
+            routes.add(new HttpRoute(new HttpHost(host, HTTPS_PORT, TemplateCardConstants.SCHEME), null, true));
+        }
+        return Collections.unmodifiableList(routes);
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        return client.execute(request);
+    }
+
+    /**
+     * The exchange is handled by the I/O reactor threads and the returned future is completed with the fully received response.
+     * The response is received in memory, so it is limited to http.response.maxBytes while it is received.
+     * Cancelling the returned future aborts the exchange.
+     */
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpUriRequest request) {
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        try {
+            Future<HttpResponse> exchange = getAsyncClient().execute(HttpAsyncMethods.create(request), new LimitedResponseConsumer(), new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    future.complete(response);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    future.completeExceptionally(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    future.cancel(false);
+                }
+            });
+            // cancelling the returned future aborts the exchange and releases its connection
+            future.whenComplete((response, t) -> {
+                if (future.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Fails the exchange, and closes its connection, as soon as the response is too large.
+     */
+    private class LimitedResponseConsumer extends BasicAsyncResponseConsumer {
+        private long remaining = maxResponseBytes;
+
+        @Override
+        protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+            if (entity.getContentLength() > maxResponseBytes) {
+                throw tooLarge();
+            }
+            super.onEntityEnclosed(entity, contentType);
+        }
+
+        @Override
+        protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+            super.onContentReceived(new ContentDecoder() {
+                @Override
+                public int read(ByteBuffer dst) throws IOException {
+                    int n = decoder.read(dst);
+                    if (n > 0) {
+                        remaining -= n;
+                        if (remaining < 0) {
+                            throw tooLarge();
+                        }
+                    }
+                    return n;
+                }
+
+                @Override
+                public boolean isCompleted() {
+                    return decoder.isCompleted();
+                }
+            }, ioctrl);
+        }
+
+        private ResponseTooLargeException tooLarge() {
+            metrics.increment(HttpCompression.RESPONSE_TOO_LARGE_METRIC);
+            return new ResponseTooLargeException(maxResponseBytes);
+        }
+    }
+
+    @Override
+    public boolean isAsyncMode() {
+        return asyncMode;
+    }
+
+    private synchronized CloseableHttpAsyncClient getAsyncClient() throws IOException {
+        if (closed) {
+            throw new IOException("the HTTP transport is closed");
+        }
+        if (asyncClient == null) {
+            final Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register(TemplateCardConstants.SCHEME, new InstrumentedSslSessionStrategy(sslContext, metrics))
+                    .build();
+
+            PoolingNHttpClientConnectionManager manager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(createIOReactorConfig(configuration)), null, registry, dnsResolver);
+            manager.setMaxTotal(connectionManager.getMaxTotal());
+            manager.setDefaultMaxPerRoute(connectionManager.getDefaultMaxPerRoute());
+            for (HttpRoute route : sandboxRoutes) {
+                manager.setMaxPerRoute(route, connectionManager.getMaxPerRoute(route));
+            }
+            for (HttpRoute route : productionRoutes) {
+                manager.setMaxPerRoute(route, connectionManager.getMaxPerRoute(route));
+            }
+
+            CloseableHttpAsyncClient newClient = HttpAsyncClients.custom()
+                    .useSystemProperties()
+                    .setConnectionManager(manager)
+                    .setKeepAliveStrategy(keepAliveStrategy)
+                    .setDefaultRequestConfig(requestConfig)
+                    .setDefaultCredentialsProvider(new BasicCredentialsProvider())
+                    .build();
+            newClient.start();
+            LOGGER.info("non-blocking HTTP client started");
+
+            this.asyncConnectionManager = manager;
+            this.asyncClient = newClient;
+            evictor.setAsyncConnectionManager(manager);
+        }
+        return asyncClient;
+    }
+
+    /**
+     * Lease the connections of each host of the environment, connect them (TLS handshake included) and give them back to the pool.
+     * In async mode the calls are sent by the non-blocking client: its pool is warmed up instead of the blocking one.
+     */
+    @Override
+    public int warmUp(boolean isSandbox, int connections) {
+        int opened = 0;
+        for (HttpRoute route : getRoutes(isSandbox)) {
+            opened += asyncMode ? warmUpAsync(route, connections) : warmUp(route, connections);
+        }
+        return opened;
+    }
+
+    private int warmUp(HttpRoute route, int connections) {
+        List<HttpClientConnection> leased = new ArrayList<>();
+        int opened = 0;
+        try {
+            dnsResolver.resolve(route.getTargetHost().getHostName());
+            for (int i = 0; i < connections; i++) {
+                HttpClientConnection connection = connectionManager.requestConnection(route, null)
+                        .get(requestConfig.getConnectionRequestTimeout(), TimeUnit.MILLISECONDS);
+                leased.add(connection);
+                if (!connection.isOpen()) {
+                    HttpClientContext context = HttpClientContext.create();
+                    connectionManager.connect(connection, route, requestConfig.getConnectTimeout(), context);
+                    connectionManager.routeComplete(connection, route, context);
+                    opened++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ExecutionException e) {
+            LOGGER.warn("unable to warm up the connections to {}: {}", route.getTargetHost(), e.getMessage());
+        } finally {
+            for (HttpClientConnection connection : leased) {
+                connectionManager.releaseConnection(connection, null, keepAliveStrategy.getDefaultDuration(), TimeUnit.MILLISECONDS);
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * The connections are leased from the pool of the non-blocking client, which connects them; the TLS handshake is then
+     * completed by the I/O threads, while the connections wait in the pool.
+     */
+    private int warmUpAsync(HttpRoute route, int connections) {
+        List<NHttpClientConnection> leased = new ArrayList<>();
+        PoolingNHttpClientConnectionManager manager = null;
+        int opened = 0;
+        try {
+            getAsyncClient();
+            manager = asyncConnectionManager;
+            dnsResolver.resolve(route.getTargetHost().getHostName());
+            for (int i = 0; i < connections; i++) {
+                NHttpClientConnection connection = manager.requestConnection(route, null, requestConfig.getConnectTimeout(),
+                        requestConfig.getConnectionRequestTimeout(), TimeUnit.MILLISECONDS, null)
+                        .get(requestConfig.getConnectTimeout() + requestConfig.getConnectionRequestTimeout(), TimeUnit.MILLISECONDS);
+                leased.add(connection);
+                if (!manager.isRouteComplete(connection)) {
+                    HttpClientContext context = HttpClientContext.create();
+                    manager.startRoute(connection, route, context);
+                    manager.routeComplete(connection, route, context);
+                    opened++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            LOGGER.warn("unable to warm up the connections to {}: {}", route.getTargetHost(), e.getMessage());
+        } finally {
+            for (NHttpClientConnection connection : leased) {
+                manager.releaseConnection(connection, null, keepAliveStrategy.getDefaultDuration(), TimeUnit.MILLISECONDS);
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Stop the evictor, then close both clients with their pools and sockets.
+     */
+    @Override
+    public void close() throws IOException {
+        CloseableHttpAsyncClient currentAsyncClient;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            currentAsyncClient = asyncClient;
+        }
+        evictor.shutdown();
+        try {
+            client.close();
+        } finally {
+            if (currentAsyncClient != null) {
+                currentAsyncClient.close();
+            }
+            LOGGER.info("HTTP transport closed");
+        }
+    }
+
+    /**
+     * @return the route to the main host of the environment
+     */
+    public HttpRoute getRoute(boolean isSandbox) {
+        return getRoutes(isSandbox).get(0);
+    }
+
+    public List<HttpRoute> getRoutes(boolean isSandbox) {
+        return isSandbox ? sandboxRoutes : productionRoutes;
+    }
+
+    @Override
+    public PoolStats getPoolStats() {
+        if (asyncMode && asyncConnectionManager != null) {
+            return asyncConnectionManager.getTotalStats();
+        }
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * @return the stats of the connections to all the hosts of the environment
+     */
+    @Override
+    public PoolStats getPoolStats(boolean isSandbox) {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+        for (HttpRoute route : getRoutes(isSandbox)) {
+            PoolStats stats = asyncMode && asyncConnectionManager != null
+                    ? asyncConnectionManager.getStats(route)
+                    : connectionManager.getStats(route);
+            leased += stats.getLeased();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+            max += stats.getMax();
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+}
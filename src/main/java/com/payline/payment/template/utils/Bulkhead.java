@@ -0,0 +1,99 @@
+package com.payline.payment.template.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Partner calls of a merchant: at most maxConcurrent calls are in progress, at most maxQueue others wait for a place
+ * during maxWait milliseconds, the other calls are rejected. A burst from one merchant only slows this merchant down.
+ */
+public class Bulkhead {
+    private final String merchantId;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long maxWait;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final HttpMetrics metrics;
+
+    public Bulkhead(String merchantId, int maxConcurrent, int maxQueue, long maxWait, HttpMetrics metrics) {
+        this.merchantId = merchantId;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWait = Math.max(0, maxWait);
+        this.permits = new Semaphore(this.maxConcurrent, true);
+        this.metrics = metrics;
+    }
+
+    public String getMerchantId() {
+        return merchantId;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getInProgress() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Take a place, waiting for one when the queue is not full. The wait ends with the {@link Deadline} of the
+     * current thread. The place must be given back with {@link #release()}.
+     *
+     * @throws BulkheadFullException if no place is free in time
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire() throws IOException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            throw reject();
+        }
+        try {
+            long wait = maxWait;
+            Deadline deadline = Deadline.current();
+            if (deadline != null) {
+                wait = Math.min(wait, deadline.remainingMillis());
+            }
+            if (!permits.tryAcquire(Math.max(0, wait), TimeUnit.MILLISECONDS)) {
+                throw reject();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the bulkhead of the merchant " + merchantId);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Take a place without waiting, for the non-blocking calls.
+     *
+     * @throws BulkheadFullException if no place is free
+     */
+    public void tryAcquire() throws BulkheadFullException {
+        if (!permits.tryAcquire()) {
+            throw reject();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    private BulkheadFullException reject() {
+        metrics.increment("http.bulkhead.rejected");
+        metrics.increment("http.bulkhead." + merchantId + ".rejected");
+        return new BulkheadFullException(merchantId);
+    }
+}
@@ -0,0 +1,14 @@
+package com.payline.payment.template.utils;
+
+import com.payline.pmapi.bean.common.FailureCause;
+
+/**
+ * The merchant already has as many partner calls in progress and waiting as its bulkhead allows.
+ */
+public class BulkheadFullException extends CallRejectedException {
+    public static final String ERROR_CODE = "MERCHANT_BULKHEAD_FULL";
+
+    public BulkheadFullException(String merchantId) {
+        super(ERROR_CODE, FailureCause.COMMUNICATION_ERROR, "the bulkhead of the merchant " + merchantId + " is full");
+    }
+}
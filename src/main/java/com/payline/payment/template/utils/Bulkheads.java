@@ -0,0 +1,58 @@
+package com.payline.payment.template.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The bulkheads of the merchants, created on their first call. The limits of a merchant can be overridden with its
+ * id as suffix, for example http.bulkhead.maxConcurrent.1234; the calls without merchant id share one bulkhead.
+ */
+public class Bulkheads {
+    public static final String UNKNOWN_MERCHANT = "unknown";
+
+    private final HttpConfiguration configuration;
+    private final HttpMetrics metrics;
+    private final boolean enabled;
+    private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public Bulkheads(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.configuration = configuration;
+        this.metrics = metrics;
+        this.enabled = configuration.getBoolean(HttpConfiguration.BULKHEAD_ENABLED, true);
+    }
+
+    private static class SingletonWrapper {
+        private static final Bulkheads INSTANCE = new Bulkheads(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static Bulkheads getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param merchantId the MERCHANT_ID contract property, can be null
+     */
+    public Bulkhead get(String merchantId) {
+        String key = DataChecker.isEmpty(merchantId) ? UNKNOWN_MERCHANT : merchantId;
+        return bulkheads.computeIfAbsent(key, this::create);
+    }
+
+    private Bulkhead create(String merchantId) {
+        return new Bulkhead(merchantId,
+                getInt(HttpConfiguration.BULKHEAD_MAX_CONCURRENT, merchantId, 20),
+                getInt(HttpConfiguration.BULKHEAD_MAX_QUEUE, merchantId, 10),
+                getInt(HttpConfiguration.BULKHEAD_MAX_WAIT, merchantId, 1000),
+                metrics);
+    }
+
+    private int getInt(String key, String merchantId, int defaultValue) {
+        return configuration.getInt(key + "." + merchantId, configuration.getInt(key, defaultValue));
+    }
+}
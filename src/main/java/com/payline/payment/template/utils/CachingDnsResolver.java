@@ -0,0 +1,60 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * DNS resolver keeping the addresses of the partner hosts for a limited time.
+ * Failed resolutions are never cached.
+ */
+public class CachingDnsResolver implements DnsResolver {
+    public static final String HITS_METRIC = "http.dns.hits";
+    public static final String MISSES_METRIC = "http.dns.misses";
+
+    private final DnsResolver delegate;
+    private final long ttl;
+    private final HttpMetrics metrics;
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final InetAddress[] addresses;
+        private final long expiresAt;
+
+        Entry(InetAddress[] addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public CachingDnsResolver(long ttl, HttpMetrics metrics) {
+        this(SystemDefaultDnsResolver.INSTANCE, ttl, metrics);
+    }
+
+    public CachingDnsResolver(DnsResolver delegate, long ttl, HttpMetrics metrics) {
+        this.delegate = delegate;
+        this.ttl = ttl;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(host);
+        if (entry != null && entry.expiresAt > now) {
+            metrics.increment(HITS_METRIC);
+            return entry.addresses.clone();
+        }
+
+        metrics.increment(MISSES_METRIC);
+        InetAddress[] addresses = delegate.resolve(host);
+        if (ttl > 0) {
+            cache.put(host, new Entry(addresses.clone(), now + ttl));
+        }
+        return addresses;
+    }
+}
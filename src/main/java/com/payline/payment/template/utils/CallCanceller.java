@@ -0,0 +1,123 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Abort the blocking partner requests whose calling thread is interrupted or whose {@link CancellationToken} is
+ * cancelled. A thread blocked on a socket does not notice its interruption: a background task checks the calling
+ * threads every pollInterval milliseconds (read from the shared configuration) and aborts their request, which closes
+ * the connection and frees its place in the pool. A cancelled token aborts its requests at once.
+ */
+public class CallCanceller {
+    private static final Logger LOGGER = LogManager.getLogger(CallCanceller.class);
+
+    public static final String ABORTED_METRIC = "http.cancel.aborted";
+
+    private final boolean watchInterruptions;
+    private final HttpMetrics metrics;
+
+    public CallCanceller(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.watchInterruptions = configuration.getLong(HttpConfiguration.CANCEL_POLL_INTERVAL, 100L) > 0;
+        this.metrics = metrics;
+    }
+
+    private static class SingletonWrapper {
+        private static final CallCanceller INSTANCE = new CallCanceller(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static CallCanceller getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    /**
+     * The requests in flight of all the clients, checked by a single task started with the first request.
+     */
+    private static class WatcherWrapper {
+        private static final Set<Registration> IN_FLIGHT = ConcurrentHashMap.newKeySet();
+        private static final ScheduledExecutorService INSTANCE = createWatcher();
+
+        private static ScheduledExecutorService createWatcher() {
+            long interval = HttpConfiguration.getInstance().getLong(HttpConfiguration.CANCEL_POLL_INTERVAL, 100L);
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "template-call-canceller");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(WatcherWrapper::run, interval, Math.max(1, interval), TimeUnit.MILLISECONDS);
+            HttpLifecycle.getInstance().register(scheduler::shutdownNow);
+            return scheduler;
+        }
+
+        private static void run() {
+            try {
+                for (Registration registration : IN_FLIGHT) {
+                    if (registration.thread.isInterrupted()) {
+                        registration.abort();
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("unable to abort the interrupted calls: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Watch a request sent by the current thread until the registration is closed.
+     *
+     * @param token the token of the call, can be null
+     */
+    public Registration register(HttpRequestBase request, CancellationToken token) {
+        Registration registration = new Registration(request, token, watchInterruptions, metrics);
+        if (watchInterruptions) {
+            WatcherWrapper.IN_FLIGHT.add(registration);
+        }
+        if (token != null) {
+            token.addListener(registration.onCancel);
+        }
+        return registration;
+    }
+
+    public static final class Registration implements AutoCloseable {
+        private final Thread thread = Thread.currentThread();
+        private final HttpRequestBase request;
+        private final CancellationToken token;
+        private final boolean watched;
+        private final HttpMetrics metrics;
+        private final Runnable onCancel = this::abort;
+
+        private Registration(HttpRequestBase request, CancellationToken token, boolean watched, HttpMetrics metrics) {
+            this.request = request;
+            this.token = token;
+            this.watched = watched;
+            this.metrics = metrics;
+        }
+
+        void abort() {
+            if (!request.isAborted()) {
+                request.abort();
+                metrics.increment(ABORTED_METRIC);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (watched) {
+                WatcherWrapper.IN_FLIGHT.remove(this);
+            }
+            if (token != null) {
+                token.removeListener(onCancel);
+            }
+        }
+    }
+}
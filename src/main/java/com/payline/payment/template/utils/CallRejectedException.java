@@ -0,0 +1,29 @@
+package com.payline.payment.template.utils;
+
+import com.payline.pmapi.bean.common.FailureCause;
+
+import java.io.IOException;
+
+/**
+ * The call was not sent to the partner, to protect the partner or the plugin, or the partner refused it because of its
+ * rate limit.
+ * It is never retried; {@link TemplateErrorHandler} turns it into a failure response with its code and cause.
+ */
+public class CallRejectedException extends IOException {
+    private final String errorCode;
+    private final transient FailureCause failureCause;
+
+    public CallRejectedException(String errorCode, FailureCause failureCause, String message) {
+        super(message);
+        this.errorCode = errorCode;
+        this.failureCause = failureCause;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public FailureCause getFailureCause() {
+        return failureCause;
+    }
+}
@@ -0,0 +1,109 @@
+package com.payline.payment.template.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cancellation of the partner calls made by a thread, which can be triggered from any other thread:
+ * <pre>
+ * try (CancellationToken token = CancellationToken.start()) {
+ *     // partner calls, aborted as soon as token.cancel() is called
+ * }
+ * </pre>
+ * {@link TemplateHttpClient} aborts the requests in flight, which gives their connections back at once, and does not
+ * send the next ones. A token started inside another one is also cancelled with it.
+ */
+public final class CancellationToken implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(CancellationToken.class);
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+
+    private final CancellationToken previous;
+    private final Runnable cancelWithPrevious = this::cancel;
+    private final List<Runnable> listeners = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    private CancellationToken(CancellationToken previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Bind a new token to the current thread.
+     */
+    public static CancellationToken start() {
+        CancellationToken previous = CURRENT.get();
+        CancellationToken token = new CancellationToken(previous);
+        if (previous != null) {
+            previous.addListener(token.cancelWithPrevious);
+        }
+        CURRENT.set(token);
+        return token;
+    }
+
+    /**
+     * @return the token bound to the current thread, null if there is none
+     */
+    public static CancellationToken current() {
+        return CURRENT.get();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancel the partner calls of the token. Can be called from any thread, more than once.
+     */
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (listeners) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Runnable listener : toRun) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("unable to cancel a partner call: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @param listener run once when the token is cancelled, at once if it already is
+     */
+    public void addListener(Runnable listener) {
+        synchronized (listeners) {
+            if (!cancelled) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    public void removeListener(Runnable listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Unbind the token from the current thread.
+     */
+    @Override
+    public void close() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            previous.removeListener(cancelWithPrevious);
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.payline.payment.template.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Circuit breaker in front of a partner host.
+ * <ul>
+ * <li>CLOSED: the calls are sent and their outcome is kept in a sliding window; the circuit opens when the failure
+ * rate or the slow call rate of the window reaches its threshold</li>
+ * <li>OPEN: the calls are rejected with a {@link CircuitOpenException}, without waiting for the timeouts</li>
+ * <li>HALF_OPEN: once the open duration has elapsed, a limited number of calls probe the host; the circuit closes
+ * when they all succeed, and opens again on the first failure</li>
+ * </ul>
+ */
+public class CircuitBreaker {
+    private static final Logger LOGGER = LogManager.getLogger(CircuitBreaker.class);
+
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified of the state transitions, on the thread which caused them.
+     */
+    public interface Listener {
+        void onStateTransition(String name, State from, State to);
+    }
+
+    private final String name;
+    private final boolean enabled;
+    private final int minCalls;
+    private final double failureRate;
+    private final long slowCall;
+    private final double slowCallRate;
+    private final long openDuration;
+    private final int halfOpenCalls;
+    private final HttpMetrics metrics;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final byte[] window;
+    private int size;
+    private int next;
+    private int failures;
+    private int slows;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probes;
+    private int probeSuccesses;
+
+    /**
+     * @param name the name of the circuit, used in the metric names
+     */
+    public CircuitBreaker(String name, HttpConfiguration configuration, HttpMetrics metrics) {
+        this.name = name;
+        this.enabled = configuration.getBoolean(HttpConfiguration.CIRCUIT_ENABLED, true);
+        this.window = new byte[Math.max(1, configuration.getInt(HttpConfiguration.CIRCUIT_WINDOW, 50))];
+        this.minCalls = Math.max(1, Math.min(window.length, configuration.getInt(HttpConfiguration.CIRCUIT_MIN_CALLS, 20)));
+        this.failureRate = configuration.getDouble(HttpConfiguration.CIRCUIT_FAILURE_RATE, 50);
+        this.slowCall = configuration.getLong(HttpConfiguration.CIRCUIT_SLOW_CALL, 3 * 1000L);
+        this.slowCallRate = configuration.getDouble(HttpConfiguration.CIRCUIT_SLOW_CALL_RATE, 80);
+        this.openDuration = configuration.getLong(HttpConfiguration.CIRCUIT_OPEN_DURATION, 10 * 1000L);
+        this.halfOpenCalls = Math.max(1, configuration.getInt(HttpConfiguration.CIRCUIT_HALF_OPEN_CALLS, 3));
+        this.metrics = metrics;
+
+        metrics.gauge("http.circuit." + name + ".state", () -> getState().ordinal());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Must be called before each call; the call must then be reported with {@link #onSuccess(long)},
+     * {@link #onFailure(long)} or {@link #release()}.
+     *
+     * @throws CircuitOpenException if the call must not be sent
+     */
+    public void acquire() throws CircuitOpenException {
+        if (!enabled) {
+            return;
+        }
+        State from = null;
+        synchronized (this) {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration) {
+                from = transition(State.HALF_OPEN);
+            }
+            boolean permitted = state == State.CLOSED || (state == State.HALF_OPEN && probes < halfOpenCalls);
+            if (permitted && state == State.HALF_OPEN) {
+                probes++;
+            }
+            if (!permitted) {
+                metrics.increment("http.circuit." + name + ".rejected");
+                throw new CircuitOpenException(name);
+            }
+        }
+        publish(from, State.HALF_OPEN);
+    }
+
+    /**
+     * @param millis the duration of the call
+     */
+    public void onSuccess(long millis) {
+        record(millis >= slowCall ? SLOW : 0);
+    }
+
+    /**
+     * @param millis the duration of the call
+     */
+    public void onFailure(long millis) {
+        record(millis >= slowCall ? FAILURE | SLOW : FAILURE);
+    }
+
+    /**
+     * The call ended without telling anything about the health of the host, for example because it was cancelled.
+     */
+    public synchronized void release() {
+        if (enabled && state == State.HALF_OPEN && probes > 0) {
+            probes--;
+        }
+    }
+
+    private void record(int outcome) {
+        if (!enabled) {
+            return;
+        }
+        State from;
+        State to;
+        synchronized (this) {
+            from = state;
+            if (state == State.HALF_OPEN) {
+                if (outcome != 0) {
+                    transition(State.OPEN);
+                } else if (++probeSuccesses >= halfOpenCalls) {
+                    transition(State.CLOSED);
+                }
+            } else if (state == State.CLOSED) {
+                add((byte) outcome);
+                if (size >= minCalls && (failures * 100.0 / size >= failureRate || slows * 100.0 / size >= slowCallRate)) {
+                    transition(State.OPEN);
+                }
+            }
+            to = state;
+        }
+        if (from != to) {
+            publish(from, to);
+        }
+    }
+
+    private void add(byte outcome) {
+        if (size == window.length) {
+            byte evicted = window[next];
+            failures -= evicted & FAILURE;
+            slows -= (evicted & SLOW) >> 1;
+        } else {
+            size++;
+        }
+        window[next] = outcome;
+        failures += outcome & FAILURE;
+        slows += (outcome & SLOW) >> 1;
+        next = (next + 1) % window.length;
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private State transition(State to) {
+        State from = state;
+        state = to;
+        probes = 0;
+        probeSuccesses = 0;
+        if (to == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        } else if (to == State.CLOSED) {
+            size = 0;
+            next = 0;
+            failures = 0;
+            slows = 0;
+        }
+        return from;
+    }
+
+    private void publish(State from, State to) {
+        if (from == null) {
+            return;
+        }
+        metrics.increment("http.circuit." + name + ".transitions." + to.name().toLowerCase());
+        if (to == State.CLOSED) {
+            LOGGER.info("circuit breaker {}: {} -> {}", name, from, to);
+        } else {
+            LOGGER.warn("circuit breaker {}: {} -> {}", name, from, to);
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.onStateTransition(name, from, to);
+            } catch (RuntimeException e) {
+                LOGGER.error("circuit breaker listener failed", e);
+            }
+        }
+    }
+}
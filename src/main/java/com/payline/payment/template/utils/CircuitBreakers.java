@@ -0,0 +1,40 @@
+package com.payline.payment.template.utils;
+
+/**
+ * The circuit breakers of the sandbox and production hosts.
+ */
+public class CircuitBreakers {
+    public static final String SANDBOX = "sandbox";
+    public static final String PRODUCTION = "production";
+
+    private final CircuitBreaker sandbox;
+    private final CircuitBreaker production;
+
+    public CircuitBreakers(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.sandbox = new CircuitBreaker(SANDBOX, configuration, metrics);
+        this.production = new CircuitBreaker(PRODUCTION, configuration, metrics);
+    }
+
+    private static class SingletonWrapper {
+        private static final CircuitBreakers INSTANCE = new CircuitBreakers(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static CircuitBreakers getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    public CircuitBreaker get(boolean isSandbox) {
+        return isSandbox ? sandbox : production;
+    }
+
+    /**
+     * Register a listener on both circuit breakers.
+     */
+    public void addListener(CircuitBreaker.Listener listener) {
+        sandbox.addListener(listener);
+        production.addListener(listener);
+    }
+}
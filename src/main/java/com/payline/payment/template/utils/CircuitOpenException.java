@@ -0,0 +1,14 @@
+package com.payline.payment.template.utils;
+
+import com.payline.pmapi.bean.common.FailureCause;
+
+/**
+ * The circuit breaker of the partner host is open.
+ */
+public class CircuitOpenException extends CallRejectedException {
+    public static final String ERROR_CODE = "CIRCUIT_OPEN";
+
+    public CircuitOpenException(String name) {
+        super(ERROR_CODE, FailureCause.COMMUNICATION_ERROR, "the circuit breaker " + name + " is open");
+    }
+}
@@ -0,0 +1,15 @@
+package com.payline.payment.template.utils;
+
+import com.payline.pmapi.bean.common.FailureCause;
+
+/**
+ * Too many calls are in flight to the partner host: the call is shed instead of waiting for a connection.
+ * The failure can be retried later by Payline.
+ */
+public class ConcurrencyLimitException extends CallRejectedException {
+    public static final String ERROR_CODE = "CONCURRENCY_LIMIT";
+
+    public ConcurrencyLimitException(String name, int limit) {
+        super(ERROR_CODE, FailureCause.COMMUNICATION_ERROR, "the " + limit + " calls allowed to " + name + " are in flight");
+    }
+}
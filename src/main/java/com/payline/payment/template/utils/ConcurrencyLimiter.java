@@ -0,0 +1,147 @@
+package com.payline.payment.template.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limit of the calls in flight to a partner host, adapted to the observed latency (TCP Vegas algorithm).
+ * The latency without load is the smallest one observed for each {@link PartnerOperation}, a capture being slower
+ * than a retrieve even without load; the number of calls queued at the partner is estimated as
+ * limit * (1 - noLoadLatency / latency), with the no-load latency of the operation of the call. The limit grows while this queue is small, shrinks when it gets long, and is
+ * cut when a call fails or times out. The calls above the limit are rejected at once, unless a {@link LaneScheduler}
+ * admits them: the lanes then keep the calls within the limit, and decide which lane gets a place.
+ */
+public class ConcurrencyLimiter {
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int probeInterval;
+    private final HttpMetrics metrics;
+
+    private double limit;
+    private int inFlight;
+    private final long[] noLoadLatencies = new long[PartnerOperation.values().length];
+    private final int[] samples = new int[PartnerOperation.values().length];
+
+    /**
+     * @param name the name of the partner host, used in the metric names
+     */
+    public ConcurrencyLimiter(String name, HttpConfiguration configuration, HttpMetrics metrics) {
+        this.name = name;
+        this.enabled = configuration.getBoolean(HttpConfiguration.LIMITER_ENABLED, true);
+        this.minLimit = Math.max(1, configuration.getInt(HttpConfiguration.LIMITER_MIN, 5));
+        this.maxLimit = Math.max(minLimit, configuration.getInt(HttpConfiguration.LIMITER_MAX, 100));
+        this.limit = Math.max(minLimit, Math.min(maxLimit, configuration.getInt(HttpConfiguration.LIMITER_INITIAL, 20)));
+        this.probeInterval = Math.max(1, configuration.getInt(HttpConfiguration.LIMITER_PROBE_INTERVAL, 1000));
+        this.metrics = metrics;
+        Arrays.fill(noLoadLatencies, Long.MAX_VALUE);
+
+        metrics.gauge("http.limiter." + name + ".limit", this::getLimit);
+        metrics.gauge("http.limiter." + name + ".inFlight", this::getInFlight);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Must be called before each call; the call must then be reported with {@link #onSample(PartnerOperation, long, boolean)} or
+     * {@link #release()}.
+     *
+     * @throws ConcurrencyLimitException if the call must be shed
+     */
+    public void acquire() throws ConcurrencyLimitException {
+        if (!enabled) {
+            return;
+        }
+        int current;
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return;
+            }
+            current = (int) limit;
+        }
+        metrics.increment("http.limiter." + name + ".shed");
+        throw new ConcurrencyLimitException(name, current);
+    }
+
+    /**
+     * Count a call admitted by a {@link LaneScheduler} sized by this limit, without shedding it. The call must then be
+     * reported like an acquired one.
+     */
+    public synchronized void track() {
+        if (enabled) {
+            inFlight++;
+        }
+    }
+
+    /**
+     * @param operation the operation of the call
+     * @param latencyNanos the duration of the call
+     * @param dropped true if the call failed or timed out, a sign of overload
+     */
+    public synchronized void onSample(PartnerOperation operation, long latencyNanos, boolean dropped) {
+        if (!enabled) {
+            return;
+        }
+        int sampleInFlight = inFlight;
+        inFlight = Math.max(0, inFlight - 1);
+
+        // the latency without load is measured again from time to time, the partner may have changed
+        int index = operation.ordinal();
+        if (++samples[index] % probeInterval == 0) {
+            noLoadLatencies[index] = latencyNanos;
+        }
+        long latency = Math.max(1, latencyNanos);
+        long noLoadLatency = Math.min(noLoadLatencies[index], latency);
+        noLoadLatencies[index] = noLoadLatency;
+
+        double newLimit;
+        if (dropped) {
+            newLimit = limit * BACKOFF_RATIO;
+        } else if (sampleInFlight * 2 < limit) {
+            // too few calls to tell anything about the partner capacity
+            return;
+        } else {
+            double log = Math.max(1, Math.log10(limit));
+            double queue = Math.ceil(limit * (1 - (double) noLoadLatency / latency));
+            if (queue <= 3 * log) {
+                newLimit = limit + log;
+            } else if (queue >= 6 * log) {
+                newLimit = limit - log;
+            } else {
+                return;
+            }
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    /**
+     * The call ended without a usable latency, for example because it was cancelled.
+     */
+    public synchronized void release() {
+        if (enabled) {
+            inFlight = Math.max(0, inFlight - 1);
+        }
+    }
+
+    /**
+     * @return the latency in milliseconds used as reference for the operation, -1 before its first call
+     */
+    public synchronized long getNoLoadLatency(PartnerOperation operation) {
+        long noLoadLatency = noLoadLatencies[operation.ordinal()];
+        return noLoadLatency == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMillis(noLoadLatency);
+    }
+}
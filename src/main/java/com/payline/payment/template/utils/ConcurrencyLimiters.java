@@ -0,0 +1,29 @@
+package com.payline.payment.template.utils;
+
+/**
+ * The concurrency limiters of the sandbox and production hosts.
+ */
+public class ConcurrencyLimiters {
+    private final ConcurrencyLimiter sandbox;
+    private final ConcurrencyLimiter production;
+
+    public ConcurrencyLimiters(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.sandbox = new ConcurrencyLimiter(CircuitBreakers.SANDBOX, configuration, metrics);
+        this.production = new ConcurrencyLimiter(CircuitBreakers.PRODUCTION, configuration, metrics);
+    }
+
+    private static class SingletonWrapper {
+        private static final ConcurrencyLimiters INSTANCE = new ConcurrencyLimiters(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static ConcurrencyLimiters getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    public ConcurrencyLimiter get(boolean isSandbox) {
+        return isSandbox ? sandbox : production;
+    }
+}
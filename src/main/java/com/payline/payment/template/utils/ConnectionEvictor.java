@@ -0,0 +1,78 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background task closing the expired and idle connections of the pools, and reporting the leaked connections.
+ */
+public class ConnectionEvictor {
+    private static final Logger LOGGER = LogManager.getLogger(ConnectionEvictor.class);
+
+    public static final String EVICTED_METRIC = "http.connections.evicted";
+    public static final String LEAKED_METRIC = "http.connections.leaked";
+
+    private final LeakTrackingConnectionManager connectionManager;
+    private final HttpMetrics metrics;
+    private final long idleTime;
+    private final long leakThreshold;
+    private final ScheduledExecutorService scheduler;
+    private volatile PoolingNHttpClientConnectionManager asyncConnectionManager;
+
+    public ConnectionEvictor(LeakTrackingConnectionManager connectionManager, HttpConfiguration configuration, HttpMetrics metrics) {
+        this.connectionManager = connectionManager;
+        this.metrics = metrics;
+        this.idleTime = configuration.getLong(HttpConfiguration.EVICTOR_IDLE_TIME, 30 * 1000L);
+        this.leakThreshold = configuration.getLong(HttpConfiguration.LEAK_THRESHOLD, 10 * 1000L);
+
+        long interval = configuration.getLong(HttpConfiguration.EVICTOR_INTERVAL, 5 * 1000L);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "template-connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::run, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Also evict the connections of the non-blocking pool, once it is started.
+     */
+    public void setAsyncConnectionManager(PoolingNHttpClientConnectionManager asyncConnectionManager) {
+        this.asyncConnectionManager = asyncConnectionManager;
+    }
+
+    void run() {
+        try {
+            int open = countOpen(connectionManager.getTotalStats());
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTime, TimeUnit.MILLISECONDS);
+            metrics.add(EVICTED_METRIC, Math.max(0, open - countOpen(connectionManager.getTotalStats())));
+
+            PoolingNHttpClientConnectionManager asyncManager = asyncConnectionManager;
+            if (asyncManager != null) {
+                open = countOpen(asyncManager.getTotalStats());
+                asyncManager.closeExpiredConnections();
+                asyncManager.closeIdleConnections(idleTime, TimeUnit.MILLISECONDS);
+                metrics.add(EVICTED_METRIC, Math.max(0, open - countOpen(asyncManager.getTotalStats())));
+            }
+
+            metrics.add(LEAKED_METRIC, connectionManager.reportLeaks(leakThreshold));
+        } catch (RuntimeException e) {
+            LOGGER.error("unable to evict the connections: {}", e.getMessage(), e);
+        }
+    }
+
+    private static int countOpen(PoolStats stats) {
+        return stats.getLeased() + stats.getAvailable();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
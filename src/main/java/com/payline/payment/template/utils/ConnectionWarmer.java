@@ -0,0 +1,55 @@
+package com.payline.payment.template.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Open connections to the partner hosts before the first payment, so that the DNS resolution, the TCP connection
+ * and the TLS handshake are not paid by the first calls after a deployment.
+ */
+public class ConnectionWarmer {
+    private static final Logger LOGGER = LogManager.getLogger(ConnectionWarmer.class);
+
+    public static final String CONNECTIONS_METRIC = "http.warmup.connections";
+    public static final String DURATION_METRIC = "http.warmup.duration";
+
+    private final HttpConfiguration configuration;
+    private final HttpMetrics metrics;
+
+    public ConnectionWarmer(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.configuration = configuration;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Warm up the hosts enabled in the configuration.
+     *
+     * @param transport the transport to warm up
+     * @return the number of opened connections
+     */
+    public int warmUp(HttpTransport transport) {
+        int connections = configuration.getInt(HttpConfiguration.WARMUP_CONNECTIONS, 2);
+        long start = System.nanoTime();
+        int opened = 0;
+        if (configuration.getBoolean(HttpConfiguration.WARMUP_PRODUCTION, true)) {
+            opened += warmUp(transport, false, connections);
+        }
+        if (configuration.getBoolean(HttpConfiguration.WARMUP_SANDBOX, false)) {
+            opened += warmUp(transport, true, connections);
+        }
+
+        long duration = (System.nanoTime() - start) / 1000000;
+        metrics.gauge(DURATION_METRIC, () -> duration);
+        LOGGER.info("warm-up done: {} connections opened in {} ms", opened, duration);
+        return opened;
+    }
+
+    private int warmUp(HttpTransport transport, boolean isSandbox, int connections) {
+        String host = String.join(",", configuration.getHosts(isSandbox));
+        long start = System.nanoTime();
+        int opened = transport.warmUp(isSandbox, connections);
+        metrics.add(CONNECTIONS_METRIC, opened);
+        LOGGER.info("warm-up of {}: {}/{} connections opened in {} ms", host, opened, connections, (System.nanoTime() - start) / 1000000);
+        return opened;
+    }
+}
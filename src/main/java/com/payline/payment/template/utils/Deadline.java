@@ -0,0 +1,103 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.client.config.RequestConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget of a request received from Payline, shared by all the partner calls made to answer it.
+ * The deadline is started by the service and bound to the current thread until it is closed:
+ * <pre>
+ * try (Deadline deadline = Deadline.start(HttpConfiguration.DEADLINE_REFUND)) {
+ *     // partner calls
+ * }
+ * </pre>
+ * {@link TemplateHttpClient} shrinks the timeouts of each call to the remaining time, and does not send the call once
+ * the deadline is exceeded.
+ */
+public final class Deadline implements AutoCloseable {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAt;
+    private final Deadline previous;
+
+    private Deadline(long expiresAt, Deadline previous) {
+        this.expiresAt = expiresAt;
+        this.previous = previous;
+    }
+
+    /**
+     * Bind a deadline to the current thread. Inside another deadline, the earliest one applies.
+     *
+     * @param budget the time budget in milliseconds
+     */
+    public static Deadline start(long budget) {
+        Deadline previous = CURRENT.get();
+        long expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+        if (previous != null && previous.expiresAt - expiresAt < 0) {
+            expiresAt = previous.expiresAt;
+        }
+        Deadline deadline = new Deadline(expiresAt, previous);
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    /**
+     * @param key the configuration key of the budget of the flow, {@link HttpConfiguration#DEADLINE} applies when
+     *            it is not defined
+     */
+    public static Deadline start(String key) {
+        HttpConfiguration configuration = HttpConfiguration.getInstance();
+        return start(configuration.getLong(key, configuration.getLong(HttpConfiguration.DEADLINE, 10 * 1000L)));
+    }
+
+    /**
+     * @return the deadline bound to the current thread, null if there is none
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime());
+    }
+
+    /**
+     * @param operation the call about to be sent
+     * @throws DeadlineExceededException if there is no time left
+     */
+    public void check(PartnerOperation operation) throws DeadlineExceededException {
+        if (remainingMillis() <= 0) {
+            throw new DeadlineExceededException("deadline exceeded before the " + operation.getKey() + " call");
+        }
+    }
+
+    /**
+     * @return the timeouts, none of them longer than the remaining time
+     */
+    public RequestConfig shrink(RequestConfig config) {
+        int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, remainingMillis()));
+        return RequestConfig.copy(config)
+                .setConnectTimeout(shrink(config.getConnectTimeout(), remaining))
+                .setConnectionRequestTimeout(shrink(config.getConnectionRequestTimeout(), remaining))
+                .setSocketTimeout(shrink(config.getSocketTimeout(), remaining))
+                .build();
+    }
+
+    private static int shrink(int timeout, int remaining) {
+        // 0 and negative values mean no timeout
+        return timeout <= 0 ? remaining : Math.min(timeout, remaining);
+    }
+
+    /**
+     * Unbind the deadline from the current thread.
+     */
+    @Override
+    public void close() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
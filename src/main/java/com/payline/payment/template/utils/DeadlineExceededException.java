@@ -0,0 +1,14 @@
+package com.payline.payment.template.utils;
+
+import com.payline.pmapi.bean.common.FailureCause;
+
+/**
+ * The time budget of the request was spent before the call to the partner.
+ */
+public class DeadlineExceededException extends CallRejectedException {
+    public static final String ERROR_CODE = "DEADLINE_EXCEEDED";
+
+    public DeadlineExceededException(String message) {
+        super(ERROR_CODE, FailureCause.COMMUNICATION_ERROR, message);
+    }
+}
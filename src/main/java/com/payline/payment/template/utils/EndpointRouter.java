@@ -0,0 +1,119 @@
+package com.payline.payment.template.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Choice of the partner host of each attempt, among the regional endpoints of an environment.
+ * Two available endpoints are drawn at random and the one with the best score (latency weighted by the error rate)
+ * is used, which spreads the load while avoiding the slow and failing regions. A retried attempt avoids the endpoint
+ * of the previous one. The endpoint which fails too often is ejected; when all are ejected, the one which comes back
+ * first is used.
+ */
+public class EndpointRouter {
+    private static final Logger LOGGER = LogManager.getLogger(EndpointRouter.class);
+
+    /**
+     * Routing settings shared by the endpoints.
+     */
+    static final class Settings {
+        final double alpha;
+        final double errorPenalty;
+        final int consecutiveFailures;
+        final double ejectionErrorRate;
+        final int minCalls;
+        final long ejectionTime;
+        final long maxEjectionTime;
+
+        Settings(HttpConfiguration configuration) {
+            this.alpha = Math.min(1, Math.max(0.01, configuration.getDouble(HttpConfiguration.ROUTING_EWMA_ALPHA, 0.2)));
+            this.errorPenalty = Math.max(0, configuration.getDouble(HttpConfiguration.ROUTING_ERROR_PENALTY, 10));
+            this.consecutiveFailures = Math.max(1, configuration.getInt(HttpConfiguration.ROUTING_EJECTION_CONSECUTIVE_FAILURES, 5));
+            this.ejectionErrorRate = configuration.getDouble(HttpConfiguration.ROUTING_EJECTION_ERROR_RATE, 0.5);
+            this.minCalls = Math.max(1, configuration.getInt(HttpConfiguration.ROUTING_EJECTION_MIN_CALLS, 10));
+            this.ejectionTime = Math.max(1, configuration.getLong(HttpConfiguration.ROUTING_EJECTION_TIME, 30 * 1000L));
+            this.maxEjectionTime = Math.max(ejectionTime, configuration.getLong(HttpConfiguration.ROUTING_EJECTION_MAX_TIME, 5 * 60 * 1000L));
+        }
+    }
+
+    private final String name;
+    private final List<PartnerEndpoint> endpoints;
+
+    /**
+     * @param name the name of the environment, used in the logs
+     * @param hosts the partner hosts of the environment, the first one is the main host
+     */
+    public EndpointRouter(String name, List<String> hosts, HttpConfiguration configuration, HttpMetrics metrics) {
+        this.name = name;
+        Settings settings = new Settings(configuration);
+        List<PartnerEndpoint> list = new ArrayList<>();
+        for (String host : hosts) {
+            list.add(new PartnerEndpoint(host, settings, metrics));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+    }
+
+    public List<PartnerEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @param previous the endpoint of the previous attempt of the call, null for the first attempt
+     * @return the endpoint of the next attempt
+     */
+    public PartnerEndpoint select(PartnerEndpoint previous) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.nanoTime();
+        List<PartnerEndpoint> available = new ArrayList<>(endpoints.size());
+        for (PartnerEndpoint endpoint : endpoints) {
+            if (endpoint != previous && endpoint.isAvailable(now)) {
+                available.add(endpoint);
+            }
+        }
+        if (available.isEmpty()) {
+            if (previous != null && previous.isAvailable(now)) {
+                return previous;
+            }
+            return firstBack();
+        }
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(available.size());
+        int second = random.nextInt(available.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        PartnerEndpoint a = available.get(first);
+        PartnerEndpoint b = available.get(second);
+        return a.getScore() <= b.getScore() ? a : b;
+    }
+
+    private PartnerEndpoint firstBack() {
+        PartnerEndpoint first = endpoints.get(0);
+        for (PartnerEndpoint endpoint : endpoints) {
+            if (endpoint.getEjectedUntil() - first.getEjectedUntil() < 0) {
+                first = endpoint;
+            }
+        }
+        return first;
+    }
+
+    public void onSuccess(PartnerEndpoint endpoint, long millis) {
+        endpoint.onSuccess(millis);
+    }
+
+    public void onFailure(PartnerEndpoint endpoint) {
+        if (endpoint.onFailure(System.nanoTime())) {
+            LOGGER.warn("partner endpoint {} of {} ejected", endpoint.getHost(), name);
+        }
+    }
+}
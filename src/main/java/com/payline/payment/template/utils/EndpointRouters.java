@@ -0,0 +1,29 @@
+package com.payline.payment.template.utils;
+
+/**
+ * The endpoint routers of the sandbox and production environments.
+ */
+public class EndpointRouters {
+    private final EndpointRouter sandbox;
+    private final EndpointRouter production;
+
+    public EndpointRouters(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.sandbox = new EndpointRouter(CircuitBreakers.SANDBOX, configuration.getHosts(true), configuration, metrics);
+        this.production = new EndpointRouter(CircuitBreakers.PRODUCTION, configuration.getHosts(false), configuration, metrics);
+    }
+
+    private static class SingletonWrapper {
+        private static final EndpointRouters INSTANCE = new EndpointRouters(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static EndpointRouters getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    public EndpointRouter get(boolean isSandbox) {
+        return isSandbox ? sandbox : production;
+    }
+}
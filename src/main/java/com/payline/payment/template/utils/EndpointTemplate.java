@@ -0,0 +1,91 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Precompiled endpoint of the partner API: the scheme, host and path prefix and the static headers are built once,
+ * a call only appends the payment id and binds the Authorization header.
+ */
+public class EndpointTemplate {
+    private static final String AUTHENTICATION_KEY = "Authorization";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final PartnerOperation operation;
+    private final String prefix;
+    private final String suffix;
+    private final Header[] staticHeaders;
+
+    /**
+     * @param operation the partner operation
+     * @param prefix the URI before the payment id, for example https://api.template.com/v1/payments/
+     * @param suffix the path after the payment id, for example capture/
+     * @param staticHeaders the headers sent with every call
+     */
+    public EndpointTemplate(PartnerOperation operation, String prefix, String suffix, Header... staticHeaders) {
+        this.operation = operation;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.staticHeaders = staticHeaders.clone();
+    }
+
+    public PartnerOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @param paymentId the payment id, null for the endpoints without payment id
+     * @return the URI of the call
+     */
+    public URI createUri(String paymentId) throws URISyntaxException {
+        if (paymentId == null) {
+            return new URI(prefix);
+        }
+        StringBuilder sb = new StringBuilder(prefix.length() + paymentId.length() + suffix.length() + 1)
+                .append(prefix);
+        appendEncoded(sb, paymentId);
+        return new URI(sb.append('/').append(suffix).toString());
+    }
+
+    /**
+     * @param authentication the value of the Authorization header
+     * @return the static headers followed by the Authorization header
+     */
+    public Header[] createHeaders(String authentication) {
+        Header[] headers = Arrays.copyOf(staticHeaders, staticHeaders.length + 1);
+        // built for each call, the merchant keys are not kept
+        headers[staticHeaders.length] = new BasicHeader(AUTHENTICATION_KEY, authentication);
+        return headers;
+    }
+
+    /**
+     * Append a path segment, percent-encoding the characters which are not unreserved (RFC 3986).
+     */
+    private static void appendEncoded(StringBuilder sb, String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (!isUnreserved(c)) {
+                for (byte b : segment.substring(i).getBytes(StandardCharsets.UTF_8)) {
+                    char e = (char) (b & 0xFF);
+                    if (isUnreserved(e)) {
+                        sb.append(e);
+                    } else {
+                        sb.append('%').append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+                    }
+                }
+                return;
+            }
+            sb.append(c);
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+}
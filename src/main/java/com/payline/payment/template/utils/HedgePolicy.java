@@ -0,0 +1,118 @@
+package com.payline.payment.template.utils;
+
+/**
+ * Hedging of the retrieve calls: when the partner has not answered within a percentile of the recent latencies,
+ * the same GET is sent a second time and the first answer is used.
+ * The hedged calls are limited by a {@link RetryBudget}.
+ */
+public class HedgePolicy {
+    private static final int DELAY_REFRESH = 50;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelay;
+    private final int minSamples;
+    private final LatencyTracker attempts;
+    private final LatencyTracker calls;
+    private final RetryBudget budget;
+    private final HttpMetrics metrics;
+
+    private volatile long delay = -1;
+    private volatile long delayComputedAt = -DELAY_REFRESH;
+
+    public HedgePolicy(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.enabled = configuration.getBoolean(HttpConfiguration.HEDGE_ENABLED, false);
+        this.percentile = configuration.getDouble(HttpConfiguration.HEDGE_PERCENTILE, 95);
+        this.minDelay = configuration.getLong(HttpConfiguration.HEDGE_MIN_DELAY, 50L);
+        this.minSamples = configuration.getInt(HttpConfiguration.HEDGE_MIN_SAMPLES, 100);
+        int window = configuration.getInt(HttpConfiguration.HEDGE_WINDOW, 1000);
+        this.attempts = new LatencyTracker(window);
+        this.calls = new LatencyTracker(window);
+        this.budget = new RetryBudget(
+                configuration.getDouble(HttpConfiguration.HEDGE_BUDGET_RATIO, 0.05),
+                configuration.getInt(HttpConfiguration.HEDGE_BUDGET_RESERVE, 5));
+        this.metrics = metrics;
+
+        metrics.gauge("http.hedge.delay", this::getDelay);
+        metrics.gauge("http.hedge.rate", this::getRate);
+        metrics.gauge("http.hedge.latency.p99", () -> calls.percentile(99));
+    }
+
+    private static class SingletonWrapper {
+        private static final HedgePolicy INSTANCE = new HedgePolicy(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static HedgePolicy getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Must be called once for each hedged call, before its first request.
+     */
+    public void onCall() {
+        metrics.increment("http.hedge.calls");
+        budget.deposit();
+    }
+
+    /**
+     * @return the time in milliseconds after which the second request is sent, -1 while there are not enough
+     * latencies to compute the percentile
+     */
+    public long getDelay() {
+        long count = attempts.getCount();
+        if (count < minSamples) {
+            return -1;
+        }
+        if (count - delayComputedAt >= DELAY_REFRESH) {
+            delay = Math.max(minDelay, attempts.percentile(percentile));
+            delayComputedAt = count;
+        }
+        return delay;
+    }
+
+    /**
+     * @return true if the second request can be sent, false if the budget is exhausted
+     */
+    public boolean tryHedge() {
+        if (!budget.tryWithdraw()) {
+            metrics.increment("http.hedge.budgetExhausted");
+            return false;
+        }
+        metrics.increment("http.hedge.sent");
+        return true;
+    }
+
+    /**
+     * @param millis the latency of the first request of a call, used to compute the delay. When the second request
+     *               answered first, the time at which it answered: the first one took at least as long
+     */
+    public void recordAttempt(long millis) {
+        attempts.record(millis);
+    }
+
+    /**
+     * @param millis the latency seen by the caller
+     * @param hedgeWon true if the second request answered first
+     */
+    public void recordCall(long millis, boolean hedgeWon) {
+        calls.record(millis);
+        if (hedgeWon) {
+            metrics.increment("http.hedge.wins");
+        }
+    }
+
+    /**
+     * @return the ratio of the calls for which a second request was sent
+     */
+    public double getRate() {
+        long count = metrics.getCount("http.hedge.calls");
+        return count == 0 ? 0 : (double) metrics.getCount("http.hedge.sent") / count;
+    }
+}
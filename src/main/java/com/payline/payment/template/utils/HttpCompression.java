@@ -0,0 +1,237 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of the exchanges with the partner:
+ * <ul>
+ * <li>responses: gzip and deflate are accepted and decoded while the body is read</li>
+ * <li>requests: JSON bodies larger than a threshold can be sent gzipped, depending on the environment</li>
+ * </ul>
+ * The decoded responses are limited to http.response.maxBytes, so that an oversized or malicious response (or a gzip
+ * bomb) is dropped before it is read whole.
+ * The bytes on the wire and the decoded bytes are counted to show the saving.
+ */
+public class HttpCompression {
+    public static final String ACCEPT_ENCODING_KEY = "Accept-Encoding";
+    public static final String CONTENT_ENCODING_KEY = "Content-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    public static final String RESPONSE_WIRE_METRIC = "http.compression.response.wireBytes";
+    public static final String RESPONSE_DECODED_METRIC = "http.compression.response.decodedBytes";
+    public static final String REQUEST_RAW_METRIC = "http.compression.request.rawBytes";
+    public static final String REQUEST_WIRE_METRIC = "http.compression.request.wireBytes";
+    public static final String RESPONSE_TOO_LARGE_METRIC = "http.response.tooLarge";
+
+    private final HttpConfiguration configuration;
+    private final HttpMetrics metrics;
+    private final RequestBufferPool buffers;
+    private final boolean responseCompression;
+    private final int requestThreshold;
+    private final long maxResponseBytes;
+
+    public HttpCompression(HttpConfiguration configuration, HttpMetrics metrics) {
+        this(configuration, metrics, new RequestBufferPool(configuration, metrics));
+    }
+
+    public HttpCompression(HttpConfiguration configuration, HttpMetrics metrics, RequestBufferPool buffers) {
+        this.configuration = configuration;
+        this.metrics = metrics;
+        this.buffers = buffers;
+        this.responseCompression = configuration.getBoolean(HttpConfiguration.COMPRESSION_RESPONSE_ENABLED, true);
+        this.requestThreshold = configuration.getInt(HttpConfiguration.COMPRESSION_REQUEST_THRESHOLD, 1024);
+        this.maxResponseBytes = configuration.getLong(HttpConfiguration.RESPONSE_MAX_BYTES, 1024 * 1024);
+    }
+
+    /**
+     * @return the value of the header Accept-Encoding, null if the responses must not be compressed
+     */
+    public String getAcceptEncoding() {
+        return responseCompression ? ACCEPT_ENCODING : null;
+    }
+
+    /**
+     * Create the entity of a JSON request, gzipped if enabled for the environment and if the body is large enough.
+     *
+     * @param body the JSON body
+     * @param isSandbox true for the sandbox environment
+     * @return the request entity
+     */
+    public HttpEntity createEntity(String body, boolean isSandbox) throws IOException {
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        metrics.add(REQUEST_RAW_METRIC, raw.length);
+        if (raw.length < requestThreshold || !configuration.getBoolean(HttpConfiguration.COMPRESSION_REQUEST_ENABLED, isSandbox, false)) {
+            metrics.add(REQUEST_WIRE_METRIC, raw.length);
+            return new StringEntity(body, ContentType.APPLICATION_JSON);
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(raw);
+        }
+        metrics.add(REQUEST_WIRE_METRIC, compressed.size());
+        ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), ContentType.APPLICATION_JSON);
+        entity.setContentEncoding(GZIP);
+        return entity;
+    }
+
+    /**
+     * Create the entity of a JSON request encoded in a pooled buffer, gzipped into another pooled buffer if enabled for the
+     * environment and if the body is large enough. The entity takes the buffer over: it is released with
+     * {@link PooledEntity#release()}.
+     *
+     * @param body the buffer holding the JSON body, in UTF-8
+     * @param isSandbox true for the sandbox environment
+     * @return the request entity
+     */
+    public PooledEntity createEntity(RequestBufferPool.Buffer body, boolean isSandbox) throws IOException {
+        int size = body.size();
+        metrics.add(REQUEST_RAW_METRIC, size);
+        if (size < requestThreshold || !configuration.getBoolean(HttpConfiguration.COMPRESSION_REQUEST_ENABLED, isSandbox, false)) {
+            metrics.add(REQUEST_WIRE_METRIC, size);
+            return new PooledEntity(body, ContentType.APPLICATION_JSON);
+        }
+
+        RequestBufferPool.Buffer compressed = buffers.acquire();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            body.writeTo(gzip);
+        } catch (IOException | RuntimeException e) {
+            compressed.release();
+            throw e;
+        } finally {
+            body.release();
+        }
+        metrics.add(REQUEST_WIRE_METRIC, compressed.size());
+        PooledEntity entity = new PooledEntity(compressed, ContentType.APPLICATION_JSON);
+        entity.setContentEncoding(GZIP);
+        return entity;
+    }
+
+    /**
+     * Wrap the entity of a response so that it is decoded while it is read. Reading the decoded entity fails with a
+     * {@link ResponseTooLargeException} once it is larger than http.response.maxBytes.
+     *
+     * @param response the partner response
+     * @return the decoded entity, null if the response has no entity
+     * @throws ResponseTooLargeException if the declared length of the response is already too large
+     */
+    public HttpEntity decode(HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return null;
+        }
+        if (entity.getContentLength() > maxResponseBytes) {
+            throw tooLarge();
+        }
+
+        InputStream content = new CountingInputStream(entity.getContent(), RESPONSE_WIRE_METRIC);
+        Header encoding = response.getFirstHeader(CONTENT_ENCODING_KEY);
+        if (encoding != null) {
+            String value = encoding.getValue().trim().toLowerCase();
+            if (GZIP.equals(value) || "x-gzip".equals(value)) {
+                content = new GZIPInputStream(content);
+            } else if ("deflate".equals(value)) {
+                content = new DeflateInputStream(content);
+            }
+        }
+        return new InputStreamEntity(new LimitedInputStream(new CountingInputStream(content, RESPONSE_DECODED_METRIC)), -1, ContentType.get(entity));
+    }
+
+    private ResponseTooLargeException tooLarge() {
+        metrics.increment(RESPONSE_TOO_LARGE_METRIC);
+        return new ResponseTooLargeException(maxResponseBytes);
+    }
+
+    private class CountingInputStream extends FilterInputStream {
+        private final String metric;
+
+        CountingInputStream(InputStream in, String metric) {
+            super(in);
+            this.metric = metric;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                metrics.increment(metric);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                metrics.add(metric, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            metrics.add(metric, skipped);
+            return skipped;
+        }
+    }
+
+    /**
+     * Never reads more than one byte past the limit, whatever the size of the buffer of the reader.
+     */
+    private class LimitedInputStream extends FilterInputStream {
+        private long remaining = maxResponseBytes;
+
+        LimitedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consume(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, (int) Math.min(len, remaining + 1));
+            if (n > 0) {
+                consume(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining + 1));
+            consume(skipped);
+            return skipped;
+        }
+
+        private void consume(long n) throws ResponseTooLargeException {
+            remaining -= n;
+            if (remaining < 0) {
+                throw tooLarge();
+            }
+        }
+    }
+}
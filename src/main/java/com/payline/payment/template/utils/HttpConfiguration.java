@@ -0,0 +1,293 @@
+package com.payline.payment.template.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Settings of the HTTP layer used to reach the partner API.
+ * Values are read from the file http.properties and can be overridden by a JVM system property with the same key.
+ */
+public class HttpConfiguration {
+    private static final Logger LOGGER = LogManager.getLogger(HttpConfiguration.class);
+
+    private static final String HTTP_PROPERTIES_FILE_NAME = "http.properties";
+
+    public static final String TRANSPORT = "http.transport";
+
+    public static final String SIMULATOR_MODE = "http.simulator.mode";
+    public static final String SIMULATOR_PORT = "http.simulator.port";
+    public static final String SIMULATOR_LATENCY_MEDIAN = "http.simulator.latency.median";
+    public static final String SIMULATOR_LATENCY_P99 = "http.simulator.latency.p99";
+    public static final String SIMULATOR_ERROR_RATE = "http.simulator.errorRate";
+    public static final String SIMULATOR_THROTTLE_RATE = "http.simulator.throttleRate";
+    public static final String SIMULATOR_OUTCOME_AUTHORIZED = "http.simulator.outcome.authorized";
+    public static final String SIMULATOR_OUTCOME_CANCELED_CUSTOMER = "http.simulator.outcome.canceledCustomer";
+    public static final String SIMULATOR_OUTCOME_EXPIRED = "http.simulator.outcome.expired";
+    public static final String SIMULATOR_STRICT = "http.simulator.strict";
+    public static final String SIMULATOR_MAX_PAYMENTS = "http.simulator.maxPayments";
+    public static final String SIMULATOR_PRODUCTION = "http.simulator.production";
+
+    public static final String ENDPOINTS_SANDBOX = "http.endpoints.sandbox";
+    public static final String ENDPOINTS_PRODUCTION = "http.endpoints.production";
+
+    public static final String POOL_MAX_TOTAL = "http.pool.maxTotal";
+    public static final String POOL_MAX_PER_ROUTE = "http.pool.maxPerRoute";
+    public static final String POOL_SANDBOX_MAX_PER_ROUTE = "http.pool.sandbox.maxPerRoute";
+    public static final String POOL_PRODUCTION_MAX_PER_ROUTE = "http.pool.production.maxPerRoute";
+
+    public static final String SOCKET_TCP_NO_DELAY = "http.socket.tcpNoDelay";
+    public static final String SOCKET_SEND_BUFFER_SIZE = "http.socket.sendBufferSize";
+    public static final String SOCKET_RECEIVE_BUFFER_SIZE = "http.socket.receiveBufferSize";
+
+    public static final String TIMEOUT_CONNECT = "http.timeout.connect";
+    public static final String TIMEOUT_CONNECTION_REQUEST = "http.timeout.connectionRequest";
+    public static final String TIMEOUT_SOCKET = "http.timeout.socket";
+    public static final String TIMEOUT_ADAPTIVE_ENABLED = "http.timeout.adaptive.enabled";
+    public static final String TIMEOUT_ADAPTIVE_PERCENTILE = "http.timeout.adaptive.percentile";
+    public static final String TIMEOUT_ADAPTIVE_FACTOR = "http.timeout.adaptive.factor";
+    public static final String TIMEOUT_ADAPTIVE_FLOOR = "http.timeout.adaptive.floor";
+    public static final String TIMEOUT_ADAPTIVE_CEILING = "http.timeout.adaptive.ceiling";
+    public static final String TIMEOUT_ADAPTIVE_MIN_SAMPLES = "http.timeout.adaptive.minSamples";
+    public static final String TIMEOUT_ADAPTIVE_WINDOW = "http.timeout.adaptive.window";
+
+    public static final String DEADLINE = "http.deadline";
+    public static final String DEADLINE_PAYMENT = "http.deadline.payment";
+    public static final String DEADLINE_REDIRECTION = "http.deadline.redirection";
+    public static final String DEADLINE_REFUND = "http.deadline.refund";
+    public static final String DEADLINE_CHECK = "http.deadline.check";
+
+    public static final String CANCEL_POLL_INTERVAL = "http.cancel.pollInterval";
+
+    public static final String LIFECYCLE_DRAIN_TIMEOUT = "http.lifecycle.drainTimeout";
+    public static final String LIFECYCLE_SHUTDOWN_HOOK = "http.lifecycle.shutdownHook";
+
+    public static final String KEEP_ALIVE_DEFAULT = "http.keepAlive.default";
+    public static final String KEEP_ALIVE_MAX = "http.keepAlive.max";
+    public static final String EVICTOR_INTERVAL = "http.evictor.interval";
+    public static final String EVICTOR_IDLE_TIME = "http.evictor.idleTime";
+    public static final String LEAK_THRESHOLD = "http.leak.threshold";
+
+    public static final String TLS_SESSION_CACHE_SIZE = "http.tls.sessionCacheSize";
+    public static final String TLS_SESSION_TIMEOUT = "http.tls.sessionTimeout";
+    public static final String TLS_PROTOCOLS = "http.tls.protocols";
+    public static final String TLS_CIPHERS = "http.tls.ciphers";
+
+    public static final String DNS_TTL = "http.dns.ttl";
+    public static final String WARMUP_ENABLED = "http.warmup.enabled";
+    public static final String WARMUP_CONNECTIONS = "http.warmup.connections";
+    public static final String WARMUP_PRODUCTION = "http.warmup.production";
+    public static final String WARMUP_SANDBOX = "http.warmup.sandbox";
+
+    public static final String COMPRESSION_RESPONSE_ENABLED = "http.compression.response.enabled";
+    public static final String COMPRESSION_REQUEST_ENABLED = "http.compression.request.enabled";
+    public static final String COMPRESSION_REQUEST_THRESHOLD = "http.compression.request.threshold";
+
+    public static final String RESPONSE_MAX_BYTES = "http.response.maxBytes";
+    public static final String RESPONSE_SKIP_UNUSED = "http.response.skipUnused";
+
+    public static final String BUFFER_POOL_SIZE = "http.buffer.pool.size";
+    public static final String BUFFER_INITIAL_SIZE = "http.buffer.initialSize";
+    public static final String BUFFER_MAX_RETAINED = "http.buffer.maxRetained";
+
+    public static final String ASYNC_ENABLED = "http.async.enabled";
+    public static final String ASYNC_IO_THREADS = "http.async.ioThreads";
+
+    public static final String RETRY_ENABLED = "http.retry.enabled";
+    public static final String RETRY_MAX_ATTEMPTS = "http.retry.maxAttempts";
+    public static final String RETRY_BACKOFF_INITIAL = "http.retry.backoff.initial";
+    public static final String RETRY_BACKOFF_MAX = "http.retry.backoff.max";
+    public static final String RETRY_BUDGET_RATIO = "http.retry.budget.ratio";
+    public static final String RETRY_BUDGET_RESERVE = "http.retry.budget.reserve";
+
+    public static final String HEDGE_ENABLED = "http.hedge.enabled";
+    public static final String HEDGE_PERCENTILE = "http.hedge.percentile";
+    public static final String HEDGE_MIN_DELAY = "http.hedge.minDelay";
+    public static final String HEDGE_MIN_SAMPLES = "http.hedge.minSamples";
+    public static final String HEDGE_WINDOW = "http.hedge.window";
+    public static final String HEDGE_BUDGET_RATIO = "http.hedge.budget.ratio";
+    public static final String HEDGE_BUDGET_RESERVE = "http.hedge.budget.reserve";
+
+    public static final String CIRCUIT_ENABLED = "http.circuit.enabled";
+    public static final String CIRCUIT_WINDOW = "http.circuit.window";
+    public static final String CIRCUIT_MIN_CALLS = "http.circuit.minCalls";
+    public static final String CIRCUIT_FAILURE_RATE = "http.circuit.failureRate";
+    public static final String CIRCUIT_SLOW_CALL = "http.circuit.slowCall";
+    public static final String CIRCUIT_SLOW_CALL_RATE = "http.circuit.slowCallRate";
+    public static final String CIRCUIT_OPEN_DURATION = "http.circuit.openDuration";
+    public static final String CIRCUIT_HALF_OPEN_CALLS = "http.circuit.halfOpenCalls";
+
+    public static final String LIMITER_ENABLED = "http.limiter.enabled";
+    public static final String LIMITER_INITIAL = "http.limiter.initial";
+    public static final String LIMITER_MIN = "http.limiter.min";
+    public static final String LIMITER_MAX = "http.limiter.max";
+    public static final String LIMITER_PROBE_INTERVAL = "http.limiter.probeInterval";
+
+    public static final String BULKHEAD_ENABLED = "http.bulkhead.enabled";
+    public static final String BULKHEAD_MAX_CONCURRENT = "http.bulkhead.maxConcurrent";
+    public static final String BULKHEAD_MAX_QUEUE = "http.bulkhead.maxQueue";
+    public static final String BULKHEAD_MAX_WAIT = "http.bulkhead.maxWait";
+
+    public static final String LANES_ENABLED = "http.lanes.enabled";
+    public static final String LANES_MAX_WAIT = "http.lanes.maxWait";
+    public static final String LANES_RESERVED = "http.lanes.reserved";
+
+    public static final String RATE_LIMIT_ENABLED = "http.rateLimit.enabled";
+    public static final String RATE_LIMIT_RATE = "http.rateLimit.rate";
+    public static final String RATE_LIMIT_BURST = "http.rateLimit.burst";
+    public static final String RATE_LIMIT_MAX_WAIT = "http.rateLimit.maxWait";
+    public static final String RATE_LIMIT_DEFAULT_RETRY_AFTER = "http.rateLimit.defaultRetryAfter";
+
+    public static final String ROUTING_EWMA_ALPHA = "http.routing.ewmaAlpha";
+    public static final String ROUTING_ERROR_PENALTY = "http.routing.errorPenalty";
+    public static final String ROUTING_EJECTION_CONSECUTIVE_FAILURES = "http.routing.ejection.consecutiveFailures";
+    public static final String ROUTING_EJECTION_ERROR_RATE = "http.routing.ejection.errorRate";
+    public static final String ROUTING_EJECTION_MIN_CALLS = "http.routing.ejection.minCalls";
+    public static final String ROUTING_EJECTION_TIME = "http.routing.ejection.time";
+    public static final String ROUTING_EJECTION_MAX_TIME = "http.routing.ejection.maxTime";
+
+    private final Properties properties;
+
+    public HttpConfiguration(Properties properties) {
+        this.properties = properties;
+    }
+
+    private static class SingletonWrapper {
+        private static final HttpConfiguration INSTANCE = new HttpConfiguration(load());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static HttpConfiguration getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    private static Properties load() {
+        final Properties props = new Properties();
+        try (InputStream input = HttpConfiguration.class.getClassLoader().getResourceAsStream(HTTP_PROPERTIES_FILE_NAME)) {
+            if (input != null) {
+                props.load(input);
+            }
+        } catch (IOException e) {
+            LOGGER.error("unable to read the file {}, default values will be used", HTTP_PROPERTIES_FILE_NAME, e);
+        }
+        return props;
+    }
+
+    /**
+     * @param key the property key
+     * @return the value of the system property if defined, else the value of the file, else null
+     */
+    public String getProperty(String key) {
+        String value = System.getProperty(key);
+        if (DataChecker.isEmpty(value)) {
+            value = properties.getProperty(key);
+        }
+        return DataChecker.isEmpty(value) ? null : value.trim();
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = getProperty(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("invalid value {} for {}, {} will be used", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("invalid value {} for {}, {} will be used", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("invalid value {} for {}, {} will be used", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Read a value which can be set per environment, with the suffix .sandbox or .production
+     *
+     * @param key the property key, without suffix
+     * @param isSandbox true for the sandbox environment
+     * @param defaultValue the value used when neither the environment key nor the key are defined
+     */
+    public boolean getBoolean(String key, boolean isSandbox, boolean defaultValue) {
+        return getBoolean(key + (isSandbox ? ".sandbox" : ".production"), getBoolean(key, defaultValue));
+    }
+
+    /**
+     * Read a value which can be set per partner operation, with the suffix .initiate, .retrieve, .capture, .refund or .check
+     *
+     * @param key the property key, without suffix
+     * @param operation the partner operation
+     * @param defaultValue the value used when neither the operation key nor the key are defined
+     */
+    public int getInt(String key, PartnerOperation operation, int defaultValue) {
+        return getInt(key + "." + operation.getKey(), getInt(key, defaultValue));
+    }
+
+    /**
+     * Same as {@link #getInt(String, PartnerOperation, int)} for long values
+     */
+    public long getLong(String key, PartnerOperation operation, long defaultValue) {
+        return getLong(key + "." + operation.getKey(), getLong(key, defaultValue));
+    }
+
+    /**
+     * @param isSandbox true for the sandbox environment
+     * @return the partner hosts of the environment, from a comma separated list; the first one is the main host
+     */
+    public List<String> getHosts(boolean isSandbox) {
+        String value = getProperty(isSandbox ? ENDPOINTS_SANDBOX : ENDPOINTS_PRODUCTION);
+        List<String> hosts = new ArrayList<>();
+        if (value != null) {
+            for (String host : value.split(",")) {
+                String trimmed = host.trim();
+                if (!trimmed.isEmpty() && !hosts.contains(trimmed)) {
+                    hosts.add(trimmed);
+                }
+            }
+        }
+        if (hosts.isEmpty()) {
+            hosts.add(isSandbox ? TemplateCardConstants.SANDBOX_URL : TemplateCardConstants.PRODUCTION_URL);
+        }
+        return hosts;
+    }
+}
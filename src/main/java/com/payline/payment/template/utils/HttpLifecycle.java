@@ -0,0 +1,241 @@
+package com.payline.payment.template.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lifecycle of the HTTP layer: STARTED, then DRAINING while the calls in progress end and the new ones are rejected,
+ * then CLOSED once the transports and the background threads are closed.
+ * The shared instance is shut down by a JVM shutdown hook, or explicitly with {@link #shutdown()} when the plugin is
+ * unloaded, so that a redeployment does not leave pools, threads and sockets behind.
+ * A service answering with several partner calls, a retrieve then a capture for example, runs them in a {@link Flow}:
+ * the drain waits for the whole flow, and its calls are not rejected while draining.
+ */
+public class HttpLifecycle {
+    private static final Logger LOGGER = LogManager.getLogger(HttpLifecycle.class);
+    private static final ThreadLocal<Flow> CURRENT_FLOW = new ThreadLocal<>();
+
+    public enum State {
+        STARTED, DRAINING, CLOSED
+    }
+
+    private final long drainTimeout;
+    private final boolean shutdownHookEnabled;
+    private final HttpMetrics metrics;
+    // closed in the reverse order of their registration
+    private final Deque<Closeable> resources = new ArrayDeque<>();
+    private State state = State.STARTED;
+    private int inFlight;
+    private Thread shutdownHook;
+
+    public HttpLifecycle(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.drainTimeout = Math.max(0, configuration.getLong(HttpConfiguration.LIFECYCLE_DRAIN_TIMEOUT, 10 * 1000L));
+        this.shutdownHookEnabled = configuration.getBoolean(HttpConfiguration.LIFECYCLE_SHUTDOWN_HOOK, true);
+        this.metrics = metrics;
+        metrics.gauge("http.lifecycle.inFlight", this::getInFlight);
+        metrics.gauge("http.lifecycle.state", () -> getState().ordinal());
+    }
+
+    private static class SingletonWrapper {
+        private static final HttpLifecycle INSTANCE = createDefault();
+
+        private static HttpLifecycle createDefault() {
+            HttpLifecycle lifecycle = new HttpLifecycle(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+            lifecycle.start();
+            return lifecycle;
+        }
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization, started with its shutdown hook.
+     */
+    public static HttpLifecycle getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    /**
+     * Register the JVM shutdown hook, if enabled.
+     */
+    public synchronized void start() {
+        if (state == State.STARTED && shutdownHookEnabled && shutdownHook == null) {
+            shutdownHook = new Thread(this::shutdown, "template-http-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @param resource closed when the lifecycle is shut down, at once if it already is
+     */
+    public void register(Closeable resource) {
+        synchronized (this) {
+            if (state != State.CLOSED) {
+                resources.push(resource);
+                return;
+            }
+        }
+        close(resource);
+    }
+
+    /**
+     * Must be called before each call; the call must then be reported with {@link #exit()}.
+     *
+     * @throws ShuttingDownException if the lifecycle is closed, or draining and the call is not part of a flow
+     */
+    public void enter() throws ShuttingDownException {
+        boolean inFlow = isInFlow();
+        synchronized (this) {
+            if (state == State.STARTED || (state == State.DRAINING && inFlow)) {
+                inFlight++;
+                return;
+            }
+        }
+        metrics.increment("http.lifecycle.rejected");
+        throw new ShuttingDownException();
+    }
+
+    public synchronized void exit() {
+        inFlight = Math.max(0, inFlight - 1);
+        if (inFlight == 0) {
+            notifyAll();
+        }
+    }
+
+    private boolean isInFlow() {
+        Flow flow = CURRENT_FLOW.get();
+        return flow != null && flow.lifecycle == this;
+    }
+
+    /**
+     * Enter the lifecycle for a flow of partner calls, bound to the current thread until it is closed:
+     * <pre>
+     * try (HttpLifecycle.Flow flow = lifecycle.startFlow()) {
+     *     // partner calls
+     * }
+     * </pre>
+     *
+     * @throws ShuttingDownException if the lifecycle is draining or closed, outside another flow
+     */
+    public Flow startFlow() throws ShuttingDownException {
+        enter();
+        Flow flow = new Flow(this, CURRENT_FLOW.get());
+        CURRENT_FLOW.set(flow);
+        return flow;
+    }
+
+    /**
+     * A flow of partner calls, counted as one call in progress from its start to its end.
+     */
+    public static final class Flow implements AutoCloseable {
+        private final HttpLifecycle lifecycle;
+        private final Flow previous;
+
+        private Flow(HttpLifecycle lifecycle, Flow previous) {
+            this.lifecycle = lifecycle;
+            this.previous = previous;
+        }
+
+        /**
+         * Unbind the flow from the current thread.
+         */
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT_FLOW.remove();
+            } else {
+                CURRENT_FLOW.set(previous);
+            }
+            lifecycle.exit();
+        }
+    }
+
+    /**
+     * Shut down with the configured drain timeout.
+     */
+    public boolean shutdown() {
+        return shutdown(drainTimeout);
+    }
+
+    /**
+     * Reject the new calls, wait for the calls in progress, then close the registered resources.
+     * Only the first call has an effect.
+     *
+     * @param timeout the maximum time in milliseconds to wait for the calls in progress
+     * @return true if all the calls ended before the resources were closed
+     */
+    public boolean shutdown(long timeout) {
+        Deque<Closeable> toClose;
+        boolean drained;
+        synchronized (this) {
+            if (state != State.STARTED) {
+                return state == State.CLOSED && inFlight == 0;
+            }
+            state = State.DRAINING;
+            LOGGER.info("draining {} partner calls", inFlight);
+            drained = awaitDrained(timeout);
+            state = State.CLOSED;
+            toClose = new ArrayDeque<>(resources);
+            resources.clear();
+        }
+        if (!drained) {
+            LOGGER.warn("{} partner calls still in progress after {} ms, the connections are closed", getInFlight(), timeout);
+        }
+        removeShutdownHook();
+        toClose.forEach(HttpLifecycle::close);
+        LOGGER.info("partner client closed");
+        return drained;
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private boolean awaitDrained(long timeout) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        long end = System.nanoTime() + remaining;
+        try {
+            while (inFlight > 0 && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = end - System.nanoTime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return inFlight == 0;
+    }
+
+    private void removeShutdownHook() {
+        Thread hook;
+        synchronized (this) {
+            hook = shutdownHook;
+            shutdownHook = null;
+        }
+        if (hook != null && hook != Thread.currentThread()) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // the JVM is already shutting down
+            }
+        }
+    }
+
+    private static void close(Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("unable to close {}: {}", resource, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.payline.payment.template.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counters and gauges of the HTTP layer.
+ * The values can be scraped with {@link #snapshot()}.
+ */
+public class HttpMetrics {
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    private static class SingletonWrapper {
+        private static final HttpMetrics INSTANCE = new HttpMetrics();
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static HttpMetrics getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * @param name the counter name
+     * @return the counter value, 0 if the counter was never incremented
+     */
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Register a value computed each time the metrics are read, replacing any gauge with the same name.
+     */
+    public void gauge(String name, Supplier<? extends Number> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * @return the current value of all the counters and gauges, sorted by name
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, supplier) -> values.put(name, supplier.get()));
+        return values;
+    }
+}
@@ -0,0 +1,69 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.pool.PoolStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Backend used by TemplateHttpClient to exchange with the partner API.
+ * The implementation is chosen by the property http.transport, see {@link HttpTransports}.
+ */
+public interface HttpTransport extends Closeable {
+
+    /**
+     * Send a request and wait for the response.
+     *
+     * @param request the request to send
+     * @return the partner response
+     * @throws IOException if the exchange failed
+     */
+    HttpResponse execute(HttpUriRequest request) throws IOException;
+
+    /**
+     * Send a request without blocking the calling thread.
+     *
+     * @param request the request to send
+     * @return the future partner response, completed exceptionally if the exchange failed
+     */
+    CompletableFuture<HttpResponse> executeAsync(HttpUriRequest request);
+
+    /**
+     * @return true if the blocking calls have to wait for {@link #executeAsync(HttpUriRequest)}
+     */
+    boolean isAsyncMode();
+
+    /**
+     * @return the leased, pending and available connections of the transport
+     */
+    PoolStats getPoolStats();
+
+    /**
+     * @param isSandbox true for the sandbox host, false for the production host
+     * @return the leased, pending and available connections to the partner host
+     */
+    PoolStats getPoolStats(boolean isSandbox);
+
+    /**
+     * Resolve the partner host and open ready connections to it, for the transports which support it.
+     *
+     * @param isSandbox true for the sandbox host, false for the production host
+     * @param connections the number of connections to open
+     * @return the number of opened connections
+     */
+    default int warmUp(boolean isSandbox, int connections) {
+        return 0;
+    }
+
+    /**
+     * Close the connections and stop the threads of the transport, for the transports which own some.
+     * The requests still in flight fail.
+     */
+    @Override
+    default void close() throws IOException {
+        // nothing to release
+    }
+}
@@ -0,0 +1,81 @@
+package com.payline.payment.template.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Create the transport chosen by the property http.transport:
+ * <ul>
+ * <li>apache: Apache HttpClient 4, blocking pool and NIO client (default)</li>
+ * <li>jdk: java.net.http.HttpClient with HTTP/2, only available when running on Java 11 or later</li>
+ * <li>simulator: the {@link PartnerSimulator}, in process or behind a loopback server, for the load tests; the
+ * production calls are refused unless http.simulator.production is set too</li>
+ * </ul>
+ */
+public class HttpTransports {
+    private static final Logger LOGGER = LogManager.getLogger(HttpTransports.class);
+
+    public static final String APACHE = "apache";
+    public static final String JDK = "jdk";
+    public static final String SIMULATOR = "simulator";
+
+    // packaged in META-INF/versions/11 of the multi-release jar
+    private static final String JDK_TRANSPORT_CLASS = "com.payline.payment.template.utils.JdkHttpTransport";
+
+    private HttpTransports() {
+        // ras.
+    }
+
+    private static class SingletonWrapper {
+        private static final HttpTransport INSTANCE = createDefault();
+    }
+
+    /**
+     * @return the process-wide transport shared by all the services
+     */
+    public static HttpTransport getDefault() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    private static HttpTransport createDefault() {
+        HttpConfiguration configuration = HttpConfiguration.getInstance();
+        HttpMetrics metrics = HttpMetrics.getInstance();
+        HttpTransport transport = create(configuration, metrics);
+
+        // the services are loaded with their client, so they are only ready once the connections are open
+        if (configuration.getBoolean(HttpConfiguration.WARMUP_ENABLED, false)) {
+            new ConnectionWarmer(configuration, metrics).warmUp(transport);
+        }
+        HttpLifecycle.getInstance().register(transport);
+        return transport;
+    }
+
+    public static HttpTransport create(HttpConfiguration configuration, HttpMetrics metrics) {
+        return create(configuration.getString(HttpConfiguration.TRANSPORT, APACHE), configuration, metrics);
+    }
+
+    public static HttpTransport create(String name, HttpConfiguration configuration, HttpMetrics metrics) {
+        if (JDK.equalsIgnoreCase(name)) {
+            try {
+                return (HttpTransport) Class.forName(JDK_TRANSPORT_CLASS)
+                        .getConstructor(HttpConfiguration.class, HttpMetrics.class)
+                        .newInstance(configuration, metrics);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LOGGER.warn("the jdk transport needs Java 11 or later, the apache transport will be used: {}", e.toString());
+            }
+        } else if (SIMULATOR.equalsIgnoreCase(name)) {
+            try {
+                return new SimulatorHttpTransport(configuration, metrics);
+            } catch (IOException e) {
+                // never fall back to the partner when a simulation was asked
+                throw new UncheckedIOException("unable to start the partner simulator", e);
+            }
+        } else if (!APACHE.equalsIgnoreCase(name)) {
+            LOGGER.warn("unknown transport {}, the apache transport will be used", name);
+        }
+        return new ApacheHttpTransport(configuration, metrics);
+    }
+}
@@ -0,0 +1,42 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.HttpHost;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.nio.reactor.ssl.SSLIOSession;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+
+/**
+ * TLS strategy of the non-blocking pool, measuring the TLS handshakes.
+ */
+public class InstrumentedSslSessionStrategy extends SSLIOSessionStrategy {
+    private static final String HANDSHAKE_START_MILLIS = "template.handshake.startMillis";
+    private static final String HANDSHAKE_START = "template.handshake.start";
+
+    private final HttpMetrics metrics;
+
+    public InstrumentedSslSessionStrategy(SharedSslContext sslContext, HttpMetrics metrics) {
+        super(sslContext.getContext(), sslContext.getProtocols(), sslContext.getCipherSuites(), getDefaultHostnameVerifier());
+        this.metrics = metrics;
+    }
+
+    @Override
+    public SSLIOSession upgrade(HttpHost host, IOSession iosession) throws IOException {
+        iosession.setAttribute(HANDSHAKE_START_MILLIS, System.currentTimeMillis());
+        iosession.setAttribute(HANDSHAKE_START, System.nanoTime());
+        return super.upgrade(host, iosession);
+    }
+
+    @Override
+    protected void verifySession(HttpHost host, IOSession iosession, SSLSession sslsession) throws SSLException {
+        super.verifySession(host, iosession, sslsession);
+        Object startMillis = iosession.getAttribute(HANDSHAKE_START_MILLIS);
+        Object start = iosession.getAttribute(HANDSHAKE_START);
+        if (startMillis instanceof Long && start instanceof Long) {
+            SharedSslContext.recordHandshake(sslsession, (Long) startMillis, System.nanoTime() - (Long) start, metrics);
+        }
+    }
+}
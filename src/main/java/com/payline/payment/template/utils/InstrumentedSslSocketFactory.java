@@ -0,0 +1,29 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Socket factory of the blocking pool, measuring the TLS handshakes.
+ */
+public class InstrumentedSslSocketFactory extends SSLConnectionSocketFactory {
+    private final HttpMetrics metrics;
+
+    public InstrumentedSslSocketFactory(SharedSslContext sslContext, HttpMetrics metrics) {
+        super(sslContext.getContext(), sslContext.getProtocols(), sslContext.getCipherSuites(), getDefaultHostnameVerifier());
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        Socket sslSocket = super.createLayeredSocket(socket, target, port, context);
+        SharedSslContext.recordHandshake(((SSLSocket) sslSocket).getSession(), startMillis, System.nanoTime() - start, metrics);
+        return sslSocket;
+    }
+}
@@ -0,0 +1,27 @@
+package com.payline.payment.template.utils;
+
+/**
+ * Priority lanes of the partner calls, from the highest priority to the lowest.
+ */
+public enum Lane {
+    // the customer is waiting: payments and their redirection
+    PAYMENT("payment"),
+    CAPTURE("capture"),
+    // may arrive in batches
+    REFUND("refund"),
+    // contract checks from the administration
+    CHECK("check");
+
+    private final String key;
+
+    Lane(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the name used in the configuration keys and the metric names
+     */
+    public String getKey() {
+        return key;
+    }
+}
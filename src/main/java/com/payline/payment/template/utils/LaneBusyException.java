@@ -0,0 +1,14 @@
+package com.payline.payment.template.utils;
+
+import com.payline.pmapi.bean.common.FailureCause;
+
+/**
+ * No connection to the partner host was free in time for the lane of the call.
+ */
+public class LaneBusyException extends CallRejectedException {
+    public static final String ERROR_CODE = "LANE_BUSY";
+
+    public LaneBusyException(String name, Lane lane) {
+        super(ERROR_CODE, FailureCause.COMMUNICATION_ERROR, "no connection to " + name + " is free for the " + lane.getKey() + " lane");
+    }
+}
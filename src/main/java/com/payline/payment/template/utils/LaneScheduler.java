@@ -0,0 +1,242 @@
+package com.payline.payment.template.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Share of the connections of a partner host between the {@link Lane}s.
+ * Each lane has a reserved part of the capacity, which the other lanes cannot use; the rest is shared. When no place
+ * is free, the calls wait in their lane, and a freed place goes to the lane with the highest priority which can use it,
+ * so a wave of refunds or contract checks never delays the payments.
+ * With a {@link ConcurrencyLimiter}, the capacity is the current concurrency limit when it is lower than the
+ * connections: the limiter sets how many calls are sent, the lanes decide which ones.
+ */
+public class LaneScheduler {
+    private static final Lane[] LANES = Lane.values();
+
+    private final String name;
+    private final boolean enabled;
+    private final long maxWait;
+    private final int capacity;
+    private final int[] reservedPercents = new int[LANES.length];
+    private final ConcurrencyLimiter limiter;
+    private final int[] inFlight = new int[LANES.length];
+    private final int[] waiting = new int[LANES.length];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition[] conditions = new Condition[LANES.length];
+    private final HttpMetrics metrics;
+
+    /**
+     * @param name the name of the partner host, used in the metric names
+     * @param capacity the number of connections to the host
+     */
+    public LaneScheduler(String name, int capacity, HttpConfiguration configuration, HttpMetrics metrics) {
+        this(name, capacity, null, configuration, metrics);
+    }
+
+    /**
+     * @param limiter the concurrency limit of the host, which caps the capacity; can be null
+     */
+    public LaneScheduler(String name, int capacity, ConcurrencyLimiter limiter, HttpConfiguration configuration, HttpMetrics metrics) {
+        this.name = name;
+        this.enabled = configuration.getBoolean(HttpConfiguration.LANES_ENABLED, true);
+        this.maxWait = Math.max(0, configuration.getLong(HttpConfiguration.LANES_MAX_WAIT, 3 * 1000L));
+        this.capacity = capacity;
+        this.limiter = limiter;
+        this.metrics = metrics;
+
+        for (Lane lane : LANES) {
+            reservedPercents[lane.ordinal()] = configuration.getInt(HttpConfiguration.LANES_RESERVED + "." + lane.getKey(), getDefaultReserved(lane));
+            conditions[lane.ordinal()] = lock.newCondition();
+
+            String prefix = "http.lane." + name + "." + lane.getKey();
+            metrics.gauge(prefix + ".queued", () -> getWaiting(lane));
+            metrics.gauge(prefix + ".inFlight", () -> getInFlight(lane));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private static int getDefaultReserved(Lane lane) {
+        switch (lane) {
+            case PAYMENT:
+                return 30;
+            case CAPTURE:
+                return 15;
+            case REFUND:
+                return 10;
+            default:
+                return 5;
+        }
+    }
+
+    /**
+     * @return the places reserved to the lane with the current capacity
+     */
+    public int getReserved(Lane lane) {
+        return getReserved(lane.ordinal(), getCapacity());
+    }
+
+    private int getReserved(int lane, int capacity) {
+        int percent = reservedPercents[lane];
+        return percent <= 0 ? 0 : Math.max(1, capacity * percent / 100);
+    }
+
+    /**
+     * @return the number of calls which can be in flight, the concurrency limit when it is lower than the connections
+     */
+    public int getCapacity() {
+        return limiter == null || !limiter.isEnabled() ? capacity : Math.min(capacity, limiter.getLimit());
+    }
+
+    public int getInFlight(Lane lane) {
+        lock.lock();
+        try {
+            return inFlight[lane.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting(Lane lane) {
+        lock.lock();
+        try {
+            return waiting[lane.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a place in the lane, waiting up to maxWait milliseconds and at most until the deadline.
+     * The place must be given back with {@link #release(Lane)}.
+     *
+     * @param deadline the deadline of the call, can be null
+     * @throws LaneBusyException if no place is free in time
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire(Lane lane, Deadline deadline) throws IOException {
+        acquire(lane, deadline == null ? maxWait : Math.min(maxWait, deadline.remainingMillis()));
+    }
+
+    /**
+     * Take a place in the lane without waiting, for the non-blocking calls.
+     *
+     * @throws LaneBusyException if no place is free
+     */
+    public void tryAcquire(Lane lane) throws IOException {
+        acquire(lane, 0);
+    }
+
+    private void acquire(Lane lane, long wait) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        int i = lane.ordinal();
+        long start = System.nanoTime();
+        boolean waited = false;
+        lock.lock();
+        try {
+            if (!canRun(i)) {
+                if (wait <= 0) {
+                    throw reject(lane);
+                }
+                waited = true;
+                waiting[i]++;
+                try {
+                    long nanos = TimeUnit.MILLISECONDS.toNanos(wait);
+                    while (!canRun(i)) {
+                        if (nanos <= 0) {
+                            throw reject(lane);
+                        }
+                        nanos = conditions[i].awaitNanos(nanos);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting in the " + lane.getKey() + " lane");
+                } finally {
+                    waiting[i]--;
+                    // the place may now go to a lower lane
+                    signalNext();
+                }
+            }
+            inFlight[i]++;
+        } finally {
+            lock.unlock();
+            if (waited) {
+                String prefix = "http.lane." + name + "." + lane.getKey();
+                metrics.increment(prefix + ".waited");
+                metrics.add(prefix + ".waitTime", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+    }
+
+    public void release(Lane lane) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            int i = lane.ordinal();
+            inFlight[i] = Math.max(0, inFlight[i] - 1);
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private boolean canRun(int lane) {
+        int capacity = getCapacity();
+        int totalInFlight = 0;
+        int totalReserved = 0;
+        int sharedInUse = 0;
+        for (int i = 0; i < LANES.length; i++) {
+            int reserved = getReserved(i, capacity);
+            totalInFlight += inFlight[i];
+            totalReserved += reserved;
+            sharedInUse += Math.max(0, inFlight[i] - reserved);
+        }
+        // a low concurrency limit leaves less than one place per lane
+        if (totalInFlight >= capacity) {
+            return false;
+        }
+        if (inFlight[lane] < getReserved(lane, capacity)) {
+            return true;
+        }
+        if (sharedInUse >= capacity - totalReserved) {
+            return false;
+        }
+        // the shared places go to the waiting calls of the higher lanes first
+        for (int i = 0; i < lane; i++) {
+            if (waiting[i] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wake up a call of the highest lane which can run. Must be called with the lock held.
+     */
+    private void signalNext() {
+        for (int i = 0; i < LANES.length; i++) {
+            if (waiting[i] > 0 && canRun(i)) {
+                conditions[i].signal();
+                return;
+            }
+        }
+    }
+
+    private LaneBusyException reject(Lane lane) {
+        metrics.increment("http.lane." + name + "." + lane.getKey() + ".rejected");
+        return new LaneBusyException(name, lane);
+    }
+}
@@ -0,0 +1,35 @@
+package com.payline.payment.template.utils;
+
+/**
+ * The lane schedulers of the sandbox and production environments, sized like the connection pools of all their hosts
+ * and capped by their concurrency limits.
+ */
+public class LaneSchedulers {
+    private final LaneScheduler sandbox;
+    private final LaneScheduler production;
+
+    public LaneSchedulers(HttpConfiguration configuration, HttpMetrics metrics, ConcurrencyLimiters limiters) {
+        this.sandbox = new LaneScheduler(CircuitBreakers.SANDBOX,
+                configuration.getInt(HttpConfiguration.POOL_SANDBOX_MAX_PER_ROUTE, 20) * configuration.getHosts(true).size(),
+                limiters.get(true), configuration, metrics);
+        this.production = new LaneScheduler(CircuitBreakers.PRODUCTION,
+                configuration.getInt(HttpConfiguration.POOL_PRODUCTION_MAX_PER_ROUTE, 100) * configuration.getHosts(false).size(),
+                limiters.get(false), configuration, metrics);
+    }
+
+    private static class SingletonWrapper {
+        private static final LaneSchedulers INSTANCE = new LaneSchedulers(HttpConfiguration.getInstance(), HttpMetrics.getInstance(),
+                ConcurrencyLimiters.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static LaneSchedulers getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    public LaneScheduler get(boolean isSandbox) {
+        return isSandbox ? sandbox : production;
+    }
+}
@@ -0,0 +1,47 @@
+package com.payline.payment.template.utils;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of the most recent latencies, in milliseconds.
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private long count;
+
+    /**
+     * @param window the number of latencies kept
+     */
+    public LatencyTracker(int window) {
+        this.samples = new long[Math.max(1, window)];
+    }
+
+    public synchronized void record(long millis) {
+        samples[(int) (count % samples.length)] = millis;
+        count++;
+    }
+
+    /**
+     * @return the number of latencies recorded since the creation
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency of the window at this percentile, -1 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (count == 0) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.min(sorted.length - 1, Math.max(0, index))];
+    }
+}
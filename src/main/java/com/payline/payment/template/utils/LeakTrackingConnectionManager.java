@@ -0,0 +1,95 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pool which remembers when and by which thread each connection was leased,
+ * to report the connections which are never given back to the pool.
+ */
+public class LeakTrackingConnectionManager extends PoolingHttpClientConnectionManager {
+    private static final Logger LOGGER = LogManager.getLogger(LeakTrackingConnectionManager.class);
+
+    private final Map<HttpClientConnection, Lease> leases = new ConcurrentHashMap<>();
+
+    private static class Lease {
+        private final HttpRoute route;
+        private final String threadName;
+        private final long leasedAt;
+        private boolean reported;
+
+        Lease(HttpRoute route, String threadName, long leasedAt) {
+            this.route = route;
+            this.threadName = threadName;
+            this.leasedAt = leasedAt;
+        }
+    }
+
+    public LeakTrackingConnectionManager(Registry<ConnectionSocketFactory> registry, DnsResolver dnsResolver) {
+        super(registry, dnsResolver);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+        final ConnectionRequest request = super.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                HttpClientConnection connection = request.get(timeout, tunit);
+                leases.put(connection, new Lease(route, Thread.currentThread().getName(), System.currentTimeMillis()));
+                return connection;
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection managedConn, Object state, long keepalive, TimeUnit tunit) {
+        leases.remove(managedConn);
+        super.releaseConnection(managedConn, state, keepalive, tunit);
+    }
+
+    /**
+     * Log the connections leased for longer than the threshold. Each connection is reported once.
+     *
+     * @param threshold the maximum lease duration in milliseconds
+     * @return the number of newly reported connections
+     */
+    public int reportLeaks(long threshold) {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Lease lease : leases.values()) {
+            long duration = now - lease.leasedAt;
+            if (!lease.reported && duration > threshold) {
+                lease.reported = true;
+                count++;
+                LOGGER.warn("connection to {} leased by thread {} for {} ms, it may never be released", lease.route.getTargetHost(), lease.threadName, duration);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of connections currently leased
+     */
+    public int getLeaseCount() {
+        return leases.size();
+    }
+}
@@ -0,0 +1,116 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A regional host of the partner API, with the moving averages (EWMA) of its latency and error rate.
+ * The host is ejected after too many failures, then admitted again once its ejection time is over; each ejection
+ * in a row doubles this time.
+ */
+public class PartnerEndpoint {
+    private final String host;
+    private final HttpHost target;
+    private final EndpointRouter.Settings settings;
+    private final HttpMetrics metrics;
+    private final String metricPrefix;
+
+    private double latency;
+    private double errorRate;
+    private int calls;
+    private int consecutiveFailures;
+    private int ejections;
+    private boolean ejected;
+    private long ejectedUntil;
+
+    PartnerEndpoint(String host, EndpointRouter.Settings settings, HttpMetrics metrics) {
+        this.host = host;
+        this.target = new HttpHost(host, -1, TemplateCardConstants.SCHEME);
+        this.settings = settings;
+        this.metrics = metrics;
+        this.metricPrefix = "http.endpoint." + host;
+        metrics.gauge(metricPrefix + ".latency", this::getLatency);
+        metrics.gauge(metricPrefix + ".errorRate", this::getErrorRate);
+        metrics.gauge(metricPrefix + ".ejected", () -> isEjected() ? 1 : 0);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public synchronized double getLatency() {
+        return latency;
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    public synchronized boolean isEjected() {
+        return ejected;
+    }
+
+    /**
+     * @return the URI with the host of this endpoint
+     */
+    URI rewrite(URI uri) throws URISyntaxException {
+        return URIUtils.rewriteURI(uri, target);
+    }
+
+    /**
+     * @return true if the endpoint can be used, admitting it again when its ejection time is over
+     */
+    synchronized boolean isAvailable(long now) {
+        if (ejected && now - ejectedUntil >= 0) {
+            // on probation: one more failure ejects it again
+            ejected = false;
+            errorRate = 0;
+            calls = 0;
+            consecutiveFailures = settings.consecutiveFailures - 1;
+            metrics.increment(metricPrefix + ".readmissions");
+        }
+        return !ejected;
+    }
+
+    synchronized long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * @return the expected cost of a call, lower is better
+     */
+    synchronized double getScore() {
+        return (latency + 1) * (1 + settings.errorPenalty * errorRate);
+    }
+
+    synchronized void onSuccess(long millis) {
+        latency = calls == 0 && latency == 0 ? millis : latency + settings.alpha * (millis - latency);
+        errorRate -= settings.alpha * errorRate;
+        calls++;
+        consecutiveFailures = 0;
+        ejections = 0;
+    }
+
+    /**
+     * @return true if the endpoint is ejected by this failure
+     */
+    synchronized boolean onFailure(long now) {
+        errorRate += settings.alpha * (1 - errorRate);
+        calls++;
+        consecutiveFailures++;
+        if (!ejected && (consecutiveFailures >= settings.consecutiveFailures
+                || (calls >= settings.minCalls && errorRate >= settings.ejectionErrorRate))) {
+            ejections++;
+            long duration = Math.min(settings.maxEjectionTime, settings.ejectionTime << Math.min(ejections - 1, 20));
+            ejected = true;
+            ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(duration);
+            metrics.increment(metricPrefix + ".ejections");
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Endpoint templates of the partner API, for the sandbox and the production environments.
+ */
+public class PartnerEndpoints {
+    private static final String CONTENT_TYPE_KEY = "Content-Type";
+    private static final String CONTENT_TYPE = "application/json";
+
+    private final Map<PartnerOperation, EndpointTemplate> sandbox = new EnumMap<>(PartnerOperation.class);
+    private final Map<PartnerOperation, EndpointTemplate> production = new EnumMap<>(PartnerOperation.class);
+
+    /**
+     * @param acceptEncoding the value of the header Accept-Encoding, null to not send it
+     */
+    public PartnerEndpoints(String acceptEncoding) {
+        Header[] headers = acceptEncoding == null
+                ? new Header[]{new BasicHeader(CONTENT_TYPE_KEY, CONTENT_TYPE)}
+                : new Header[]{new BasicHeader(CONTENT_TYPE_KEY, CONTENT_TYPE), new BasicHeader(HttpCompression.ACCEPT_ENCODING_KEY, acceptEncoding)};
+        register(sandbox, TemplateCardConstants.SANDBOX_URL, headers);
+        register(production, TemplateCardConstants.PRODUCTION_URL, headers);
+    }
+
+    private static void register(Map<PartnerOperation, EndpointTemplate> endpoints, String host, Header[] headers) {
+        String payments = TemplateCardConstants.SCHEME + "://" + host + "/" + TemplateCardConstants.PATH_VERSION + "/" + TemplateCardConstants.PATH + "/";
+        endpoints.put(PartnerOperation.INITIATE, new EndpointTemplate(PartnerOperation.INITIATE, payments, "", headers));
+        endpoints.put(PartnerOperation.CHECK, new EndpointTemplate(PartnerOperation.CHECK, payments, "", headers));
+        endpoints.put(PartnerOperation.RETRIEVE, new EndpointTemplate(PartnerOperation.RETRIEVE, payments, "", headers));
+        endpoints.put(PartnerOperation.CAPTURE, new EndpointTemplate(PartnerOperation.CAPTURE, payments, TemplateCardConstants.PATH_CAPTURE + "/", headers));
+        endpoints.put(PartnerOperation.REFUND, new EndpointTemplate(PartnerOperation.REFUND, payments, TemplateCardConstants.PATH_REFUND + "/", headers));
+    }
+
+    public EndpointTemplate get(PartnerOperation operation, boolean isSandbox) {
+        return isSandbox ? sandbox.get(operation) : production.get(operation);
+    }
+}
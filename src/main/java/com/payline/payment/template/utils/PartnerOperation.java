@@ -0,0 +1,44 @@
+package com.payline.payment.template.utils;
+
+/**
+ * Calls made to the partner API.
+ */
+public enum PartnerOperation {
+    INITIATE("initiate", false, Lane.PAYMENT),
+    RETRIEVE("retrieve", true, Lane.PAYMENT),
+    CAPTURE("capture", false, Lane.CAPTURE),
+    REFUND("refund", false, Lane.REFUND),
+    // initiate call made to check the contract parameters
+    CHECK("check", false, Lane.CHECK);
+
+    private final String key;
+    private final boolean idempotent;
+    private final Lane lane;
+
+    PartnerOperation(String key, boolean idempotent, Lane lane) {
+        this.key = key;
+        this.idempotent = idempotent;
+        this.lane = lane;
+    }
+
+    /**
+     * @return the name used in the configuration keys and the metric names
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return true if the call can be sent again once the partner may have processed it
+     */
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    /**
+     * @return the priority lane of the call
+     */
+    public Lane getLane() {
+        return lane;
+    }
+}
@@ -0,0 +1,350 @@
+package com.payline.payment.template.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.http.HttpStatus;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Emulation of the partner payments API, used by {@link SimulatorHttpTransport} and {@link SimulatorServer} to load test
+ * the plugin without reaching the partner.
+ * It answers the initiate (POST /v1/payments/), retrieve (GET /v1/payments/{id}/), capture (POST
+ * /v1/payments/{id}/capture/) and refund (POST /v1/payments/{id}/refunds/) calls with the statuses of
+ * {@link TemplateCardConstants} and the error numbers handled by {@link TemplateErrorHandler}. The latency, the error
+ * and throttling rates and the outcome of the payments are set in http.properties.
+ */
+public class PartnerSimulator {
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    // z-score of the 99th percentile of a normal distribution
+    private static final double Z_99 = 2.326;
+
+    public static final String STATUS_INITIATED = "INITIATED";
+
+    /**
+     * Answer of the simulated partner, to be sent after its delay.
+     */
+    public static final class Response {
+        private final int status;
+        private final byte[] body;
+        private final long delay;
+
+        Response(int status, JsonObject body, long delay) {
+            this.status = status;
+            this.body = body.toString().getBytes(StandardCharsets.UTF_8);
+            this.delay = delay;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the simulated latency of the partner in milliseconds
+         */
+        public long getDelay() {
+            return delay;
+        }
+
+        /**
+         * @return the value of the Retry-After header in seconds, null if the response has none
+         */
+        public String getRetryAfter() {
+            return status == SC_TOO_MANY_REQUESTS ? "1" : null;
+        }
+    }
+
+    private static final class Payment {
+        private final String id;
+        private final String created;
+        private final String amount;
+        private final String currency;
+        private final JsonObject redirect;
+        private final JsonElement customer;
+        private final String notificationUrl;
+        private String updated;
+        private String status = STATUS_INITIATED;
+        private BigDecimal refunded = BigDecimal.ZERO;
+
+        Payment(String id, String amount, String currency, JsonObject redirect, JsonElement customer, String notificationUrl) {
+            this.id = id;
+            this.created = String.valueOf(System.currentTimeMillis());
+            this.updated = created;
+            this.amount = amount;
+            this.currency = currency;
+            this.redirect = redirect;
+            this.customer = customer;
+            this.notificationUrl = notificationUrl;
+        }
+
+        void setStatus(String status) {
+            this.status = status;
+            this.updated = String.valueOf(System.currentTimeMillis());
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("object", "PAYMENT");
+            json.addProperty("id", id);
+            json.addProperty("created", created);
+            json.addProperty("updated", updated);
+            json.addProperty("amount", amount);
+            json.addProperty("currency", currency);
+            json.addProperty("status", status);
+            json.addProperty("type", "TEMPLATE");
+            json.add("redirect", redirect);
+            json.add("customer", customer);
+            json.addProperty("notification_url", notificationUrl);
+            if (TemplateCardConstants.STATUS_SUCCESS.equals(status)) {
+                JsonObject card = new JsonObject();
+                card.addProperty("serial", "0000000009903127");
+                card.addProperty("type", "00002");
+                card.addProperty("country", "FR");
+                card.addProperty("currency", currency);
+                card.addProperty("amount", amount);
+                JsonArray cards = new JsonArray();
+                cards.add(card);
+                json.add("card_details", cards);
+            }
+            return json;
+        }
+    }
+
+    private final HttpMetrics metrics;
+    private final double medianLatency;
+    private final double sigma;
+    private final double errorRate;
+    private final double throttleRate;
+    private final double authorizedWeight;
+    private final double canceledWeight;
+    private final double expiredWeight;
+    private final boolean strict;
+    private final Map<String, Payment> payments;
+
+    public PartnerSimulator(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.metrics = metrics;
+        this.medianLatency = Math.max(0, configuration.getDouble(HttpConfiguration.SIMULATOR_LATENCY_MEDIAN, 50));
+        double p99 = Math.max(medianLatency, configuration.getDouble(HttpConfiguration.SIMULATOR_LATENCY_P99, 250));
+        this.sigma = medianLatency > 0 ? Math.log(p99 / medianLatency) / Z_99 : 0;
+        this.errorRate = configuration.getDouble(HttpConfiguration.SIMULATOR_ERROR_RATE, 0);
+        this.throttleRate = configuration.getDouble(HttpConfiguration.SIMULATOR_THROTTLE_RATE, 0);
+        this.authorizedWeight = Math.max(0, configuration.getDouble(HttpConfiguration.SIMULATOR_OUTCOME_AUTHORIZED, 90));
+        this.canceledWeight = Math.max(0, configuration.getDouble(HttpConfiguration.SIMULATOR_OUTCOME_CANCELED_CUSTOMER, 5));
+        this.expiredWeight = Math.max(0, configuration.getDouble(HttpConfiguration.SIMULATOR_OUTCOME_EXPIRED, 5));
+        this.strict = configuration.getBoolean(HttpConfiguration.SIMULATOR_STRICT, false);
+        final int maxPayments = configuration.getInt(HttpConfiguration.SIMULATOR_MAX_PAYMENTS, 100000);
+        // the oldest payments are forgotten, so a long load test does not fill the heap
+        this.payments = new LinkedHashMap<String, Payment>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Payment> eldest) {
+                return size() > maxPayments;
+            }
+        };
+    }
+
+    /**
+     * @param method the HTTP method
+     * @param path the decoded path of the request
+     * @param authorization the value of the Authorization header, null if missing
+     * @param body the decoded body of the request, empty if none
+     */
+    public Response handle(String method, String path, String authorization, byte[] body) {
+        metrics.increment("http.simulator.requests");
+        long delay = nextLatency();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (throttleRate > 0 && random.nextDouble() < throttleRate) {
+            metrics.increment("http.simulator.throttled");
+            return error(SC_TOO_MANY_REQUESTS, "too_many_requests", null, "rate limit exceeded", delay);
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            metrics.increment("http.simulator.errors");
+            return error(HttpStatus.SC_INTERNAL_SERVER_ERROR, "general_technical_error", "10007", "simulated failure", delay);
+        }
+        if (DataChecker.isEmpty(authorization)) {
+            return error(HttpStatus.SC_UNAUTHORIZED, "invalid_api_key", "10008", "authentication failed", delay);
+        }
+
+        String[] segments = trim(path).split("/");
+        boolean payments = segments.length >= 2 && TemplateCardConstants.PATH_VERSION.equals(segments[0])
+                && TemplateCardConstants.PATH.equals(segments[1]);
+        if (payments && segments.length == 2 && "POST".equals(method)) {
+            return initiate(body, delay);
+        } else if (payments && segments.length == 3 && "GET".equals(method)) {
+            return retrieve(segments[2], delay);
+        } else if (payments && segments.length == 4 && "POST".equals(method) && TemplateCardConstants.PATH_CAPTURE.equals(segments[3])) {
+            return capture(segments[2], delay);
+        } else if (payments && segments.length == 4 && "POST".equals(method) && TemplateCardConstants.PATH_REFUND.equals(segments[3])) {
+            return refund(segments[2], body, delay);
+        }
+        return error(HttpStatus.SC_NOT_FOUND, "invalid_request_parameter", "10028", "unknown endpoint " + method + " " + path, delay);
+    }
+
+    /**
+     * @return a latency in milliseconds drawn from a log-normal distribution with the configured median and 99th percentile
+     */
+    public long nextLatency() {
+        if (medianLatency <= 0) {
+            return 0;
+        }
+        return Math.round(medianLatency * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private Response initiate(byte[] body, long delay) {
+        JsonObject request;
+        try {
+            request = parse(body);
+        } catch (JsonParseException | IllegalStateException e) {
+            return error(HttpStatus.SC_BAD_REQUEST, "invalid_request_parameter", "10028", "invalid JSON body", delay);
+        }
+        String amount = getString(request, "amount");
+        String currency = getString(request, "currency");
+        if (amount == null || currency == null) {
+            return error(HttpStatus.SC_BAD_REQUEST, "invalid_request_parameter", "10028", "amount and currency are mandatory", delay);
+        }
+
+        String id = "pay_" + UUID.randomUUID().toString().replace("-", "");
+        JsonObject redirect = request.has("redirect") && request.get("redirect").isJsonObject()
+                ? request.getAsJsonObject("redirect").deepCopy() : new JsonObject();
+        redirect.addProperty("auth_url", "https://customer.template.com/rest/payment/auth?id=" + id);
+        Payment payment = new Payment(id, amount, currency, redirect, request.get("customer"), getString(request, "notification_url"));
+        synchronized (payments) {
+            payments.put(id, payment);
+        }
+        metrics.increment("http.simulator.initiated");
+        return new Response(HttpStatus.SC_CREATED, payment.toJson(), delay);
+    }
+
+    private Response retrieve(String id, long delay) {
+        Payment payment = find(id);
+        if (payment == null) {
+            return error(HttpStatus.SC_NOT_FOUND, "invalid_request_parameter", "10028", "unknown payment " + id, delay);
+        }
+        synchronized (payment) {
+            if (STATUS_INITIATED.equals(payment.status)) {
+                // the customer went through the payment page
+                payment.setStatus(nextOutcome());
+            }
+            return new Response(HttpStatus.SC_OK, payment.toJson(), delay);
+        }
+    }
+
+    private Response capture(String id, long delay) {
+        Payment payment = find(id);
+        if (payment == null) {
+            return error(HttpStatus.SC_NOT_FOUND, "invalid_request_parameter", "10028", "unknown payment " + id, delay);
+        }
+        synchronized (payment) {
+            if (!TemplateCardConstants.STATUS_AUTHORIZED.equals(payment.status)) {
+                return error(HttpStatus.SC_CONFLICT, "payment_invalid_state", "2017", "payment " + payment.status, delay);
+            }
+            payment.setStatus(TemplateCardConstants.STATUS_SUCCESS);
+            metrics.increment("http.simulator.captured");
+            return new Response(HttpStatus.SC_OK, payment.toJson(), delay);
+        }
+    }
+
+    private Response refund(String id, byte[] body, long delay) {
+        Payment payment = find(id);
+        if (payment == null) {
+            return error(HttpStatus.SC_NOT_FOUND, "MERCHANT_REFUND_MISSING_TRANSACTION", null, "unknown payment " + id, delay);
+        }
+        BigDecimal amount;
+        boolean capture;
+        try {
+            JsonObject request = parse(body);
+            amount = new BigDecimal(getString(request, "amount"));
+            capture = request.has("capture") && request.get("capture").getAsBoolean();
+        } catch (RuntimeException e) {
+            return error(HttpStatus.SC_BAD_REQUEST, "INVALID_AMOUNT", null, "invalid refund amount", delay);
+        }
+        synchronized (payment) {
+            if (!TemplateCardConstants.STATUS_SUCCESS.equals(payment.status)) {
+                return error(HttpStatus.SC_CONFLICT, "MERCHANT_REFUND_ORIGINAL_TRANSACTION_INVALID_STATE", null, "payment " + payment.status, delay);
+            }
+            BigDecimal refunded = payment.refunded.add(amount);
+            if (amount.signum() <= 0 || refunded.compareTo(new BigDecimal(payment.amount)) > 0) {
+                return error(HttpStatus.SC_BAD_REQUEST, "MERCHANT_REFUND_EXCEEDS_ORIGINAL_TRANSACTION", null, "refund above the payment amount", delay);
+            }
+
+            // the refund is validated first, then executed when it is sent with capture set
+            JsonObject json = new JsonObject();
+            json.addProperty("object", "REFUND");
+            json.addProperty("id", "ref_" + payment.id);
+            json.addProperty("amount", amount.toPlainString());
+            json.addProperty("currency", payment.currency);
+            if (capture) {
+                payment.refunded = refunded;
+                json.addProperty("status", TemplateCardConstants.STATUS_SUCCESS);
+                metrics.increment("http.simulator.refunded");
+            } else {
+                json.addProperty("status", TemplateCardConstants.STATUS_REFUND_SUCCESS);
+            }
+            return new Response(HttpStatus.SC_OK, json, delay);
+        }
+    }
+
+    private Payment find(String id) {
+        synchronized (payments) {
+            Payment payment = payments.get(id);
+            if (payment == null && !strict) {
+                // a payment initiated elsewhere, for example by another instance of the load test
+                payment = new Payment(id, "1.00", "EUR", new JsonObject(), null, null);
+                payments.put(id, payment);
+            }
+            return payment;
+        }
+    }
+
+    private String nextOutcome() {
+        double draw = ThreadLocalRandom.current().nextDouble() * (authorizedWeight + canceledWeight + expiredWeight);
+        if (draw < authorizedWeight) {
+            return TemplateCardConstants.STATUS_AUTHORIZED;
+        } else if (draw < authorizedWeight + canceledWeight) {
+            return TemplateCardConstants.STATUS_CANCELED_CUSTOMER;
+        }
+        return TemplateCardConstants.STATUS_EXPIRED;
+    }
+
+    private static Response error(int status, String code, String number, String message, long delay) {
+        JsonObject json = new JsonObject();
+        json.addProperty("code", code);
+        json.addProperty("message", message);
+        if (number != null) {
+            json.addProperty("number", number);
+        }
+        return new Response(status, json, delay);
+    }
+
+    private static JsonObject parse(byte[] body) {
+        return new JsonParser().parse(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    private static String getString(JsonObject json, String key) {
+        JsonElement element = json.get(key);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static String trim(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+}
@@ -0,0 +1,13 @@
+package com.payline.payment.template.utils;
+
+import java.io.IOException;
+
+/**
+ * The partner host answered 503 without telling when to call again: the host is down or overloaded, and did not process
+ * the request. The failure counts against the host, and the call is retried on another one.
+ */
+public class PartnerUnavailableException extends IOException {
+    public PartnerUnavailableException(String host) {
+        super("the partner host " + host + " is unavailable");
+    }
+}
@@ -0,0 +1,66 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Request entity sent from a buffer of the {@link RequestBufferPool}, without copy. It can be sent again by the retries
+ * of the call; the buffer is released once the call is over.
+ */
+public class PooledEntity extends AbstractHttpEntity {
+    private final RequestBufferPool.Buffer buffer;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public PooledEntity(RequestBufferPool.Buffer buffer, ContentType contentType) {
+        this.buffer = buffer;
+        setContentType(contentType.toString());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return buffer.size();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return buffer.getInputStream();
+    }
+
+    /**
+     * @return a read-only view of the content, for the transports which send buffers rather than streams
+     */
+    public ByteBuffer getByteBuffer() {
+        return buffer.getByteBuffer();
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        buffer.writeTo(outstream);
+        outstream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Give the buffer back to the pool, once the entity will not be sent any more. Only the first call has an effect.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            buffer.release();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket of the calls made with one partner credential.
+ * The bucket is filled at the configured rate, or at the rate the partner allows until the end of its window when it
+ * sends the RateLimit-Remaining and RateLimit-Reset headers. After a 429 response, or a 503 response carrying Retry-After
+ * or RateLimit headers, or when no call remains in the window, no call is sent until Retry-After or the reset. The calls
+ * wait for their turn up to maxWait milliseconds, and are rejected when the wait would be longer. A plain 503 is a failure
+ * of the partner host, not a limit of the credential: it is left to the circuit breaker and the router.
+ */
+public class RateLimit {
+    // not defined by HttpStatus in httpcore 4.4
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final String[] REMAINING_HEADERS = {"RateLimit-Remaining", "X-RateLimit-Remaining"};
+    private static final String[] RESET_HEADERS = {"RateLimit-Reset", "X-RateLimit-Reset"};
+    // above this value the reset is an epoch in seconds, not a delay
+    private static final long EPOCH_SECONDS = 1_000_000_000L;
+
+    private final double rate;
+    private final double burst;
+    private final long maxWait;
+    private final long defaultRetryAfter;
+    private final HttpMetrics metrics;
+
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private double windowRate;
+    private long windowEnd = refilledAt;
+    private long blockedUntil = refilledAt;
+
+    public RateLimit(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.rate = Math.max(0, configuration.getDouble(HttpConfiguration.RATE_LIMIT_RATE, 0));
+        this.burst = Math.max(1, configuration.getInt(HttpConfiguration.RATE_LIMIT_BURST, 10));
+        this.maxWait = Math.max(0, configuration.getLong(HttpConfiguration.RATE_LIMIT_MAX_WAIT, 1000L));
+        this.defaultRetryAfter = Math.max(0, configuration.getLong(HttpConfiguration.RATE_LIMIT_DEFAULT_RETRY_AFTER, 1000L));
+        this.metrics = metrics;
+        this.tokens = burst;
+    }
+
+    /**
+     * Reserve the turn of the next call.
+     *
+     * @param deadline the deadline of the call, can be null
+     * @return the time in milliseconds to wait before sending the call
+     * @throws RateLimitedException if the wait would be longer than maxWait or than the remaining time
+     */
+    public long reserve(Deadline deadline) throws RateLimitedException {
+        // a spent deadline is reported by the deadline check, not as a rate limit
+        long limit = deadline == null ? maxWait : Math.max(0, Math.min(maxWait, deadline.remainingMillis()));
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long blocked = Math.max(0, blockedUntil - now);
+            double currentRate = windowEnd - now > 0 ? windowRate : rate;
+            long paced = 0;
+            if (currentRate > 0) {
+                tokens = Math.min(burst, tokens + currentRate * (now - refilledAt) / TimeUnit.SECONDS.toNanos(1));
+                if (tokens < 1) {
+                    paced = (long) ((1 - tokens) / currentRate * TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+            refilledAt = now;
+            wait = TimeUnit.NANOSECONDS.toMillis(Math.max(blocked, paced));
+            if (wait <= limit && currentRate > 0) {
+                tokens--;
+            }
+        }
+        if (wait > limit) {
+            metrics.increment("http.rateLimit.rejected");
+            throw new RateLimitedException("the rate limit of the partner is reached, next call in " + wait + " ms", wait);
+        }
+        if (wait > 0) {
+            metrics.increment("http.rateLimit.paced");
+        }
+        return wait;
+    }
+
+    /**
+     * Read the rate limit headers of a partner response.
+     *
+     * @throws RateLimitedException if the partner refused the call because of its rate limit
+     */
+    public void update(HttpResponse response) throws RateLimitedException {
+        long now = System.nanoTime();
+        int status = response.getStatusLine().getStatusCode();
+        if (status == SC_TOO_MANY_REQUESTS || status == HttpStatus.SC_SERVICE_UNAVAILABLE && hasRateLimitHeaders(response)) {
+            long retryAfter = getRetryAfter(response, defaultRetryAfter);
+            block(now, retryAfter);
+            metrics.increment("http.rateLimit.throttled");
+            throw new RateLimitedException("the partner answered " + status + ", next call in " + retryAfter + " ms", retryAfter);
+        }
+
+        long remaining = getLong(response, REMAINING_HEADERS);
+        long reset = getReset(response);
+        if (remaining < 0 || reset < 0) {
+            return;
+        }
+        if (remaining == 0) {
+            block(now, reset);
+        } else {
+            synchronized (this) {
+                windowRate = remaining * 1000d / Math.max(1, reset);
+                windowEnd = now + TimeUnit.MILLISECONDS.toNanos(reset);
+            }
+        }
+    }
+
+    /**
+     * @return true if the response tells when the credential can call again
+     */
+    private static boolean hasRateLimitHeaders(HttpResponse response) {
+        return response.containsHeader("Retry-After") || getLong(response, REMAINING_HEADERS) >= 0 || getLong(response, RESET_HEADERS) >= 0;
+    }
+
+    private synchronized void block(long now, long millis) {
+        long until = now + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - blockedUntil > 0) {
+            blockedUntil = until;
+        }
+    }
+
+    /**
+     * @return the Retry-After header in milliseconds, in seconds or as an HTTP date
+     */
+    static long getRetryAfter(HttpResponse response, long defaultValue) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null || header.getValue() == null) {
+            return defaultValue;
+        }
+        String value = header.getValue().trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date == null ? defaultValue : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return the delay in milliseconds before the window resets, -1 if unknown
+     */
+    private static long getReset(HttpResponse response) {
+        long reset = getLong(response, RESET_HEADERS);
+        if (reset < 0) {
+            return -1;
+        }
+        if (reset > EPOCH_SECONDS) {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(reset) - System.currentTimeMillis());
+        }
+        return TimeUnit.SECONDS.toMillis(reset);
+    }
+
+    private static long getLong(HttpResponse response, String[] names) {
+        for (String name : names) {
+            Header header = response.getFirstHeader(name);
+            if (header != null && header.getValue() != null) {
+                try {
+                    return Long.parseLong(header.getValue().trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,25 @@
+package com.payline.payment.template.utils;
+
+import com.payline.pmapi.bean.common.FailureCause;
+
+/**
+ * The rate limit of the partner is reached: the partner answered 429, or 503 with Retry-After or RateLimit headers, or
+ * the call would have waited too long for the window to reset.
+ */
+public class RateLimitedException extends CallRejectedException {
+    public static final String ERROR_CODE = "RATE_LIMITED";
+
+    private final long retryAfter;
+
+    /**
+     * @param retryAfter the time in milliseconds before a new call can be sent
+     */
+    public RateLimitedException(String message, long retryAfter) {
+        super(ERROR_CODE, FailureCause.COMMUNICATION_ERROR, message);
+        this.retryAfter = retryAfter;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
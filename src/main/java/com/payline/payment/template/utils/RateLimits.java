@@ -0,0 +1,67 @@
+package com.payline.payment.template.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The rate limits of the partner credentials, per environment, created on their first call. The credentials themselves
+ * are not kept: the rate limits are found by a SHA-256 digest of the Authorization header.
+ */
+public class RateLimits {
+    private static final int MAX_CREDENTIALS = 1000;
+
+    private final HttpConfiguration configuration;
+    private final HttpMetrics metrics;
+    private final boolean enabled;
+    private final Map<String, RateLimit> rateLimits = new ConcurrentHashMap<>();
+
+    public RateLimits(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.configuration = configuration;
+        this.metrics = metrics;
+        this.enabled = configuration.getBoolean(HttpConfiguration.RATE_LIMIT_ENABLED, true);
+    }
+
+    private static class SingletonWrapper {
+        private static final RateLimits INSTANCE = new RateLimits(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static RateLimits getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    /**
+     * @param credential the Authorization header of the call, can be null
+     * @return the rate limit of the credential, null if the rate limits are disabled
+     */
+    public RateLimit get(boolean isSandbox, String credential) {
+        if (!enabled) {
+            return null;
+        }
+        String key = (isSandbox ? CircuitBreakers.SANDBOX : CircuitBreakers.PRODUCTION) + ":" + (credential == null ? "" : digest(credential));
+        RateLimit rateLimit = rateLimits.get(key);
+        if (rateLimit == null) {
+            if (rateLimits.size() >= MAX_CREDENTIALS) {
+                rateLimits.clear();
+            }
+            rateLimit = rateLimits.computeIfAbsent(key, k -> new RateLimit(configuration, metrics));
+        }
+        return rateLimit;
+    }
+
+    private static String digest(String credential) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(credential.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is provided by every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
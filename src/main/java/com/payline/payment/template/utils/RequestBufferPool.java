@@ -0,0 +1,200 @@
+package com.payline.payment.template.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Buffers in which the request bodies are encoded, reused from one call to the next.
+ * A body is written once, as UTF-8 bytes, and sent from its buffer without copy; the buffer comes back to the pool when
+ * the call is over. At most http.buffer.pool.size buffers are kept, and a buffer grown beyond http.buffer.maxRetained
+ * bytes by a large body is left to the garbage collector.
+ */
+public class RequestBufferPool {
+    public static final String ALLOCATED_METRIC = "http.buffer.allocated";
+    public static final String REUSED_METRIC = "http.buffer.reused";
+
+    private final HttpMetrics metrics;
+    private final BlockingQueue<Buffer> buffers;
+    private final int initialSize;
+    private final int maxRetained;
+
+    private static class SingletonWrapper {
+        private static final RequestBufferPool INSTANCE = new RequestBufferPool(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static RequestBufferPool getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    public RequestBufferPool(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.metrics = metrics;
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, configuration.getInt(HttpConfiguration.BUFFER_POOL_SIZE, 64)));
+        this.initialSize = configuration.getInt(HttpConfiguration.BUFFER_INITIAL_SIZE, 1024);
+        this.maxRetained = configuration.getInt(HttpConfiguration.BUFFER_MAX_RETAINED, 64 * 1024);
+        metrics.gauge("http.buffer.pooled", buffers::size);
+    }
+
+    /**
+     * @return an empty buffer, to give back with {@link Buffer#release()}
+     */
+    public Buffer acquire() {
+        Buffer buffer = buffers.poll();
+        if (buffer != null) {
+            metrics.increment(REUSED_METRIC);
+            return buffer;
+        }
+        metrics.increment(ALLOCATED_METRIC);
+        return new Buffer(this, initialSize);
+    }
+
+    private void release(Buffer buffer) {
+        if (buffer.capacity() <= maxRetained) {
+            buffer.reset();
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Growable byte array whose content is read in place. Its writer encodes the characters in UTF-8 right into the
+     * array, without the intermediate char and byte buffers of an OutputStreamWriter.
+     */
+    public static final class Buffer extends ByteArrayOutputStream {
+        private final RequestBufferPool pool;
+        private final Writer writer = new Utf8Writer();
+        // first half of a surrogate pair, waiting for the second one
+        private char highSurrogate;
+
+        private Buffer(RequestBufferPool pool, int size) {
+            super(size);
+            this.pool = pool;
+        }
+
+        /**
+         * @return a writer encoding to the end of the buffer
+         */
+        public Writer getWriter() {
+            return writer;
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            highSurrogate = 0;
+        }
+
+        /**
+         * @return a stream on the content of the buffer, which is not copied
+         */
+        public synchronized InputStream getInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        /**
+         * @return a read-only view of the content of the buffer, which is not copied
+         */
+        public synchronized ByteBuffer getByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+        }
+
+        synchronized int capacity() {
+            return buf.length;
+        }
+
+        /**
+         * Give the buffer back to its pool; it must not be used any more.
+         */
+        public void release() {
+            pool.release(this);
+        }
+
+        /**
+         * Make room for len more characters, 3 bytes at most each (a surrogate pair takes 4 bytes), and for a pending
+         * lone surrogate.
+         */
+        private void ensureRoom(int len) {
+            long needed = count + 3L * len + 1;
+            if (needed > buf.length) {
+                if (needed > Integer.MAX_VALUE - 8) {
+                    throw new OutOfMemoryError("request body too large");
+                }
+                buf = Arrays.copyOf(buf, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(2L * buf.length, needed)));
+            }
+        }
+
+        /**
+         * Same output as the UTF-8 encoder of the JDK: a lone surrogate is replaced by '?'.
+         */
+        private void encode(char c) {
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+                    buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                    return;
+                }
+                buf[count++] = '?';
+            }
+            if (c < 0x80) {
+                buf[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                buf[count++] = '?';
+            } else {
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        private final class Utf8Writer extends Writer {
+            @Override
+            public void write(int c) {
+                ensureRoom(1);
+                encode((char) c);
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                ensureRoom(len);
+                for (int i = off; i < off + len; i++) {
+                    encode(cbuf[i]);
+                }
+            }
+
+            @Override
+            public void write(String str, int off, int len) {
+                ensureRoom(len);
+                for (int i = off; i < off + len; i++) {
+                    encode(str.charAt(i));
+                }
+            }
+
+            @Override
+            public void flush() {
+                // the characters are encoded as soon as they are written
+            }
+
+            @Override
+            public void close() {
+                // the buffer is released to its pool instead
+            }
+        }
+    }
+}
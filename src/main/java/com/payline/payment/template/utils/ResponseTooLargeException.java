@@ -0,0 +1,13 @@
+package com.payline.payment.template.utils;
+
+import java.io.IOException;
+
+/**
+ * The body of the partner response is larger than http.response.maxBytes: it is not read any further and the connection
+ * is closed. The call is not retried, the partner would send the same response again.
+ */
+public class ResponseTooLargeException extends IOException {
+    public ResponseTooLargeException(long maxBytes) {
+        super("the partner response is larger than " + maxBytes + " bytes");
+    }
+}
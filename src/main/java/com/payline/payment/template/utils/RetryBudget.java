@@ -0,0 +1,41 @@
+package com.payline.payment.template.utils;
+
+/**
+ * Token bucket limiting the retries to a ratio of the calls, so the retries cannot amplify an outage of the partner.
+ * Each call deposits the ratio, each retry withdraws one token; the reserve lets a few retries through when the
+ * traffic is low.
+ */
+public class RetryBudget {
+    private final double ratio;
+    private final double capacity;
+    private double balance;
+
+    /**
+     * @param ratio the tokens deposited by each call, 0.1 allows 10% of extra load
+     * @param reserve the maximum number of tokens, the bucket starts full
+     */
+    public RetryBudget(double ratio, int reserve) {
+        this.ratio = Math.max(0, ratio);
+        this.capacity = Math.max(1, reserve);
+        this.balance = capacity;
+    }
+
+    public synchronized void deposit() {
+        balance = Math.min(capacity, balance + ratio);
+    }
+
+    /**
+     * @return true if a token was withdrawn, false if the budget is exhausted
+     */
+    public synchronized boolean tryWithdraw() {
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+
+    public synchronized double getBalance() {
+        return balance;
+    }
+}
@@ -0,0 +1,176 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decide if a failed call to the partner is sent again, and when.
+ * <ul>
+ * <li>the idempotent calls are retried on any I/O error, the other calls only when the connection could not be
+ * opened or the host answered 503, so the partner never processed them</li>
+ * <li>the delay grows exponentially with full jitter, so the clients do not retry all at once</li>
+ * <li>the retries are limited by a {@link RetryBudget} shared by all the services</li>
+ * </ul>
+ */
+public class RetryPolicy {
+    private static final Logger LOGGER = LogManager.getLogger(RetryPolicy.class);
+
+    // java.net.http is not available in Java 8
+    private static final String JDK_CONNECT_TIMEOUT = "java.net.http.HttpConnectTimeoutException";
+
+    private final boolean enabled;
+    private final Map<PartnerOperation, Integer> maxAttempts = new EnumMap<>(PartnerOperation.class);
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final RetryBudget budget;
+    private final HttpMetrics metrics;
+
+    public RetryPolicy(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.enabled = configuration.getBoolean(HttpConfiguration.RETRY_ENABLED, true);
+        for (PartnerOperation operation : PartnerOperation.values()) {
+            maxAttempts.put(operation, Math.max(1, configuration.getInt(HttpConfiguration.RETRY_MAX_ATTEMPTS, operation, 3)));
+        }
+        this.initialBackoff = Math.max(1, configuration.getLong(HttpConfiguration.RETRY_BACKOFF_INITIAL, 100L));
+        this.maxBackoff = Math.max(initialBackoff, configuration.getLong(HttpConfiguration.RETRY_BACKOFF_MAX, 2 * 1000L));
+        this.budget = new RetryBudget(
+                configuration.getDouble(HttpConfiguration.RETRY_BUDGET_RATIO, 0.1),
+                configuration.getInt(HttpConfiguration.RETRY_BUDGET_RESERVE, 10));
+        this.metrics = metrics;
+
+        metrics.gauge("http.retry.budget.balance", budget::getBalance);
+    }
+
+    private static class SingletonWrapper {
+        private static final RetryPolicy INSTANCE = new RetryPolicy(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static RetryPolicy getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    private static class SchedulerWrapper {
+        private static final ScheduledExecutorService INSTANCE = createScheduler();
+
+        private static ScheduledExecutorService createScheduler() {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "template-retry-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            HttpLifecycle.getInstance().register(scheduler::shutdownNow);
+            return scheduler;
+        }
+    }
+
+    /**
+     * Must be called once for each call, before its first attempt, to fill the retry budget.
+     */
+    public void onCall() {
+        budget.deposit();
+    }
+
+    /**
+     * @param operation the failed operation
+     * @param e the failure
+     * @param attempts the number of attempts already made, 1 after the first failure
+     * @return the delay in milliseconds before the next attempt, or -1 if the call must not be retried
+     */
+    public long nextDelay(PartnerOperation operation, IOException e, int attempts) {
+        if (!enabled || !isRetryable(operation, e)) {
+            return -1;
+        }
+        if (attempts >= maxAttempts.get(operation)) {
+            metrics.increment("http.retry.maxAttemptsReached");
+            return -1;
+        }
+        if (!budget.tryWithdraw()) {
+            metrics.increment("http.retry.budgetExhausted");
+            LOGGER.warn("retry budget exhausted, the {} call is not retried", operation.getKey());
+            return -1;
+        }
+
+        metrics.increment("http.retry.attempts");
+        metrics.increment("http.retry.attempts." + operation.getKey());
+        long delay = backoff(attempts);
+        LOGGER.info("{} call failed ({}), attempt {} in {} ms", operation.getKey(), e.toString(), attempts + 1, delay);
+        return delay;
+    }
+
+    /**
+     * @param attempts the number of attempts already made
+     * @return a random delay between 0 and initial * 2^(attempts - 1), capped by the maximum delay
+     */
+    public long backoff(int attempts) {
+        int shift = Math.min(Math.max(0, attempts - 1), 30);
+        long ceiling = Math.min(maxBackoff, initialBackoff << shift);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Run the task after the delay, on a thread shared by all the asynchronous calls.
+     * Once the HTTP layer is closed the task runs at once, so that the call ends.
+     */
+    public void schedule(Runnable task, long delay) {
+        try {
+            SchedulerWrapper.INSTANCE.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    public boolean isRetryable(PartnerOperation operation, IOException e) {
+        if (e instanceof CallRejectedException || e instanceof ResponseTooLargeException || Thread.currentThread().isInterrupted() || isInterruption(e)) {
+            return false;
+        }
+        if (isConnectFailure(e) || e instanceof PartnerUnavailableException) {
+            return true;
+        }
+        return operation.isIdempotent() && !(e instanceof SSLException);
+    }
+
+    /**
+     * @return true if the request could not be sent because no connection was opened
+     */
+    public static boolean isConnectFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ConnectException
+                    || t instanceof ConnectTimeoutException
+                    || t instanceof NoRouteToHostException
+                    || t instanceof UnknownHostException
+                    || JDK_CONNECT_TIMEOUT.equals(t.getClass().getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the call was interrupted or cancelled, rather than failed
+     */
+    static boolean isInterruption(Throwable e) {
+        return e instanceof CancellationException
+                || e instanceof InterruptedIOException
+                && !(e instanceof SocketTimeoutException)
+                && !(e instanceof ConnectTimeoutException);
+    }
+}
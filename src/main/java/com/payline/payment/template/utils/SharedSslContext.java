@@ -0,0 +1,122 @@
+package com.payline.payment.template.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SSLContext shared by all the transports, so the TLS sessions opened by any of them can be resumed by the others.
+ * It is the default context of the JVM, which holds the client certificates of javax.net.ssl.keyStore and the trust
+ * store, or the context installed by the host application. The session cache, the protocols and the cipher suites are
+ * configurable; the size and the timeout of the cache apply to the whole JVM.
+ */
+public class SharedSslContext {
+    private static final Logger LOGGER = LogManager.getLogger(SharedSslContext.class);
+
+    public static final String FULL_HANDSHAKES_METRIC = "http.tls.handshakes.full";
+    public static final String RESUMED_HANDSHAKES_METRIC = "http.tls.handshakes.resumed";
+    public static final String HANDSHAKE_TIME_METRIC = "http.tls.handshakes.millis";
+
+    private final SSLContext context;
+    private final String[] protocols;
+    private final String[] cipherSuites;
+
+    public SharedSslContext(HttpConfiguration configuration) {
+        try {
+            this.context = SSLContext.getDefault();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("unable to create the SSLContext", e);
+        }
+
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        sessionContext.setSessionCacheSize(configuration.getInt(HttpConfiguration.TLS_SESSION_CACHE_SIZE, 1000));
+        sessionContext.setSessionTimeout(configuration.getInt(HttpConfiguration.TLS_SESSION_TIMEOUT, 3600));
+
+        SSLParameters supported = context.getSupportedSSLParameters();
+        this.protocols = filter(configuration.getProperty(HttpConfiguration.TLS_PROTOCOLS), supported.getProtocols());
+        this.cipherSuites = filter(configuration.getProperty(HttpConfiguration.TLS_CIPHERS), supported.getCipherSuites());
+    }
+
+    private static class SingletonWrapper {
+        private static final SharedSslContext INSTANCE = new SharedSslContext(HttpConfiguration.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static SharedSslContext getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    /**
+     * Keep the configured values which are supported by the JVM.
+     *
+     * @return null to use the JVM defaults
+     */
+    private static String[] filter(String configured, String[] supported) {
+        if (configured == null) {
+            return null;
+        }
+        List<String> supportedList = Arrays.asList(supported);
+        List<String> values = new ArrayList<>();
+        for (String value : configured.split(",")) {
+            if (supportedList.contains(value.trim())) {
+                values.add(value.trim());
+            } else {
+                LOGGER.warn("{} is not supported by the JVM and will not be used", value.trim());
+            }
+        }
+        return values.isEmpty() ? null : values.toArray(new String[0]);
+    }
+
+    public SSLContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return the enabled protocols, null for the JVM defaults
+     */
+    public String[] getProtocols() {
+        return protocols == null ? null : protocols.clone();
+    }
+
+    /**
+     * @return the enabled cipher suites, null for the JVM defaults
+     */
+    public String[] getCipherSuites() {
+        return cipherSuites == null ? null : cipherSuites.clone();
+    }
+
+    public SSLParameters getSslParameters() {
+        SSLParameters parameters = context.getDefaultSSLParameters();
+        if (protocols != null) {
+            parameters.setProtocols(getProtocols());
+        }
+        if (cipherSuites != null) {
+            parameters.setCipherSuites(getCipherSuites());
+        }
+        return parameters;
+    }
+
+    /**
+     * Count a completed handshake. A session created before the handshake started was resumed from the cache.
+     *
+     * @param session the negotiated session
+     * @param startMillis the wall clock time when the handshake started
+     * @param durationNanos the handshake duration
+     * @param metrics the metrics to update
+     */
+    public static void recordHandshake(SSLSession session, long startMillis, long durationNanos, HttpMetrics metrics) {
+        boolean resumed = session != null && session.getCreationTime() < startMillis;
+        metrics.increment(resumed ? RESUMED_HANDSHAKES_METRIC : FULL_HANDSHAKES_METRIC);
+        metrics.add(HANDSHAKE_TIME_METRIC, durationNanos / 1000000);
+    }
+}
@@ -0,0 +1,14 @@
+package com.payline.payment.template.utils;
+
+import com.payline.pmapi.bean.common.FailureCause;
+
+/**
+ * The plugin is being unloaded: the HTTP layer drains the calls in progress and accepts no new one.
+ */
+public class ShuttingDownException extends CallRejectedException {
+    public static final String ERROR_CODE = "SHUTTING_DOWN";
+
+    public ShuttingDownException() {
+        super(ERROR_CODE, FailureCause.COMMUNICATION_ERROR, "the partner client is shutting down");
+    }
+}
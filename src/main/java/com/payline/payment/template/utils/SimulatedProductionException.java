@@ -0,0 +1,15 @@
+package com.payline.payment.template.utils;
+
+import com.payline.pmapi.bean.common.FailureCause;
+
+/**
+ * The simulator transport is configured, and refuses to answer a production call in place of the partner.
+ */
+public class SimulatedProductionException extends CallRejectedException {
+    public static final String ERROR_CODE = "SIMULATED_PRODUCTION";
+
+    public SimulatedProductionException(String host) {
+        super(ERROR_CODE, FailureCause.INTERNAL_ERROR, "the partner simulator does not answer the production calls to " + host
+                + ", set http.simulator.production to allow it");
+    }
+}
@@ -0,0 +1,278 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.pool.PoolStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Transport answering with the {@link PartnerSimulator} instead of the partner, chosen with http.transport = simulator.
+ * <ul>
+ * <li>inprocess mode: the requests never leave the JVM, the calling thread (or a scheduler for the non-blocking calls)
+ * waits for the simulated latency</li>
+ * <li>loopback mode: the requests are sent by the apache transport to a {@link SimulatorServer} on 127.0.0.1, started
+ * by the transport when http.simulator.port is 0</li>
+ * </ul>
+ * The calls to the production hosts are refused unless http.simulator.production is set.
+ */
+public class SimulatorHttpTransport implements HttpTransport {
+    private static final Logger LOGGER = LogManager.getLogger(SimulatorHttpTransport.class);
+
+    public static final String IN_PROCESS = "inprocess";
+    public static final String LOOPBACK = "loopback";
+
+    private final PartnerSimulator simulator;
+    // empty when the production calls are simulated too
+    private final Set<String> productionHosts;
+    private final boolean asyncMode;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+    // loopback mode only
+    private final SimulatorServer server;
+    private final HttpTransport delegate;
+    private final HttpHost loopback;
+
+    public SimulatorHttpTransport(HttpConfiguration configuration, HttpMetrics metrics) throws IOException {
+        this.simulator = new PartnerSimulator(configuration, metrics);
+        boolean simulateProduction = configuration.getBoolean(HttpConfiguration.SIMULATOR_PRODUCTION, false);
+        this.productionHosts = simulateProduction ? Collections.emptySet() : new HashSet<>(configuration.getHosts(false));
+        this.asyncMode = configuration.getBoolean(HttpConfiguration.ASYNC_ENABLED, false);
+        String mode = configuration.getString(HttpConfiguration.SIMULATOR_MODE, IN_PROCESS);
+        if (LOOPBACK.equalsIgnoreCase(mode)) {
+            int port = configuration.getInt(HttpConfiguration.SIMULATOR_PORT, 0);
+            this.server = port == 0 ? new SimulatorServer(simulator, 0) : null;
+            this.loopback = new HttpHost("127.0.0.1", server == null ? port : server.getPort(), "http");
+            this.delegate = new ApacheHttpTransport(configuration, metrics);
+            this.scheduler = null;
+        } else {
+            if (!IN_PROCESS.equalsIgnoreCase(mode)) {
+                LOGGER.warn("unknown simulator mode {}, the inprocess mode will be used", mode);
+            }
+            this.server = null;
+            this.loopback = null;
+            this.delegate = null;
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "template-simulator");
+                thread.setDaemon(true);
+                return thread;
+            });
+            metrics.gauge("http.pool.leased", inFlight::get);
+        }
+        LOGGER.warn("the partner is simulated ({} mode), no call reaches the partner", delegate == null ? IN_PROCESS : LOOPBACK);
+        if (simulateProduction) {
+            LOGGER.warn("the production calls are simulated too");
+        }
+    }
+
+    /**
+     * @return the address of the simulator server in loopback mode, null in inprocess mode
+     */
+    public HttpHost getLoopback() {
+        return loopback;
+    }
+
+    private void checkEnvironment(HttpUriRequest request) throws SimulatedProductionException {
+        String host = request.getURI().getHost();
+        if (productionHosts.contains(host)) {
+            throw new SimulatedProductionException(host);
+        }
+    }
+
+    @Override
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        checkEnvironment(request);
+        if (delegate != null) {
+            URI uri = request.getURI();
+            HttpUriRequest target = toLoopback(request);
+            try {
+                return delegate.execute(target);
+            } finally {
+                restore(request, uri);
+            }
+        }
+
+        PartnerSimulator.Response response = handle(request);
+        inFlight.incrementAndGet();
+        try {
+            // the request can be aborted from another thread, like with a real connection
+            CountDownLatch aborted = new CountDownLatch(1);
+            if (request instanceof HttpRequestBase) {
+                ((HttpRequestBase) request).setCancellable(() -> {
+                    aborted.countDown();
+                    return true;
+                });
+            }
+            if (aborted.await(response.getDelay(), TimeUnit.MILLISECONDS)) {
+                throw new InterruptedIOException("the partner request was aborted");
+            }
+            return toHttpResponse(response);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the partner response");
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpUriRequest request) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        try {
+            checkEnvironment(request);
+        } catch (SimulatedProductionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        if (delegate != null) {
+            URI uri = request.getURI();
+            CompletableFuture<HttpResponse> exchange = delegate.executeAsync(toLoopback(request));
+            exchange.whenComplete((response, t) -> {
+                restore(request, uri);
+                if (t == null) {
+                    future.complete(response);
+                } else {
+                    future.completeExceptionally(t);
+                }
+            });
+            future.whenComplete((response, t) -> {
+                if (future.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+            return future;
+        }
+
+        PartnerSimulator.Response response;
+        try {
+            response = handle(request);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        inFlight.incrementAndGet();
+        ScheduledFuture<?> answer = scheduler.schedule(() -> future.complete(toHttpResponse(response)), response.getDelay(), TimeUnit.MILLISECONDS);
+        future.whenComplete((r, t) -> {
+            inFlight.decrementAndGet();
+            if (future.isCancelled()) {
+                answer.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private PartnerSimulator.Response handle(HttpUriRequest request) throws IOException {
+        Header authorization = request.getFirstHeader(HttpHeaders.AUTHORIZATION);
+        return simulator.handle(request.getMethod(), request.getURI().getPath(),
+                authorization == null ? null : authorization.getValue(), readBody(request));
+    }
+
+    private static byte[] readBody(HttpUriRequest request) throws IOException {
+        HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        if (entity == null) {
+            return new byte[0];
+        }
+        Header encoding = entity.getContentEncoding();
+        try (InputStream content = encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())
+                ? new GZIPInputStream(entity.getContent()) : entity.getContent()) {
+            return SimulatorServer.read(content);
+        }
+    }
+
+    private static HttpResponse toHttpResponse(PartnerSimulator.Response response) {
+        BasicHttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, response.getStatus(), null);
+        httpResponse.setEntity(new ByteArrayEntity(response.getBody(), ContentType.APPLICATION_JSON));
+        if (response.getRetryAfter() != null) {
+            httpResponse.addHeader(HttpHeaders.RETRY_AFTER, response.getRetryAfter());
+        }
+        return httpResponse;
+    }
+
+    /**
+     * Point the request to the simulator server. The request itself is updated when possible, so it can still be
+     * aborted; its URI is restored once the exchange is over.
+     */
+    private HttpUriRequest toLoopback(HttpUriRequest request) {
+        try {
+            URI uri = URIUtils.rewriteURI(request.getURI(), loopback);
+            if (request instanceof HttpRequestBase) {
+                ((HttpRequestBase) request).setURI(uri);
+                return request;
+            }
+            HttpRequestWrapper wrapper = HttpRequestWrapper.wrap(request);
+            wrapper.setURI(uri);
+            return wrapper;
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("unable to send the request to the simulator", e);
+        }
+    }
+
+    private static void restore(HttpUriRequest request, URI uri) {
+        if (request instanceof HttpRequestBase) {
+            ((HttpRequestBase) request).setURI(uri);
+        }
+    }
+
+    @Override
+    public boolean isAsyncMode() {
+        return asyncMode;
+    }
+
+    @Override
+    public PoolStats getPoolStats() {
+        return delegate != null ? delegate.getPoolStats() : new PoolStats(inFlight.get(), 0, 0, 0);
+    }
+
+    /**
+     * In loopback mode all the calls go to the same server, whatever their environment.
+     */
+    @Override
+    public PoolStats getPoolStats(boolean isSandbox) {
+        return getPoolStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        try {
+            if (delegate != null) {
+                delegate.close();
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.payline.payment.template.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHeaders;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The {@link PartnerSimulator} behind a plain HTTP server on the loopback interface, so the whole HTTP stack of the
+ * plugin (pool, sockets, parsing) is load tested on one machine.
+ * The handler threads never sleep: each answer is sent by a scheduler once its simulated latency is over.
+ * It can run in a separate JVM with {@link #main(String[])}, the settings being read from http.properties.
+ */
+public class SimulatorServer implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(SimulatorServer.class);
+
+    private final PartnerSimulator simulator;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService responder;
+
+    /**
+     * @param port the port to listen to, 0 for any free port
+     */
+    public SimulatorServer(PartnerSimulator simulator, int port) throws IOException {
+        this.simulator = simulator;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.handlers = Executors.newFixedThreadPool(threads, runnable -> daemon(runnable, "template-simulator-handler"));
+        this.responder = Executors.newScheduledThreadPool(threads, runnable -> daemon(runnable, "template-simulator-responder"));
+        server.setExecutor(handlers);
+        server.createContext("/", this::handle);
+        server.start();
+        LOGGER.info("partner simulator listening on {}", server.getAddress());
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream input = exchange.getRequestBody()) {
+            body = read("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst(HttpCompression.CONTENT_ENCODING_KEY))
+                    ? new GZIPInputStream(input) : input);
+        }
+        PartnerSimulator.Response response = simulator.handle(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                exchange.getRequestHeaders().getFirst(HttpHeaders.AUTHORIZATION), body);
+        if (response.getDelay() > 0) {
+            responder.schedule(() -> send(exchange, response), response.getDelay(), TimeUnit.MILLISECONDS);
+        } else {
+            send(exchange, response);
+        }
+    }
+
+    private static void send(HttpExchange exchange, PartnerSimulator.Response response) {
+        try {
+            exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, "application/json");
+            if (response.getRetryAfter() != null) {
+                exchange.getResponseHeaders().add(HttpHeaders.RETRY_AFTER, response.getRetryAfter());
+            }
+            exchange.sendResponseHeaders(response.getStatus(), response.getBody().length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response.getBody());
+            }
+        } catch (IOException e) {
+            // the client went away
+            LOGGER.debug("unable to answer {}: {}", exchange.getRequestURI(), e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    static byte[] read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = input.read(buffer)) >= 0) {
+            output.write(buffer, 0, n);
+        }
+        return output.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+        responder.shutdownNow();
+        LOGGER.info("partner simulator stopped");
+    }
+
+    /**
+     * Run the simulator until the JVM is stopped.
+     *
+     * @param args the port to listen to, else the property http.simulator.port
+     */
+    public static void main(String[] args) throws IOException {
+        HttpConfiguration configuration = HttpConfiguration.getInstance();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : configuration.getInt(HttpConfiguration.SIMULATOR_PORT, 0);
+        SimulatorServer server = new SimulatorServer(new PartnerSimulator(configuration, HttpMetrics.getInstance()), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "template-simulator-shutdown"));
+        LOGGER.info("partner simulator running until the JVM is stopped, port {}", server.getPort());
+    }
+}
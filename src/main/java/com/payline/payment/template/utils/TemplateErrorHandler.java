@@ -1,5 +1,6 @@
 package com.payline.payment.template.utils;
 
+import com.payline.payment.template.bean.CompactPaymentResponse;
 import com.payline.payment.template.bean.TemplatePaymentResponse;
 import com.payline.pmapi.bean.common.FailureCause;
 import com.payline.pmapi.bean.payment.response.impl.PaymentResponseFailure;
@@ -13,12 +14,20 @@ public class TemplateErrorHandler {
     }
 
     public static PaymentResponseFailure findError(TemplatePaymentResponse response) {
+        return findError(response.getCode(), response.getNumber());
+    }
+
+    public static PaymentResponseFailure findError(CompactPaymentResponse response) {
+        return findError(response.getCode(), response.getNumber());
+    }
+
+    private static PaymentResponseFailure findError(String code, String number) {
         FailureCause cause;
-        if (response.getNumber() == null) {
+        if (number == null) {
             cause = FailureCause.PARTNER_UNKNOWN_ERROR;
             // unknown error
         } else {
-            switch (response.getNumber()) {
+            switch (number) {
                 case "10007":
                     // general_technical_error
                     cause = FailureCause.PAYMENT_PARTNER_ERROR;
@@ -56,7 +65,7 @@ public class TemplateErrorHandler {
                     break;
             }
         }
-        return getPaymentResponseFailure(response.getCode(), cause);
+        return getPaymentResponseFailure(code, cause);
     }
 
     public static PaymentResponseFailure getPaymentResponseFailure(String errorCode, final FailureCause failureCause) {
@@ -71,13 +80,28 @@ public class TemplateErrorHandler {
                 .build();
     }
 
+    /**
+     * @param e the reason why the call was not sent to the partner
+     */
+    public static PaymentResponseFailure getPaymentResponseFailure(CallRejectedException e) {
+        return getPaymentResponseFailure(e.getErrorCode(), e.getFailureCause());
+    }
+
     public static RefundResponse findRefundError(TemplatePaymentResponse response, String transactionId) {
+        return findRefundError(response.getCode(), transactionId);
+    }
+
+    public static RefundResponse findRefundError(CompactPaymentResponse response, String transactionId) {
+        return findRefundError(response.getCode(), transactionId);
+    }
+
+    private static RefundResponse findRefundError(String code, String transactionId) {
         FailureCause cause;
-        if (response.getCode() == null) {
+        if (code == null) {
             cause = FailureCause.PARTNER_UNKNOWN_ERROR;
             // unknown error
         } else {
-            switch (response.getCode().toUpperCase()) {
+            switch (code.toUpperCase()) {
                 case "MERCHANT_REFUND_CLIENT_ID_NOT_MATCHING":
                 case "NO_UNLOAD_MERCHANT_CONFIGURED":
                 case "MERCHANT_REFUND_MISSING_TRANSACTION":
@@ -122,7 +146,7 @@ public class TemplateErrorHandler {
             }
         }
         // the code length must be under 50
-        String errorCode = response.getCode().length() > 50 ? response.getCode().substring(0, 50) : response.getCode();
+        String errorCode = code.length() > 50 ? code.substring(0, 50) : code;
         return getRefundResponseFailure(errorCode, cause, transactionId);
     }
 
@@ -134,6 +158,13 @@ public class TemplateErrorHandler {
                 .build();
     }
 
+    /**
+     * @param e the reason why the call was not sent to the partner
+     */
+    public static RefundResponseFailure getRefundResponseFailure(CallRejectedException e, String transactionId) {
+        return getRefundResponseFailure(e.getErrorCode(), e.getFailureCause(), transactionId);
+    }
+
     public static RefundResponseFailure getRefundResponseFailure(final FailureCause failureCause, String transactionId) {
         return RefundResponseFailure.RefundResponseFailureBuilder.aRefundResponseFailure()
                 .withFailureCause(failureCause)
@@ -0,0 +1,48 @@
+package com.payline.payment.template.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.payline.payment.template.bean.BeanTypeAdapterFactory;
+
+/**
+ * The Gson instances shared by all the clients, with the streaming adapters of the beans instead of reflection.
+ * A Gson instance is threadsafe and caches its adapters, so it is built once.
+ */
+public class TemplateGson {
+
+    private TemplateGson() {
+        // ras.
+    }
+
+    private static class SingletonWrapper {
+        private static final Gson INSTANCE = create(false);
+    }
+
+    private static class SkipUnusedWrapper {
+        private static final Gson INSTANCE = create(true);
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static Gson getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    /**
+     * @param skipUnused true to read the payment responses without the fields unused by the plugin
+     */
+    public static Gson getInstance(boolean skipUnused) {
+        return skipUnused ? SkipUnusedWrapper.INSTANCE : SingletonWrapper.INSTANCE;
+    }
+
+    public static Gson create() {
+        return create(false);
+    }
+
+    public static Gson create(boolean skipUnused) {
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(new BeanTypeAdapterFactory(skipUnused))
+                .create();
+    }
+}
@@ -1,59 +1,167 @@
 package com.payline.payment.template.utils;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 import com.payline.payment.template.bean.TemplateCaptureRequest;
 import com.payline.payment.template.bean.TemplatePaymentRequest;
 import com.payline.payment.template.bean.TemplatePaymentResponse;
 import com.payline.payment.template.bean.TemplateRequest;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.message.BasicHeader;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
-import javax.net.ssl.HttpsURLConnection;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TemplateHttpClient {
+    private static final Logger LOGGER = LogManager.getLogger(TemplateHttpClient.class);
     private static final String DEFAULT_CHARSET = "UTF-8";
-    private static final String CONTENT_TYPE_KEY = "Content-Type";
-    private static final String AUTHENTICATION_KEY = "Authorization";
-    private static final String CONTENT_TYPE = "application/json";
-    private HttpClient client;
+    // java.net.http is not available in Java 8
+    private static final String JDK_TIMEOUT = "java.net.http.HttpTimeoutException";
+    private HttpTransport transport;
+    private HttpCompression compression;
+    private RequestBufferPool buffers;
+    private PartnerEndpoints endpoints;
+    private RetryPolicy retryPolicy;
+    private HedgePolicy hedgePolicy;
+    private CircuitBreakers circuitBreakers;
+    private ConcurrencyLimiters limiters;
+    private Bulkheads bulkheads;
+    private RateLimits rateLimits;
+    private LaneSchedulers laneSchedulers;
+    private EndpointRouters routers;
+    private CallCanceller canceller;
+    private HttpLifecycle lifecycle;
+    private TimeoutPolicy timeoutPolicy;
+    private HttpMetrics metrics;
     private Gson parser;
 
 
     public TemplateHttpClient() {
-        this.parser = new GsonBuilder().create();
+        this(HttpTransports.getDefault());
+    }
+
+    public TemplateHttpClient(HttpTransport transport) {
+        this(transport, HttpConfiguration.getInstance(), HttpMetrics.getInstance(), RetryPolicy.getInstance(), HedgePolicy.getInstance(),
+                CircuitBreakers.getInstance(), TimeoutPolicy.getInstance(), ConcurrencyLimiters.getInstance(),
+                Bulkheads.getInstance(), RateLimits.getInstance(), LaneSchedulers.getInstance(), EndpointRouters.getInstance(),
+                CallCanceller.getInstance(), HttpLifecycle.getInstance(), RequestBufferPool.getInstance());
+    }
 
-        final RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(2 * 1000)
-                .setConnectionRequestTimeout(3 * 1000)
-                .setSocketTimeout(4 * 1000).build();
+    public TemplateHttpClient(HttpTransport transport, HttpConfiguration configuration, HttpMetrics metrics) {
+        this(transport, configuration, metrics, new ConcurrencyLimiters(configuration, metrics));
+    }
+
+    private TemplateHttpClient(HttpTransport transport, HttpConfiguration configuration, HttpMetrics metrics, ConcurrencyLimiters limiters) {
+        this(transport, configuration, metrics, new RetryPolicy(configuration, metrics), new HedgePolicy(configuration, metrics),
+                new CircuitBreakers(configuration, metrics), new TimeoutPolicy(configuration, metrics), limiters,
+                new Bulkheads(configuration, metrics), new RateLimits(configuration, metrics), new LaneSchedulers(configuration, metrics, limiters),
+                new EndpointRouters(configuration, metrics), new CallCanceller(configuration, metrics), new HttpLifecycle(configuration, metrics),
+                new RequestBufferPool(configuration, metrics));
+        // the client owns its lifecycle, the transport is closed with it
+        this.lifecycle.register(transport);
+    }
 
-        final HttpClientBuilder builder = HttpClientBuilder.create();
-        builder.useSystemProperties()
-                .setDefaultRequestConfig(requestConfig)
-                .setDefaultCredentialsProvider(new BasicCredentialsProvider())
-                .setSSLSocketFactory(new SSLConnectionSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory(), SSLConnectionSocketFactory.getDefaultHostnameVerifier()));
-        this.client = builder.build();
+    private TemplateHttpClient(HttpTransport transport, HttpConfiguration configuration, HttpMetrics metrics, RetryPolicy retryPolicy, HedgePolicy hedgePolicy,
+                               CircuitBreakers circuitBreakers, TimeoutPolicy timeoutPolicy, ConcurrencyLimiters limiters,
+                               Bulkheads bulkheads, RateLimits rateLimits, LaneSchedulers laneSchedulers, EndpointRouters routers,
+                               CallCanceller canceller, HttpLifecycle lifecycle, RequestBufferPool buffers) {
+        this.parser = TemplateGson.getInstance(configuration.getBoolean(HttpConfiguration.RESPONSE_SKIP_UNUSED, false));
+        this.transport = transport;
+        this.buffers = buffers;
+        this.compression = new HttpCompression(configuration, metrics, buffers);
+        this.endpoints = new PartnerEndpoints(compression.getAcceptEncoding());
+        this.retryPolicy = retryPolicy;
+        this.hedgePolicy = hedgePolicy;
+        this.circuitBreakers = circuitBreakers;
+        this.timeoutPolicy = timeoutPolicy;
+        this.limiters = limiters;
+        this.bulkheads = bulkheads;
+        this.rateLimits = rateLimits;
+        this.laneSchedulers = laneSchedulers;
+        this.routers = routers;
+        this.canceller = canceller;
+        this.lifecycle = lifecycle;
+        this.metrics = metrics;
     }
 
+    /**
+     * @return the lifecycle of the client, to drain and close it when the plugin is unloaded
+     */
+    public HttpLifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    /**
+     * Start a flow of partner calls, to be closed when the service has answered: the drain waits for the whole flow.
+     *
+     * @throws ShuttingDownException if the client is draining or closed
+     */
+    public HttpLifecycle.Flow startFlow() throws ShuttingDownException {
+        return lifecycle.startFlow();
+    }
+
+    /**
+     * @return the main partner host of the environment
+     */
     public String getHost(boolean isSandbox) {
         return isSandbox ? TemplateCardConstants.SANDBOX_URL : TemplateCardConstants.PRODUCTION_URL;
     }
 
+    /**
+     * @return the connection pool statistics shared by all the services
+     */
+    public PoolStats getPoolStats() {
+        return transport.getPoolStats();
+    }
+
+    /**
+     * @param isSandbox true for the sandbox host, false for the production host
+     * @return the connection pool statistics of the partner host
+     */
+    public PoolStats getPoolStats(boolean isSandbox) {
+        return transport.getPoolStats(isSandbox);
+    }
+
+    /**
+     * @param isSandbox true for the sandbox host, false for the production host
+     * @return the number of calls currently allowed in flight to the partner host
+     */
+    public int getConcurrencyLimit(boolean isSandbox) {
+        return limiters.get(isSandbox).getLimit();
+    }
+
     public String createPath(String... path) {
         StringBuilder sb = new StringBuilder("/");
         if (path != null && path.length > 0) {
@@ -65,97 +173,672 @@ public class TemplateHttpClient {
         return sb.toString();
     }
 
-    //
-    private Header[] createHeaders(String authentication) {
-        Header[] headers = new Header[2];
-        headers[0] = new BasicHeader(CONTENT_TYPE_KEY, CONTENT_TYPE);
-        headers[1] = new BasicHeader(AUTHENTICATION_KEY, authentication);
-        return headers;
-    }
-
-
-    public HttpResponse doGet(String scheme, String host, String path, Header[] headers) throws IOException, URISyntaxException {
-
-        final URI uri = new URIBuilder()
+    private URI createUri(String scheme, String host, String path) throws URISyntaxException {
+        return new URIBuilder()
                 .setScheme(scheme)
                 .setHost(host)
                 .setPath(path)
                 .build();
+    }
 
-        final HttpGet httpGetRequest = new HttpGet(uri);
+    private HttpGet createGet(String scheme, String host, String path, Header[] headers) throws URISyntaxException {
+        final HttpGet httpGetRequest = new HttpGet(createUri(scheme, host, path));
         httpGetRequest.setHeaders(headers);
-        return client.execute(httpGetRequest);
+        return httpGetRequest;
+    }
+
+    private HttpPost createPost(String scheme, String host, String path, Header[] headers, HttpEntity entity) throws URISyntaxException {
+        final HttpPost httpPostRequest = new HttpPost(createUri(scheme, host, path));
+        httpPostRequest.setHeaders(headers);
+        httpPostRequest.setEntity(entity);
+        return httpPostRequest;
     }
 
+    /**
+     * The caller has to consume the entity of the returned response to give the connection back to the pool.
+     */
+    public HttpResponse doGet(String scheme, String host, String path, Header[] headers) throws IOException, URISyntaxException {
+        return transport.execute(createGet(scheme, host, path, headers));
+    }
+
+    /**
+     * The caller has to consume the entity of the returned response to give the connection back to the pool.
+     */
     public HttpResponse doPost(String scheme, String host, String path, Header[] headers, String body) throws IOException, URISyntaxException {
+        return transport.execute(createPost(scheme, host, path, headers, new StringEntity(body, DEFAULT_CHARSET)));
+    }
 
-        final URI uri = new URIBuilder()
-                .setScheme(scheme)
-                .setHost(host)
-                .setPath(path)
-                .build();
+    private static PartnerOperation getInitiateOperation(TemplateRequest request) {
+        return request.isCheck() ? PartnerOperation.CHECK : PartnerOperation.INITIATE;
+    }
 
-        final HttpPost httpPostRequest = new HttpPost(uri);
-        httpPostRequest.setHeaders(headers);
-        httpPostRequest.setEntity(new StringEntity(body));
-        return client.execute(httpPostRequest);
+    private HttpRequestBase createInitiateRequest(TemplateRequest request, boolean isSandbox) throws IOException, URISyntaxException {
+        PartnerOperation operation = getInitiateOperation(request);
+        EndpointTemplate endpoint = endpoints.get(operation, isSandbox);
+        final HttpPost httpPostRequest = new HttpPost(endpoint.createUri(null));
+        httpPostRequest.setConfig(timeoutPolicy.getRequestConfig(operation));
+        httpPostRequest.setHeaders(endpoint.createHeaders(request.getAuthenticationHeader()));
+        httpPostRequest.setEntity(createEntity(request, isSandbox));
+        return httpPostRequest;
     }
 
+    /**
+     * Encode the JSON body straight into a pooled buffer, as UTF-8 bytes. The buffer is released when the call is over.
+     */
+    private HttpEntity createEntity(Object request, boolean isSandbox) throws IOException {
+        RequestBufferPool.Buffer buffer = buffers.acquire();
+        try {
+            JsonWriter writer = new JsonWriter(buffer.getWriter());
+            parser.toJson(request, request.getClass(), writer);
+            writer.flush();
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+        return compression.createEntity(buffer, isSandbox);
+    }
 
-    public TemplatePaymentResponse initiate(TemplateRequest request, boolean isSandbox) throws IOException, URISyntaxException {
-        String host = getHost(isSandbox);
-        String path = createPath(TemplateCardConstants.PATH_VERSION, TemplateCardConstants.PATH);
-        String jsonBody = parser.toJson(request);
-        Header[] headers = createHeaders(request.getAuthenticationHeader());
+    private HttpRequestBase createRetrieveRequest(TemplateCaptureRequest request, boolean isSandbox) throws URISyntaxException {
+        EndpointTemplate endpoint = endpoints.get(PartnerOperation.RETRIEVE, isSandbox);
+        final HttpGet httpGetRequest = new HttpGet(endpoint.createUri(request.getPaymentId()));
+        httpGetRequest.setConfig(timeoutPolicy.getRequestConfig(PartnerOperation.RETRIEVE));
+        httpGetRequest.setHeaders(endpoint.createHeaders(request.getAuthenticationHeader()));
+        return httpGetRequest;
+    }
 
-        // do the request
-        HttpResponse response = doPost(TemplateCardConstants.SCHEME, host, path, headers, jsonBody);
-        String responseString = EntityUtils.toString(response.getEntity(), DEFAULT_CHARSET);
+    private HttpRequestBase createCaptureRequest(TemplateCaptureRequest request, boolean isSandbox) throws IOException, URISyntaxException {
+        EndpointTemplate endpoint = endpoints.get(PartnerOperation.CAPTURE, isSandbox);
+        final HttpPost httpPostRequest = new HttpPost(endpoint.createUri(request.getPaymentId()));
+        httpPostRequest.setConfig(timeoutPolicy.getRequestConfig(PartnerOperation.CAPTURE));
+        httpPostRequest.setHeaders(endpoint.createHeaders(request.getAuthenticationHeader()));
+        httpPostRequest.setEntity(compression.createEntity("", isSandbox));
+        return httpPostRequest;
+    }
 
-        // create object from Template response
-        return parser.fromJson(responseString, TemplatePaymentResponse.class);
+    private HttpRequestBase createRefundRequest(TemplatePaymentRequest request, boolean isSandbox) throws IOException, URISyntaxException {
+        EndpointTemplate endpoint = endpoints.get(PartnerOperation.REFUND, isSandbox);
+        final HttpPost httpPostRequest = new HttpPost(endpoint.createUri(request.getPaymentId()));
+        httpPostRequest.setConfig(timeoutPolicy.getRequestConfig(PartnerOperation.REFUND));
+        httpPostRequest.setHeaders(endpoint.createHeaders(request.getAuthenticationHeader()));
+        httpPostRequest.setEntity(createEntity(request, isSandbox));
+        return httpPostRequest;
     }
 
-    public TemplatePaymentResponse retrievePaymentData(TemplateCaptureRequest request, boolean isSandbox) throws IOException, URISyntaxException {
-        String host = getHost(isSandbox);
-        String path = createPath(TemplateCardConstants.PATH_VERSION, TemplateCardConstants.PATH, request.getPaymentId());
-        Header[] headers = createHeaders(request.getAuthenticationHeader());
+    /**
+     * State of a call to the partner, shared by its attempts.
+     */
+    private static final class Call {
+        private final PartnerOperation operation;
+        private final HttpRequestBase request;
+        private final CircuitBreaker circuitBreaker;
+        private final ConcurrencyLimiter limiter;
+        private final RateLimit rateLimit;
+        private final LaneScheduler lanes;
+        private final EndpointRouter router;
+        private final Deadline deadline;
+        private final CancellationToken token;
+        // host of the current attempt, the next attempt goes to another one
+        private volatile PartnerEndpoint endpoint;
+        // an attempt was given up while its exchange may still be sending the body
+        private volatile boolean abandoned;
+
+        Call(PartnerOperation operation, HttpRequestBase request, CircuitBreaker circuitBreaker, ConcurrencyLimiter limiter,
+             RateLimit rateLimit, LaneScheduler lanes, EndpointRouter router, Deadline deadline, CancellationToken token) {
+            this.operation = operation;
+            this.request = request;
+            this.lanes = lanes;
+            this.router = router;
+            this.circuitBreaker = circuitBreaker;
+            this.limiter = limiter;
+            this.rateLimit = rateLimit;
+            this.deadline = deadline;
+            this.token = token;
+        }
 
-        // do the request
-        HttpResponse response = doGet(TemplateCardConstants.SCHEME, host, path, headers);
+        /**
+         * @return true if an attempt can still be made after the delay
+         */
+        boolean canWait(long delay) {
+            return deadline == null || delay < deadline.remainingMillis();
+        }
+    }
 
-        // create object from Template response
-        String responseString = EntityUtils.toString(response.getEntity(), DEFAULT_CHARSET);
-        return parser.fromJson(responseString, TemplatePaymentResponse.class);
+    /**
+     * Must be called on the thread of the caller, which holds the {@link Deadline} and the {@link CancellationToken}.
+     */
+    private Call createCall(PartnerOperation operation, boolean isSandbox, HttpRequestBase request) {
+        Header authorization = request.getFirstHeader(HttpHeaders.AUTHORIZATION);
+        RateLimit rateLimit = rateLimits.get(isSandbox, authorization == null ? null : authorization.getValue());
+        return new Call(operation, request, circuitBreakers.get(isSandbox), limiters.get(isSandbox), rateLimit,
+                laneSchedulers.get(isSandbox), routers.get(isSandbox), Deadline.current(), CancellationToken.current());
     }
 
-    public TemplatePaymentResponse capture(TemplateCaptureRequest request, boolean isSandbox) throws IOException, URISyntaxException {
-        String host = getHost(isSandbox);
-        String path = createPath(TemplateCardConstants.PATH_VERSION, TemplateCardConstants.PATH, request.getPaymentId(), TemplateCardConstants.PATH_CAPTURE);
+    /**
+     * Take the turn of the next attempt in the rate limit of the credential.
+     *
+     * @return the time in milliseconds to wait before sending the attempt
+     */
+    private static long reserve(Call call) throws RateLimitedException {
+        return call.rateLimit == null ? 0 : call.rateLimit.reserve(call.deadline);
+    }
 
-        String body = "";
-        Header[] headers = createHeaders(request.getAuthenticationHeader());
+    /**
+     * Wait for a place in the lane of the call, check that the attempt can still be sent, and fit its timeouts in the
+     * remaining time. The attempt then holds its place in the lane and in the concurrency limit and, when the circuit
+     * is half open, a probe: they are given back when it ends. The request is finally sent to the partner host chosen by
+     * the {@link EndpointRouter}, another one than the host of the previous attempt when possible.
+     *
+     * @param blocking false on the threads of the non-blocking client, which never wait
+     */
+    private void startAttempt(Call call, boolean blocking) throws IOException {
+        if ((blocking && Thread.currentThread().isInterrupted()) || (call.token != null && call.token.isCancelled())) {
+            throw new InterruptedIOException("the " + call.operation.getKey() + " call is cancelled");
+        }
+        Lane lane = call.operation.getLane();
+        if (blocking) {
+            call.lanes.acquire(lane, call.deadline);
+        } else {
+            call.lanes.tryAcquire(lane);
+        }
+        try {
+            if (call.deadline != null) {
+                try {
+                    call.deadline.check(call.operation);
+                } catch (DeadlineExceededException e) {
+                    metrics.increment("http.deadline.exceeded");
+                    throw e;
+                }
+                call.request.setConfig(call.deadline.shrink(timeoutPolicy.getRequestConfig(call.operation)));
+            }
+            if (call.lanes.isEnabled()) {
+                // the lanes keep the calls within the concurrency limit, and give the places to the highest lanes first
+                call.limiter.track();
+            } else {
+                call.limiter.acquire();
+            }
+            try {
+                call.circuitBreaker.acquire();
+            } catch (CircuitOpenException e) {
+                call.limiter.release();
+                throw e;
+            }
+        } catch (CallRejectedException e) {
+            call.lanes.release(lane);
+            throw e;
+        }
+        route(call);
+    }
 
-        // do the request
-        HttpResponse response = doPost(TemplateCardConstants.SCHEME, host, path, headers, body);
+    private static void route(Call call) {
+        PartnerEndpoint endpoint = call.router.select(call.endpoint);
+        call.endpoint = endpoint;
+        URI uri = call.request.getURI();
+        if (!endpoint.getHost().equals(uri.getHost())) {
+            try {
+                call.request.setURI(endpoint.rewrite(uri));
+            } catch (URISyntaxException e) {
+                // invalid host in the configuration: the request keeps its host
+                LOGGER.warn("unable to send the request to {}: {}", endpoint.getHost(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Send the request and create object from Template response, retrying as allowed by the {@link RetryPolicy}.
+     * In async mode the calling thread only waits for the non-blocking client.
+     */
+    private TemplatePaymentResponse execute(PartnerOperation operation, boolean isSandbox, HttpRequestBase request) throws IOException {
+        Call call = createCall(operation, isSandbox, request);
+        if (transport.isAsyncMode()) {
+            return await(executeAsync(call));
+        }
 
-        // create object from Template response
-        String responseString = EntityUtils.toString(response.getEntity(), DEFAULT_CHARSET);
-        return parser.fromJson(responseString, TemplatePaymentResponse.class);
+        retryPolicy.onCall();
+        try {
+            return execute(call);
+        } finally {
+            // the attempts have returned, the body is not read any more unless one of them was given up
+            if (!call.abandoned) {
+                releaseBody(call.request);
+            }
+        }
+    }
+
+    private TemplatePaymentResponse execute(Call call) throws IOException {
+        for (int attempts = 1; ; attempts++) {
+            long wait = reserve(call);
+            if (wait > 0) {
+                sleep(wait);
+            }
+            startAttempt(call, true);
+            long start = System.nanoTime();
+            try (CallCanceller.Registration registration = canceller.register(call.request, call.token)) {
+                TemplatePaymentResponse response = parseResponse(call, transport.execute(call.request));
+                onSuccess(call, start);
+                return response;
+            } catch (IOException e) {
+                recordFailure(call, start, e);
+                long delay = retryPolicy.nextDelay(call.operation, e, attempts);
+                if (delay < 0 || !call.canWait(delay)) {
+                    throw e;
+                }
+                sleep(delay);
+            } catch (RuntimeException e) {
+                recordFailure(call, start, e);
+                throw e;
+            }
+        }
+    }
+
+    private CompletableFuture<TemplatePaymentResponse> executeAsync(PartnerOperation operation, boolean isSandbox, HttpRequestBase request) {
+        return executeAsync(createCall(operation, isSandbox, request));
+    }
+
+    private CompletableFuture<TemplatePaymentResponse> executeAsync(Call call) {
+        retryPolicy.onCall();
+        CompletableFuture<TemplatePaymentResponse> result = new CompletableFuture<>();
+        if (call.token != null) {
+            // the cancellation of the result aborts the request in flight
+            Runnable cancel = () -> result.cancel(true);
+            call.token.addListener(cancel);
+            result.whenComplete((response, t) -> call.token.removeListener(cancel));
+        }
+        // a cancelled exchange may still be sending the body on the I/O threads: its buffer is then left to the garbage collector
+        result.whenComplete((response, t) -> {
+            if (!result.isCancelled() && !call.abandoned) {
+                releaseBody(call.request);
+            }
+        });
+        executeAsync(call, 1, result);
+        return result;
+    }
+
+    private static void releaseBody(HttpRequestBase request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity instanceof PooledEntity) {
+                ((PooledEntity) entity).release();
+            }
+        }
+    }
+
+    private void executeAsync(Call call, int attempts, CompletableFuture<TemplatePaymentResponse> result) {
+        long wait;
+        try {
+            wait = reserve(call);
+        } catch (RateLimitedException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        if (wait > 0) {
+            retryPolicy.schedule(() -> sendAsync(call, attempts, result), wait);
+        } else {
+            sendAsync(call, attempts, result);
+        }
+    }
+
+    private void sendAsync(Call call, int attempts, CompletableFuture<TemplatePaymentResponse> result) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            startAttempt(call, false);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse> exchange = transport.executeAsync(call.request);
+        result.whenComplete((response, t) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        exchange.whenComplete((response, t) -> {
+            if (t == null && result.isDone()) {
+                onSuccess(call, start);
+                release(response);
+                return;
+            }
+            if (t == null) {
+                try {
+                    TemplatePaymentResponse paymentResponse = parseResponse(call, response);
+                    onSuccess(call, start);
+                    result.complete(paymentResponse);
+                    return;
+                } catch (IOException e) {
+                    t = e;
+                } catch (RuntimeException e) {
+                    recordFailure(call, start, e);
+                    result.completeExceptionally(e);
+                    return;
+                }
+            }
+
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            recordFailure(call, start, cause);
+            long delay = cause instanceof IOException ? retryPolicy.nextDelay(call.operation, (IOException) cause, attempts) : -1;
+            if (delay < 0 || !call.canWait(delay) || result.isDone()) {
+                result.completeExceptionally(cause);
+            } else {
+                retryPolicy.schedule(() -> executeAsync(call, attempts + 1, result), delay);
+            }
+        });
+    }
+
+    private void onSuccess(Call call, long start) {
+        long nanos = System.nanoTime() - start;
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        // the new limit applies to the place given back
+        call.limiter.onSample(call.operation, nanos, false);
+        call.lanes.release(call.operation.getLane());
+        call.circuitBreaker.onSuccess(millis);
+        call.router.onSuccess(call.endpoint, millis);
+        timeoutPolicy.record(call.operation, millis);
+    }
+
+    /**
+     * The cancelled calls tell nothing about the health of the partner, and a rejection, by its rate limit for example,
+     * nothing about the health of the host: the rate limits are per credential while the limiter and the circuit
+     * breaker are shared by all the merchants of the environment.
+     */
+    private void recordFailure(Call call, long start, Throwable t) {
+        if (isAbandoned(call, t)) {
+            call.abandoned = true;
+        }
+        if (RetryPolicy.isInterruption(t) || t instanceof CallRejectedException) {
+            call.limiter.release();
+            call.circuitBreaker.release();
+        } else {
+            long nanos = System.nanoTime() - start;
+            call.limiter.onSample(call.operation, nanos, true);
+            call.circuitBreaker.onFailure(TimeUnit.NANOSECONDS.toMillis(nanos));
+            call.router.onFailure(call.endpoint);
+            if (isTimeout(t) && call.request.getConfig() != null) {
+                timeoutPolicy.recordTimeout(call.operation, call.request.getConfig().getSocketTimeout());
+            }
+        }
+        call.lanes.release(call.operation.getLane());
+    }
+
+    /**
+     * An attempt aborted, interrupted or timed out, by the deadline of the call for example, has only stopped waiting:
+     * the transport may still be sending its body, java.net.http before Java 16 among others.
+     */
+    private static boolean isAbandoned(Call call, Throwable t) {
+        return call.request.isAborted() || t instanceof InterruptedIOException || isTimeout(t);
+    }
+
+    /**
+     * @return true if the partner did not answer within the socket timeout of the request
+     */
+    private static boolean isTimeout(Throwable t) {
+        return t instanceof SocketTimeoutException || JDK_TIMEOUT.equals(t.getClass().getName());
+    }
+
+    /**
+     * Send the retrieve request, then a second identical one if the first has not answered within the delay of the
+     * {@link HedgePolicy}. The first success is used and the other request is cancelled; the call fails only when all
+     * the requests sent have failed.
+     */
+    private CompletableFuture<TemplatePaymentResponse> executeHedged(TemplateCaptureRequest request, boolean isSandbox) throws URISyntaxException {
+        final Call primaryCall = createCall(PartnerOperation.RETRIEVE, isSandbox, createRetrieveRequest(request, isSandbox));
+        final Call hedgeCall = createCall(PartnerOperation.RETRIEVE, isSandbox, createRetrieveRequest(request, isSandbox));
+        final long start = System.nanoTime();
+        final CompletableFuture<TemplatePaymentResponse> result = new CompletableFuture<>();
+        final AtomicBoolean answered = new AtomicBoolean();
+        final AtomicInteger pending = new AtomicInteger(1);
+
+        hedgePolicy.onCall();
+        CompletableFuture<TemplatePaymentResponse> primary = executeAsync(primaryCall);
+        primary.whenComplete((response, t) -> {
+            if (t == null) {
+                hedgePolicy.recordAttempt(elapsedMillis(start));
+            }
+            completeHedged(result, response, t, answered, pending, start, false);
+        });
+        result.whenComplete((response, t) -> primary.cancel(true));
+
+        long delay = hedgePolicy.getDelay();
+        if (delay >= 0) {
+            retryPolicy.schedule(() -> {
+                if (!result.isDone() && hedgePolicy.tryHedge()) {
+                    pending.incrementAndGet();
+                    // the second request goes to another host than the first one
+                    hedgeCall.endpoint = primaryCall.endpoint;
+                    CompletableFuture<TemplatePaymentResponse> hedge = executeAsync(hedgeCall);
+                    hedge.whenComplete((response, t) -> {
+                        boolean primaryPending = !primary.isDone();
+                        if (completeHedged(result, response, t, answered, pending, start, true) && primaryPending) {
+                            // the primary is cancelled: it took at least this long, leaving it out would lower the delay
+                            hedgePolicy.recordAttempt(elapsedMillis(start));
+                        }
+                    });
+                    result.whenComplete((response, t) -> hedge.cancel(true));
+                }
+            }, delay);
+        }
+        return result;
+    }
+
+    /**
+     * @return true if this request answered the call
+     */
+    private boolean completeHedged(CompletableFuture<TemplatePaymentResponse> result, TemplatePaymentResponse response, Throwable t,
+                                   AtomicBoolean answered, AtomicInteger pending, long start, boolean hedge) {
+        if (t == null) {
+            if (answered.compareAndSet(false, true)) {
+                hedgePolicy.recordCall(elapsedMillis(start), hedge);
+                result.complete(response);
+                return true;
+            }
+        } else if (pending.decrementAndGet() == 0) {
+            result.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+        }
+        return false;
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Create object from Template response, parsed while it is read and decompressed: the body never exists as a whole,
+     * neither as bytes nor as a String. Whatever the outcome, the entity is fully consumed and the response closed, so the
+     * connection goes back to the pool and can be kept alive; the connection of a response too large is closed instead.
+     */
+    private TemplatePaymentResponse parseResponse(Call call, HttpResponse response) throws IOException {
+        try {
+            if (call.rateLimit != null) {
+                call.rateLimit.update(response);
+            }
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                throw new PartnerUnavailableException(call.request.getURI().getHost());
+            }
+            HttpEntity entity = compression.decode(response);
+            if (entity == null) {
+                return null;
+            }
+            ContentType contentType = ContentType.get(entity);
+            Charset charset = contentType == null || contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset();
+            // the content is closed by the release of the response, once the connection of a response too large is closed
+            Reader reader = new InputStreamReader(entity.getContent(), charset);
+            try {
+                return parser.fromJson(reader, TemplatePaymentResponse.class);
+            } catch (JsonParseException e) {
+                throw unwrap(e);
+            }
+        } catch (ResponseTooLargeException e) {
+            call.request.abort();
+            throw e;
+        } finally {
+            release(response);
+        }
+    }
+
+    /**
+     * Gson wraps the failures of the stream it reads: they are failures of the exchange, and may be retried, unlike an
+     * invalid JSON body. A body cut short is reported by the reader of Gson itself with an EOFException.
+     */
+    private static IOException unwrap(JsonParseException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException && !(cause instanceof MalformedJsonException) && !(cause instanceof EOFException)) {
+            return (IOException) cause;
+        }
+        throw e;
+    }
+
+    private static void release(HttpResponse response) {
+        EntityUtils.consumeQuietly(response.getEntity());
+        if (response instanceof Closeable) {
+            try {
+                ((Closeable) response).close();
+            } catch (IOException e) {
+                // the connection is not reused
+            }
+        }
+    }
+
+    private static void sleep(long delay) throws InterruptedIOException {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to call the partner");
+        }
+    }
+
+    private static TemplatePaymentResponse await(CompletableFuture<TemplatePaymentResponse> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new InterruptedIOException("interrupted while waiting for the partner response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    /**
+     * A partner call, with its retries and hedged requests.
+     */
+    private interface PartnerCall {
+        TemplatePaymentResponse call() throws IOException, URISyntaxException;
+    }
+
+    private interface AsyncPartnerCall {
+        CompletableFuture<TemplatePaymentResponse> call() throws IOException, URISyntaxException;
+    }
+
+    /**
+     * Run the call in the bulkhead of the merchant, waiting for a place if needed. The call is counted by the
+     * {@link HttpLifecycle}, which waits for it before closing the connections, and does not reject it while draining
+     * when it is part of a flow started with {@link #startFlow()}.
+     */
+    private TemplatePaymentResponse isolate(TemplateRequest request, PartnerCall call) throws IOException, URISyntaxException {
+        lifecycle.enter();
+        try {
+            if (!bulkheads.isEnabled()) {
+                return call.call();
+            }
+            Bulkhead bulkhead = bulkheads.get(request.getMerchantId());
+            bulkhead.acquire();
+            try {
+                return call.call();
+            } finally {
+                bulkhead.release();
+            }
+        } finally {
+            lifecycle.exit();
+        }
+    }
+
+    /**
+     * Run the call in the bulkhead of the merchant; the non-blocking calls never wait for a place.
+     */
+    private CompletableFuture<TemplatePaymentResponse> isolateAsync(TemplateRequest request, AsyncPartnerCall call) {
+        Bulkhead bulkhead = bulkheads.isEnabled() ? bulkheads.get(request.getMerchantId()) : null;
+        try {
+            lifecycle.enter();
+        } catch (ShuttingDownException e) {
+            return failedFuture(e);
+        }
+        try {
+            if (bulkhead != null) {
+                bulkhead.tryAcquire();
+            }
+        } catch (BulkheadFullException e) {
+            lifecycle.exit();
+            return failedFuture(e);
+        }
+        CompletableFuture<TemplatePaymentResponse> future;
+        try {
+            future = call.call();
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            future = failedFuture(e);
+        }
+        future.whenComplete((response, t) -> {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+            lifecycle.exit();
+        });
+        return future;
+    }
+
+    public TemplatePaymentResponse initiate(TemplateRequest request, boolean isSandbox) throws IOException, URISyntaxException {
+        return isolate(request, () -> execute(getInitiateOperation(request), isSandbox, createInitiateRequest(request, isSandbox)));
+    }
+
+    public TemplatePaymentResponse retrievePaymentData(TemplateCaptureRequest request, boolean isSandbox) throws IOException, URISyntaxException {
+        return isolate(request, () -> {
+            if (hedgePolicy.isEnabled()) {
+                return await(executeHedged(request, isSandbox));
+            }
+            return execute(PartnerOperation.RETRIEVE, isSandbox, createRetrieveRequest(request, isSandbox));
+        });
+    }
+
+    public TemplatePaymentResponse capture(TemplateCaptureRequest request, boolean isSandbox) throws IOException, URISyntaxException {
+        return isolate(request, () -> execute(PartnerOperation.CAPTURE, isSandbox, createCaptureRequest(request, isSandbox)));
     }
 
     public TemplatePaymentResponse refund(TemplatePaymentRequest request, boolean isSandbox) throws IOException, URISyntaxException {
-        String host = getHost(isSandbox);
-        String path = createPath(TemplateCardConstants.PATH_VERSION, TemplateCardConstants.PATH, request.getPaymentId(), TemplateCardConstants.PATH_REFUND);
-        String jsonBody = parser.toJson(request);
-        Header[] headers = createHeaders(request.getAuthenticationHeader());
+        return isolate(request, () -> execute(PartnerOperation.REFUND, isSandbox, createRefundRequest(request, isSandbox)));
+    }
+
+    public CompletableFuture<TemplatePaymentResponse> initiateAsync(TemplateRequest request, boolean isSandbox) {
+        return isolateAsync(request, () -> executeAsync(getInitiateOperation(request), isSandbox, createInitiateRequest(request, isSandbox)));
+    }
 
-        // do the request
-        HttpResponse response = doPost(TemplateCardConstants.SCHEME, host, path, headers, jsonBody);
+    public CompletableFuture<TemplatePaymentResponse> retrievePaymentDataAsync(TemplateCaptureRequest request, boolean isSandbox) {
+        return isolateAsync(request, () -> {
+            if (hedgePolicy.isEnabled()) {
+                return executeHedged(request, isSandbox);
+            }
+            return executeAsync(PartnerOperation.RETRIEVE, isSandbox, createRetrieveRequest(request, isSandbox));
+        });
+    }
+
+    public CompletableFuture<TemplatePaymentResponse> captureAsync(TemplateCaptureRequest request, boolean isSandbox) {
+        return isolateAsync(request, () -> executeAsync(PartnerOperation.CAPTURE, isSandbox, createCaptureRequest(request, isSandbox)));
+    }
 
-        // create object from Template response
-        String responseString = EntityUtils.toString(response.getEntity(), DEFAULT_CHARSET);
-        return parser.fromJson(responseString, TemplatePaymentResponse.class);
+    public CompletableFuture<TemplatePaymentResponse> refundAsync(TemplatePaymentRequest request, boolean isSandbox) {
+        return isolateAsync(request, () -> executeAsync(PartnerOperation.REFUND, isSandbox, createRefundRequest(request, isSandbox)));
     }
 
 }
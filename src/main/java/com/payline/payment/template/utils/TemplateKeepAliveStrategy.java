@@ -0,0 +1,33 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Keep the connections alive as long as the partner allows it with the header Keep-Alive: timeout=...,
+ * with a default duration when the header is missing and a maximum duration in every case.
+ */
+public class TemplateKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+    private final long defaultDuration;
+    private final long maxDuration;
+
+    public TemplateKeepAliveStrategy(long defaultDuration, long maxDuration) {
+        this.defaultDuration = defaultDuration;
+        this.maxDuration = maxDuration;
+    }
+
+    public long getDefaultDuration() {
+        return defaultDuration;
+    }
+
+    @Override
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        if (duration <= 0) {
+            duration = defaultDuration;
+        }
+        return Math.min(duration, maxDuration);
+    }
+}
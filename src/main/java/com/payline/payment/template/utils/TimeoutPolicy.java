@@ -0,0 +1,117 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.client.config.RequestConfig;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Timeouts of each partner operation.
+ * The connect, connection request and socket timeouts can be set per operation. In adaptive mode the socket timeout
+ * follows the recent latencies of the operation: percentile * factor, kept between a floor and a ceiling, so a slow
+ * partner node fails fast while a capture which is normally slow is not cut. The calls which time out count at their
+ * timeout, a lower bound of their latency: when the partner slows down, the timeout grows instead of cutting every call.
+ */
+public class TimeoutPolicy {
+    private static final int REFRESH = 50;
+
+    private final boolean adaptive;
+    private final double percentile;
+    private final double factor;
+    private final int minSamples;
+    private final Map<PartnerOperation, Profile> profiles = new EnumMap<>(PartnerOperation.class);
+
+    private static class Profile {
+        private final int connect;
+        private final int connectionRequest;
+        private final int socket;
+        private final int floor;
+        private final int ceiling;
+        private final LatencyTracker latencies;
+        private volatile RequestConfig requestConfig;
+        private volatile long computedAt;
+
+        Profile(int connect, int connectionRequest, int socket, int floor, int ceiling, LatencyTracker latencies) {
+            this.connect = connect;
+            this.connectionRequest = connectionRequest;
+            this.socket = socket;
+            this.floor = floor;
+            this.ceiling = ceiling;
+            this.latencies = latencies;
+            this.requestConfig = createRequestConfig(socket);
+        }
+
+        RequestConfig createRequestConfig(int socketTimeout) {
+            return RequestConfig.custom()
+                    .setConnectTimeout(connect)
+                    .setConnectionRequestTimeout(connectionRequest)
+                    .setSocketTimeout(socketTimeout)
+                    .build();
+        }
+    }
+
+    public TimeoutPolicy(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.adaptive = configuration.getBoolean(HttpConfiguration.TIMEOUT_ADAPTIVE_ENABLED, false);
+        this.percentile = configuration.getDouble(HttpConfiguration.TIMEOUT_ADAPTIVE_PERCENTILE, 99.9);
+        this.factor = configuration.getDouble(HttpConfiguration.TIMEOUT_ADAPTIVE_FACTOR, 2);
+        this.minSamples = configuration.getInt(HttpConfiguration.TIMEOUT_ADAPTIVE_MIN_SAMPLES, 200);
+        int window = configuration.getInt(HttpConfiguration.TIMEOUT_ADAPTIVE_WINDOW, 2000);
+
+        for (PartnerOperation operation : PartnerOperation.values()) {
+            int socket = configuration.getInt(HttpConfiguration.TIMEOUT_SOCKET, operation, 4 * 1000);
+            Profile profile = new Profile(
+                    configuration.getInt(HttpConfiguration.TIMEOUT_CONNECT, operation, 2 * 1000),
+                    configuration.getInt(HttpConfiguration.TIMEOUT_CONNECTION_REQUEST, operation, 3 * 1000),
+                    socket,
+                    configuration.getInt(HttpConfiguration.TIMEOUT_ADAPTIVE_FLOOR, operation, 500),
+                    configuration.getInt(HttpConfiguration.TIMEOUT_ADAPTIVE_CEILING, operation, socket),
+                    new LatencyTracker(window));
+            profiles.put(operation, profile);
+            metrics.gauge("http.timeout." + operation.getKey() + ".socket", () -> profile.requestConfig.getSocketTimeout());
+        }
+    }
+
+    private static class SingletonWrapper {
+        private static final TimeoutPolicy INSTANCE = new TimeoutPolicy(HttpConfiguration.getInstance(), HttpMetrics.getInstance());
+    }
+
+    /**
+     * Threadsafe singleton with lazy initialization.
+     */
+    public static TimeoutPolicy getInstance() {
+        return SingletonWrapper.INSTANCE;
+    }
+
+    /**
+     * @return the timeouts to set on the requests of the operation
+     */
+    public RequestConfig getRequestConfig(PartnerOperation operation) {
+        Profile profile = profiles.get(operation);
+        if (adaptive) {
+            long count = profile.latencies.getCount();
+            if (count >= minSamples && count - profile.computedAt >= REFRESH) {
+                long target = (long) (profile.latencies.percentile(percentile) * factor);
+                int socketTimeout = (int) Math.max(profile.floor, Math.min(profile.ceiling, target));
+                profile.requestConfig = profile.createRequestConfig(socketTimeout);
+                profile.computedAt = count;
+            }
+        }
+        return profile.requestConfig;
+    }
+
+    /**
+     * @param millis the latency of a successful call of the operation
+     */
+    public void record(PartnerOperation operation, long millis) {
+        if (adaptive) {
+            profiles.get(operation).latencies.record(millis);
+        }
+    }
+
+    /**
+     * @param millis the socket timeout of a call of the operation which timed out
+     */
+    public void recordTimeout(PartnerOperation operation, long millis) {
+        record(operation, millis);
+    }
+}
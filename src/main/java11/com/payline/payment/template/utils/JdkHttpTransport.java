@@ -0,0 +1,352 @@
+package com.payline.payment.template.utils;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.Configurable;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP transport based on java.net.http.HttpClient (Java 11 or later).
+ * HTTP/2 is negotiated with the partner, so the concurrent calls to a host are multiplexed on a single TLS connection.
+ * java.net.http opens its connections on the first request to a host only: this transport is not warmed up.
+ * <p>
+ * Before Java 16, cancelling the future of {@code sendAsync} only unblocks the caller: the exchange keeps running. The
+ * responses are therefore received by a {@link CancellableBody}, whose cancellation drops the body being received and frees
+ * the stream (or closes the HTTP/1.1 connection). It also drops a body larger than http.response.maxBytes as soon as the
+ * limit is reached, like the async Apache transport. On Java 11 to 15, an exchange aborted before the partner has sent the
+ * response headers still holds its stream until they arrive, or until the timeout of the request.
+ * This class is packaged in META-INF/versions/11 of the multi-release jar and is loaded by {@link HttpTransports}.
+ */
+public class JdkHttpTransport implements HttpTransport {
+    // headers managed by java.net.http itself
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final boolean asyncMode;
+    private final long maxResponseBytes;
+    private final HttpMetrics metrics;
+    private final Set<String> sandboxHosts;
+    private final AtomicInteger sandboxInFlight = new AtomicInteger();
+    private final AtomicInteger productionInFlight = new AtomicInteger();
+
+    public JdkHttpTransport(HttpConfiguration configuration, HttpMetrics metrics) {
+        this.asyncMode = configuration.getBoolean(HttpConfiguration.ASYNC_ENABLED, false);
+        this.maxResponseBytes = configuration.getLong(HttpConfiguration.RESPONSE_MAX_BYTES, 1024 * 1024);
+        this.metrics = metrics;
+        this.sandboxHosts = Set.copyOf(configuration.getHosts(true));
+        this.requestTimeout = Duration.ofMillis(configuration.getInt(HttpConfiguration.TIMEOUT_SOCKET, 4 * 1000));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofMillis(configuration.getInt(HttpConfiguration.TIMEOUT_CONNECT, 2 * 1000)))
+                .sslContext(SharedSslContext.getInstance().getContext())
+                .sslParameters(SharedSslContext.getInstance().getSslParameters())
+                .build();
+
+        metrics.gauge("http.pool.leased", () -> getPoolStats().getLeased());
+    }
+
+    /**
+     * The request can be aborted with {@link HttpRequestBase#abort()} from another thread, like with Apache HttpClient,
+     * within the limits given above.
+     */
+    @Override
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        AtomicInteger inFlight = getInFlight(request);
+        inFlight.incrementAndGet();
+        CancellableBody body = new CancellableBody();
+        CompletableFuture<java.net.http.HttpResponse<byte[]>> exchange = null;
+        try {
+            exchange = client.sendAsync(toHttpRequest(request), body);
+            if (request instanceof HttpRequestBase) {
+                CompletableFuture<java.net.http.HttpResponse<byte[]>> cancellable = exchange;
+                ((HttpRequestBase) request).setCancellable(() -> body.cancel(cancellable));
+            }
+            return toHttpResponse(exchange.get());
+        } catch (InterruptedException e) {
+            body.cancel(exchange);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the partner response");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("the partner request was aborted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Cancelling the returned future aborts the exchange, within the limits given above.
+     */
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpUriRequest request) {
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        final HttpRequest httpRequest;
+        try {
+            httpRequest = toHttpRequest(request);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        AtomicInteger inFlight = getInFlight(request);
+        inFlight.incrementAndGet();
+        CancellableBody body = new CancellableBody();
+        CompletableFuture<java.net.http.HttpResponse<byte[]>> exchange = client.sendAsync(httpRequest, body);
+        exchange.whenComplete((response, t) -> {
+            if (t == null) {
+                // a failure here would be dropped by this stage, leaving the call in flight for ever
+                try {
+                    future.complete(toHttpResponse(response));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            } else {
+                future.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+            }
+        });
+        // the exchange of a cancelled body never completes: the request is over when the returned future is
+        future.whenComplete((response, t) -> {
+            inFlight.decrementAndGet();
+            if (future.isCancelled()) {
+                body.cancel(exchange);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Receive the body in memory, like {@link java.net.http.HttpResponse.BodyHandlers#ofByteArray()}, until it is cancelled
+     * or larger than http.response.maxBytes.
+     */
+    private final class CancellableBody implements java.net.http.HttpResponse.BodyHandler<byte[]> {
+        private volatile boolean cancelled;
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public java.net.http.HttpResponse.BodySubscriber<byte[]> apply(java.net.http.HttpResponse.ResponseInfo responseInfo) {
+            java.net.http.HttpResponse.BodySubscriber<byte[]> body = java.net.http.HttpResponse.BodySubscribers.ofByteArray();
+            long contentLength = responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1L);
+            return new java.net.http.HttpResponse.BodySubscriber<byte[]>() {
+                private long remaining = maxResponseBytes;
+                private boolean tooLarge;
+
+                @Override
+                public CompletionStage<byte[]> getBody() {
+                    return body.getBody();
+                }
+
+                @Override
+                public void onSubscribe(Flow.Subscription newSubscription) {
+                    subscription = newSubscription;
+                    body.onSubscribe(newSubscription);
+                    // cancelled while the response headers were received
+                    if (cancelled) {
+                        newSubscription.cancel();
+                    } else if (contentLength > maxResponseBytes) {
+                        drop(newSubscription);
+                    }
+                }
+
+                @Override
+                public void onNext(List<ByteBuffer> item) {
+                    if (tooLarge) {
+                        return;
+                    }
+                    for (ByteBuffer buffer : item) {
+                        remaining -= buffer.remaining();
+                    }
+                    if (remaining < 0) {
+                        drop(subscription);
+                    } else {
+                        body.onNext(item);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    if (!tooLarge) {
+                        body.onError(throwable);
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    if (!tooLarge) {
+                        body.onComplete();
+                    }
+                }
+
+                private void drop(Flow.Subscription current) {
+                    tooLarge = true;
+                    current.cancel();
+                    metrics.increment(HttpCompression.RESPONSE_TOO_LARGE_METRIC);
+                    body.onError(new ResponseTooLargeException(maxResponseBytes));
+                }
+            };
+        }
+
+        /**
+         * Cancel the exchange, which aborts it from Java 16, and drop the body if it is being received.
+         *
+         * @return true, the request is aborted
+         */
+        boolean cancel(CompletableFuture<?> exchange) {
+            cancelled = true;
+            exchange.cancel(true);
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean isAsyncMode() {
+        return asyncMode;
+    }
+
+    /**
+     * java.net.http does not expose its connections: the leased count is the number of requests in flight.
+     */
+    @Override
+    public PoolStats getPoolStats() {
+        return new PoolStats(sandboxInFlight.get() + productionInFlight.get(), 0, 0, 0);
+    }
+
+    @Override
+    public PoolStats getPoolStats(boolean isSandbox) {
+        return new PoolStats(isSandbox ? sandboxInFlight.get() : productionInFlight.get(), 0, 0, 0);
+    }
+
+    private AtomicInteger getInFlight(HttpUriRequest request) {
+        return sandboxHosts.contains(request.getURI().getHost()) ? sandboxInFlight : productionInFlight;
+    }
+
+    /**
+     * Apache HttpClient sends the Content-Type and the Content-Encoding of the entity, a gzipped body for example:
+     * they are copied on the request when it does not set them itself.
+     */
+    private HttpRequest toHttpRequest(HttpUriRequest request) throws IOException {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+        HttpEntity entity = null;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity instanceof PooledEntity) {
+                body = ofByteBuffer(((PooledEntity) entity).getByteBuffer());
+            } else if (entity != null) {
+                body = HttpRequest.BodyPublishers.ofByteArray(EntityUtils.toByteArray(entity));
+            }
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getURI())
+                .timeout(getTimeout(request))
+                .method(request.getMethod(), body);
+        for (Header header : request.getAllHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase())) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        if (entity != null) {
+            copyHeader(request, entity.getContentType(), builder);
+            copyHeader(request, entity.getContentEncoding(), builder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Publish the content as a single buffer, read in place: {@link HttpRequest.BodyPublishers#ofByteArray(byte[])} would
+     * copy it. Each subscription, one per sending of the request, reads its own view of the content.
+     */
+    private static HttpRequest.BodyPublisher ofByteBuffer(ByteBuffer content) {
+        if (!content.hasRemaining()) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        Flow.Publisher<ByteBuffer> publisher = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            private final AtomicBoolean done = new AtomicBoolean();
+
+            @Override
+            public void request(long n) {
+                if (!done.compareAndSet(false, true)) {
+                    return;
+                }
+                if (n <= 0) {
+                    subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                } else {
+                    subscriber.onNext(content.duplicate());
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                done.set(true);
+            }
+        });
+        return HttpRequest.BodyPublishers.fromPublisher(publisher, content.remaining());
+    }
+
+    private static void copyHeader(HttpUriRequest request, Header header, HttpRequest.Builder builder) {
+        if (header != null && !request.containsHeader(header.getName())) {
+            builder.header(header.getName(), header.getValue());
+        }
+    }
+
+    /**
+     * @return the socket timeout set on the request by {@link TimeoutPolicy}, else the default one
+     */
+    private Duration getTimeout(HttpUriRequest request) {
+        if (request instanceof Configurable) {
+            RequestConfig config = ((Configurable) request).getConfig();
+            if (config != null && config.getSocketTimeout() > 0) {
+                return Duration.ofMillis(config.getSocketTimeout());
+            }
+        }
+        return requestTimeout;
+    }
+
+    private static HttpResponse toHttpResponse(java.net.http.HttpResponse<byte[]> response) {
+        BasicHttpResponse httpResponse = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, response.statusCode(), null));
+        response.headers().map().forEach((name, values) -> values.forEach(value -> httpResponse.addHeader(name, value)));
+
+        ContentType contentType = response.headers().firstValue("Content-Type")
+                .map(ContentType::parse)
+                .orElse(ContentType.APPLICATION_JSON);
+        httpResponse.setEntity(new ByteArrayEntity(response.body(), contentType));
+        return httpResponse;
+    }
+}
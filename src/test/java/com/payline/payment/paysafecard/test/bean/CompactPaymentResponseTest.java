@@ -0,0 +1,77 @@
+package com.payline.payment.template.test.bean;
+
+import com.payline.payment.template.bean.CompactPaymentResponse;
+import com.payline.payment.template.bean.PaymentStatus;
+import com.payline.payment.template.bean.TemplatePaymentResponse;
+import com.payline.payment.template.utils.TemplateGson;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactPaymentResponseTest {
+    private static final String PAYMENT = "{\"object\":\"PAYMENT\",\"id\":\"pay_1000005843_testCorrelationId_EUR\",\"created\":1521817281384,"
+            + "\"updated\":1521817281384,\"amount\":%s,\"currency\":\"EUR\",\"status\":\"%s\",\"type\":\"TEMPLATE\","
+            + "\"redirect\":{\"success_url\":\"https://success\",\"failure_url\":\"https://failure\",\"auth_url\":\"https://auth\"},"
+            + "\"customer\":{\"id\":\"dumbId\",\"ip\":\"127.0.0.1\"},"
+            + "\"card_details\":[{\"serial\":\"0000000009903127\",\"type\":\"00002\",\"country\":\"FR\",\"currency\":\"EUR\",\"amount\":0.01}]}";
+
+    private CompactPaymentResponse read(String json) {
+        return CompactPaymentResponse.of(TemplateGson.getInstance(true).fromJson(json, TemplatePaymentResponse.class));
+    }
+
+    @Test
+    public void paymentIsCompacted() {
+        CompactPaymentResponse response = read(String.format(PAYMENT, "12.30", "SUCCESS"));
+        Assert.assertEquals("pay_1000005843_testCorrelationId_EUR", response.getId());
+        Assert.assertEquals(PaymentStatus.SUCCESS, response.getStatus());
+        Assert.assertEquals("SUCCESS", response.getStatusValue());
+        Assert.assertEquals(1230, response.getAmount());
+        Assert.assertEquals("EUR", response.getCurrency());
+        Assert.assertEquals(1521817281384L, response.getCreated());
+        Assert.assertEquals("https://auth", response.getAuthUrl());
+        Assert.assertEquals("0000000009903127", response.getCardSerial());
+        Assert.assertFalse(response.isError());
+    }
+
+    @Test
+    public void amountIsInHundredths() {
+        Assert.assertEquals(1, read(String.format(PAYMENT, "0.01", "SUCCESS")).getAmount());
+        Assert.assertEquals(100, read(String.format(PAYMENT, "1", "SUCCESS")).getAmount());
+    }
+
+    @Test
+    public void unexpectedAmountIsDropped() {
+        // the payment itself is read
+        CompactPaymentResponse response = read(String.format(PAYMENT, "0.001", "SUCCESS"));
+        Assert.assertEquals(CompactPaymentResponse.NO_AMOUNT, response.getAmount());
+        Assert.assertEquals(PaymentStatus.SUCCESS, response.getStatus());
+        Assert.assertEquals(CompactPaymentResponse.NO_AMOUNT, read(String.format(PAYMENT, "\"12,30\"", "SUCCESS")).getAmount());
+    }
+
+    @Test
+    public void unexpectedDateIsDropped() {
+        CompactPaymentResponse response = read(String.format(PAYMENT, "0.01", "SUCCESS").replace("\"created\":1521817281384", "\"created\":\"2018-03-23T15:01:21Z\""));
+        Assert.assertEquals(CompactPaymentResponse.NO_DATE, response.getCreated());
+        Assert.assertEquals(1, response.getAmount());
+    }
+
+    @Test
+    public void unknownStatusIsKept() {
+        CompactPaymentResponse response = read(String.format(PAYMENT, "0.01", "ON_HOLD"));
+        Assert.assertEquals(PaymentStatus.UNKNOWN, response.getStatus());
+        Assert.assertEquals("ON_HOLD", response.getStatusValue());
+    }
+
+    @Test
+    public void errorResponseIsCompacted() {
+        CompactPaymentResponse response = read("{\"code\":\"invalid_api_key\",\"message\":\"Authentication failed\",\"number\":10008}");
+        Assert.assertTrue(response.isError());
+        Assert.assertEquals("invalid_api_key", response.getCode());
+        Assert.assertEquals("Authentication failed", response.getMessage());
+        Assert.assertEquals("10008", response.getNumber());
+        Assert.assertNull(response.getStatus());
+        Assert.assertNull(response.getStatusValue());
+        Assert.assertEquals(CompactPaymentResponse.NO_AMOUNT, response.getAmount());
+        Assert.assertEquals(CompactPaymentResponse.NO_DATE, response.getCreated());
+        Assert.assertNull(response.getCardSerial());
+    }
+}
@@ -23,6 +23,7 @@ public class PaySafeRequestTest {
         ContractParametersCheckRequest checkRequest = Utils.createContractParametersCheckRequest(null, null, null, Utils.AUTHORISATION_VAL);
         TemplatePaymentRequest request = new TemplatePaymentRequest(checkRequest);
         Assert.assertNotNull(request);
+        Assert.assertTrue(request.isCheck());
     }
 
     @Test
@@ -30,6 +31,7 @@ public class PaySafeRequestTest {
         PaymentRequest paymentRequest = Utils.createCompletePaymentBuilder().build();
         TemplatePaymentRequest request = new TemplatePaymentRequest(paymentRequest);
         Assert.assertNotNull(request);
+        Assert.assertFalse(request.isCheck());
     }
 
     @Test(expected = InvalidRequestException.class)
@@ -0,0 +1,115 @@
+package com.payline.payment.template.test.bean;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.payline.payment.template.bean.CardDetail;
+import com.payline.payment.template.bean.Customer;
+import com.payline.payment.template.bean.Redirect;
+import com.payline.payment.template.bean.TemplateCaptureRequest;
+import com.payline.payment.template.bean.TemplatePaymentRequest;
+import com.payline.payment.template.bean.TemplatePaymentResponse;
+import com.payline.payment.template.utils.TemplateGson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+public class TemplateGsonTest {
+    private static final String PAYMENT = "{\"object\":\"PAYMENT\",\"id\":\"pay_1000005843_testCorrelationId_EUR\",\"created\":1521817281384,"
+            + "\"updated\":1521817281384,\"amount\":0.01,\"currency\":\"EUR\",\"status\":\"SUCCESS\",\"type\":\"TEMPLATE\","
+            + "\"redirect\":{\"success_url\":\"https://success\",\"failure_url\":\"https://failure\",\"auth_url\":\"https://auth?a=1&b=<2>\"},"
+            + "\"customer\":{\"id\":\"dumbId\",\"ip\":\"127.0.0.1\"},\"notification_url\":\"https://notification\","
+            + "\"card_details\":[{\"serial\":\"0000000009903127\",\"type\":\"00002\",\"country\":\"FR\",\"currency\":\"EUR\",\"amount\":0.01}],"
+            + "\"unknown\":{\"nested\":[1,2,{\"a\":null}]},\"code\":null,\"number\":true}";
+
+    // the binding used before the streaming adapters
+    private final Gson reflective = new GsonBuilder().create();
+    private final Gson gson = TemplateGson.getInstance();
+
+    /**
+     * Every field set, with characters escaped by Gson.
+     */
+    private <T> T createComplete(Class<T> type) throws IllegalAccessException {
+        T bean = reflective.fromJson("{}", type);
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                if (field.getType() == String.class) {
+                    field.set(bean, field.getName() + " <é> & \"'= ");
+                } else if (field.getType() == boolean.class) {
+                    field.setBoolean(bean, true);
+                } else if (field.getType() == List.class) {
+                    field.set(bean, Arrays.asList(createComplete(CardDetail.class), null, createComplete(CardDetail.class)));
+                } else {
+                    field.set(bean, createComplete(field.getType()));
+                }
+            }
+        }
+        return bean;
+    }
+
+    private void assertSameJson(Object bean) {
+        Assert.assertEquals(reflective.toJson(bean), gson.toJson(bean));
+    }
+
+    @Test
+    public void completeBeansAreWrittenLikeReflection() throws IllegalAccessException {
+        for (Class<?> type : Arrays.asList(TemplatePaymentRequest.class, TemplateCaptureRequest.class, TemplatePaymentResponse.class,
+                Customer.class, Redirect.class, CardDetail.class)) {
+            assertSameJson(createComplete(type));
+        }
+    }
+
+    @Test
+    public void emptyBeansAreWrittenLikeReflection() {
+        for (Class<?> type : Arrays.asList(TemplatePaymentRequest.class, TemplateCaptureRequest.class, TemplatePaymentResponse.class,
+                Customer.class, Redirect.class, CardDetail.class)) {
+            assertSameJson(reflective.fromJson("{}", type));
+        }
+        Assert.assertEquals("null", gson.toJson(null, TemplatePaymentRequest.class));
+    }
+
+    @Test
+    public void responseIsReadLikeReflection() {
+        TemplatePaymentResponse expected = reflective.fromJson(PAYMENT, TemplatePaymentResponse.class);
+        TemplatePaymentResponse response = gson.fromJson(PAYMENT, TemplatePaymentResponse.class);
+        Assert.assertEquals(reflective.toJson(expected), reflective.toJson(response));
+        Assert.assertEquals("0.01", response.getAmount());
+        Assert.assertEquals("true", response.getNumber());
+        Assert.assertEquals("https://auth?a=1&b=<2>", response.getRedirectURL());
+        Assert.assertEquals("0000000009903127", response.getFirstCardDetails().getSerial());
+    }
+
+    @Test
+    public void errorResponseIsRead() {
+        TemplatePaymentResponse response = gson.fromJson("{\"code\":\"invalid_api_key\",\"message\":\"Authentication failed\",\"number\":10008}",
+                TemplatePaymentResponse.class);
+        Assert.assertEquals("invalid_api_key", response.getCode());
+        Assert.assertEquals("10008", response.getNumber());
+        Assert.assertNull(response.getCardDetails());
+    }
+
+    @Test
+    public void unusedFieldsAreSkipped() {
+        Gson skipping = TemplateGson.getInstance(true);
+        String twoCards = PAYMENT.replace("\"card_details\":[", "\"card_details\":[{\"serial\":\"first\",\"currency\":\"EUR\"},");
+        TemplatePaymentResponse response = skipping.fromJson(twoCards, TemplatePaymentResponse.class);
+        TemplatePaymentResponse other = skipping.fromJson(PAYMENT, TemplatePaymentResponse.class);
+
+        Assert.assertNull(response.getObject());
+        Assert.assertNull(response.getUpdated());
+        Assert.assertNull(response.getCustomer());
+        Assert.assertEquals(1, response.getCardDetails().size());
+        Assert.assertEquals("first", response.getFirstCardDetails().getSerial());
+        Assert.assertEquals("SUCCESS", response.getStatus());
+        Assert.assertEquals("https://auth?a=1&b=<2>", response.getRedirectURL());
+        // the currencies are shared
+        Assert.assertSame(response.getCurrency(), other.getCurrency());
+    }
+}
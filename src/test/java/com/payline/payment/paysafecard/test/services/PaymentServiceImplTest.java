@@ -3,6 +3,7 @@ package com.payline.payment.template.test.services;
 import com.payline.payment.template.bean.TemplatePaymentRequest;
 import com.payline.payment.template.services.PaymentServiceImpl;
 import com.payline.payment.template.test.Utils;
+import com.payline.payment.template.utils.CircuitOpenException;
 import com.payline.payment.template.utils.TemplateHttpClient;
 import com.payline.pmapi.bean.common.FailureCause;
 import com.payline.pmapi.bean.payment.request.PaymentRequest;
@@ -222,4 +223,17 @@ public class PaymentServiceImplTest {
 
         Assert.assertEquals(FailureCause.INTERNAL_ERROR, responseFailure.getFailureCause());
     }
+
+    @Test
+    public void paymentRequestWithOpenCircuit() throws IOException, URISyntaxException  {
+        when(httpClient.initiate(any(TemplatePaymentRequest.class), anyBoolean())).thenThrow(new CircuitOpenException("production"));
+
+        PaymentRequest request = Utils.createCompletePaymentBuilder().build();
+        PaymentResponse response = service.paymentRequest(request);
+
+        PaymentResponseFailure responseFailure = (PaymentResponseFailure) response;
+
+        Assert.assertEquals(FailureCause.COMMUNICATION_ERROR, responseFailure.getFailureCause());
+        Assert.assertEquals(CircuitOpenException.ERROR_CODE, responseFailure.getErrorCode());
+    }
 }
@@ -21,6 +21,8 @@ import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
 
 import static org.mockito.Mockito.*;
@@ -52,6 +54,28 @@ public class PaymentWithRedirectionServiceImplTest {
         Assert.assertEquals("0", responseSuccess.getStatusCode());
     }
 
+    @Test
+    public void finalizeWithUnexpectedAmountFormat() throws IOException, URISyntaxException {
+        // the amount is not used to validate the payment: a format it cannot read does not fail it
+        String json = "{" +
+                "    'id': 'pay_9743636706_C4xKjolAPk439xoFnbvhZ9ckUq2aBCT4_EUR'," +
+                "    'created': '2018-08-17T09:30:36Z'," +
+                "    'amount': '0,01'," +
+                "    'currency': 'EUR'," +
+                "    'status': 'SUCCESS'," +
+                "    'card_details': [" +
+                "        { 'serial': '10000009094601270', 'type': '00028', 'country': 'DE', 'currency': 'EUR', 'amount': 2 }" +
+                "    ]" +
+                "}";
+        RedirectionPaymentRequest redirectionPaymentRequest = Mockito.mock(RedirectionPaymentRequest.class, Mockito.RETURNS_DEEP_STUBS);
+        when(httpClient.retrievePaymentData(any(TemplateCaptureRequest.class), anyBoolean())).thenReturn(Utils.createPaySafeResponse(json));
+
+        PaymentResponse response = service.finalizeRedirectionPayment(redirectionPaymentRequest);
+
+        PaymentResponseSuccess responseSuccess = (PaymentResponseSuccess) response;
+        Assert.assertEquals("pay_9743636706_C4xKjolAPk439xoFnbvhZ9ckUq2aBCT4_EUR", responseSuccess.getPartnerTransactionId());
+    }
+
     @Test
     public void finalizeWithRetrievePaymentDataError() throws IOException, URISyntaxException {
         RedirectionPaymentRequest redirectionPaymentRequest = Mockito.mock(RedirectionPaymentRequest.class, Mockito.RETURNS_DEEP_STUBS);
@@ -122,6 +146,36 @@ public class PaymentWithRedirectionServiceImplTest {
         Assert.assertNotNull(responseFailure);
     }
 
+    @Test
+    public void finalizeWithCaptureTimeout() throws IOException, URISyntaxException {
+        RedirectionPaymentRequest redirectionPaymentRequest = Mockito.mock(RedirectionPaymentRequest.class, Mockito.RETURNS_DEEP_STUBS);
+        when(httpClient.retrievePaymentData(any(TemplateCaptureRequest.class), anyBoolean()))
+                .thenReturn(Utils.createAuthorizedPaySafeResponse())
+                .thenReturn(Utils.createSuccessPaySafeResponse());
+        when(httpClient.capture(any(TemplateCaptureRequest.class), anyBoolean())).thenThrow(new SocketTimeoutException("Read timed out"));
+
+        PaymentResponse response = service.finalizeRedirectionPayment(redirectionPaymentRequest);
+
+        // the partner captured the payment before the timeout
+        Assert.assertEquals(PaymentResponseSuccess.class, response.getClass());
+        verify(httpClient, times(2)).retrievePaymentData(any(TemplateCaptureRequest.class), anyBoolean());
+        verify(httpClient, times(1)).capture(any(TemplateCaptureRequest.class), anyBoolean());
+    }
+
+    @Test
+    public void finalizeWithCaptureConnectFailure() throws IOException, URISyntaxException {
+        RedirectionPaymentRequest redirectionPaymentRequest = Mockito.mock(RedirectionPaymentRequest.class, Mockito.RETURNS_DEEP_STUBS);
+        when(httpClient.retrievePaymentData(any(TemplateCaptureRequest.class), anyBoolean())).thenReturn(Utils.createAuthorizedPaySafeResponse());
+        when(httpClient.capture(any(TemplateCaptureRequest.class), anyBoolean())).thenThrow(new ConnectException("Connection refused"));
+
+        PaymentResponse response = service.finalizeRedirectionPayment(redirectionPaymentRequest);
+
+        // the capture was never sent
+        PaymentResponseFailure responseFailure = (PaymentResponseFailure) response;
+        Assert.assertEquals(FailureCause.COMMUNICATION_ERROR, responseFailure.getFailureCause());
+        verify(httpClient, times(1)).retrievePaymentData(any(TemplateCaptureRequest.class), anyBoolean());
+    }
+
     @Test
     public void finalizeWithHttpException() throws IOException, URISyntaxException {
         RedirectionPaymentRequest redirectionPaymentRequest = Mockito.mock(RedirectionPaymentRequest.class, Mockito.RETURNS_DEEP_STUBS);
@@ -3,6 +3,8 @@ package com.payline.payment.template.test.services;
 import com.payline.payment.template.bean.TemplatePaymentRequest;
 import com.payline.payment.template.services.RefundServiceImpl;
 import com.payline.payment.template.test.Utils;
+import com.payline.payment.template.utils.CircuitOpenException;
+import com.payline.payment.template.utils.DeadlineExceededException;
 import com.payline.payment.template.utils.InvalidRequestException;
 import com.payline.payment.template.utils.TemplateHttpClient;
 import com.payline.pmapi.bean.common.FailureCause;
@@ -199,6 +201,30 @@ public class RefundServiceImplTest {
         Assert.assertNotNull(responseFailure);
     }
 
+    @Test
+    public void refundRequestWithOpenCircuit() throws IOException, URISyntaxException {
+        when(httpClient.refund(any(TemplatePaymentRequest.class), anyBoolean())).thenThrow(new CircuitOpenException("production"));
+
+        RefundResponse response = service.refundRequest(request);
+
+        RefundResponseFailure responseFailure = (RefundResponseFailure) response;
+        Assert.assertEquals(FailureCause.COMMUNICATION_ERROR, responseFailure.getFailureCause());
+        Assert.assertEquals(CircuitOpenException.ERROR_CODE, responseFailure.getErrorCode());
+    }
+
+    @Test
+    public void refundRequestAfterDeadline() throws IOException, URISyntaxException {
+        String json = "{\"status\": \"VALIDATION_SUCCESSFUL\"}";
+        when(httpClient.refund(any(TemplatePaymentRequest.class), anyBoolean()))
+                .thenReturn(Utils.createPaySafeResponse(json))
+                .thenThrow(new DeadlineExceededException("deadline exceeded before the refund call"));
+
+        RefundResponse response = service.refundRequest(request);
+
+        RefundResponseFailure responseFailure = (RefundResponseFailure) response;
+        Assert.assertEquals(FailureCause.COMMUNICATION_ERROR, responseFailure.getFailureCause());
+        Assert.assertEquals(DeadlineExceededException.ERROR_CODE, responseFailure.getErrorCode());
+    }
 
     @Test
     public void canMultiple() {
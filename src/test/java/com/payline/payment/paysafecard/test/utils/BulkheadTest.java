@@ -0,0 +1,86 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.Bulkhead;
+import com.payline.payment.template.utils.BulkheadFullException;
+import com.payline.payment.template.utils.Bulkheads;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class BulkheadTest {
+    private HttpMetrics metrics = new HttpMetrics();
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws IOException {
+        Bulkhead bulkhead = new Bulkhead("mid", 1, 0, 1000, metrics);
+        bulkhead.acquire();
+        long start = System.nanoTime();
+        try {
+            bulkhead.acquire();
+            Assert.fail("no place and no queue");
+        } catch (BulkheadFullException e) {
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+            Assert.assertEquals(1, metrics.getCount("http.bulkhead.mid.rejected"));
+            Assert.assertEquals(1, metrics.getCount("http.bulkhead.rejected"));
+        }
+    }
+
+    @Test
+    public void waitsForPlace() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("mid", 1, 1, 5000, metrics);
+        bulkhead.acquire();
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                bulkhead.acquire();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (bulkhead.getWaiting() == 0) {
+            Thread.sleep(1);
+        }
+        // the queue is full
+        try {
+            bulkhead.tryAcquire();
+            Assert.fail("no place");
+        } catch (BulkheadFullException e) {
+            // expected
+        }
+
+        bulkhead.release();
+        waiting.get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(1, bulkhead.getInProgress());
+        Assert.assertEquals(0, bulkhead.getWaiting());
+    }
+
+    @Test
+    public void waitIsLimited() throws IOException {
+        Bulkhead bulkhead = new Bulkhead("mid", 1, 1, 20, metrics);
+        bulkhead.acquire();
+        try {
+            bulkhead.acquire();
+            Assert.fail("the place is not released");
+        } catch (BulkheadFullException e) {
+            Assert.assertEquals(0, bulkhead.getWaiting());
+        }
+    }
+
+    @Test
+    public void merchantOverrides() {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.BULKHEAD_MAX_CONCURRENT, "5");
+        properties.setProperty(HttpConfiguration.BULKHEAD_MAX_CONCURRENT + ".big", "50");
+        Bulkheads bulkheads = new Bulkheads(new HttpConfiguration(properties), metrics);
+
+        Assert.assertEquals(5, bulkheads.get("small").getMaxConcurrent());
+        Assert.assertEquals(50, bulkheads.get("big").getMaxConcurrent());
+        Assert.assertSame(bulkheads.get("big"), bulkheads.get("big"));
+        Assert.assertEquals(Bulkheads.UNKNOWN_MERCHANT, bulkheads.get(null).getMerchantId());
+    }
+}
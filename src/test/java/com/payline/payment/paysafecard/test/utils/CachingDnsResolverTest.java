@@ -0,0 +1,56 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.CachingDnsResolver;
+import com.payline.payment.template.utils.HttpMetrics;
+import org.apache.http.conn.DnsResolver;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.mockito.Mockito.*;
+
+public class CachingDnsResolverTest {
+    private static final String HOST = "api.template.com";
+
+    private DnsResolver createDelegate() throws UnknownHostException {
+        DnsResolver delegate = Mockito.mock(DnsResolver.class);
+        when(delegate.resolve(HOST)).thenReturn(new InetAddress[]{InetAddress.getLoopbackAddress()});
+        return delegate;
+    }
+
+    @Test
+    public void resolveFromCache() throws UnknownHostException {
+        DnsResolver delegate = createDelegate();
+        HttpMetrics metrics = new HttpMetrics();
+        CachingDnsResolver resolver = new CachingDnsResolver(delegate, 60000, metrics);
+
+        Assert.assertEquals(InetAddress.getLoopbackAddress(), resolver.resolve(HOST)[0]);
+        Assert.assertEquals(InetAddress.getLoopbackAddress(), resolver.resolve(HOST)[0]);
+
+        verify(delegate, times(1)).resolve(HOST);
+        Assert.assertEquals(1, metrics.getCount(CachingDnsResolver.HITS_METRIC));
+        Assert.assertEquals(1, metrics.getCount(CachingDnsResolver.MISSES_METRIC));
+    }
+
+    @Test
+    public void resolveWithoutCache() throws UnknownHostException {
+        DnsResolver delegate = createDelegate();
+        CachingDnsResolver resolver = new CachingDnsResolver(delegate, 0, new HttpMetrics());
+
+        resolver.resolve(HOST);
+        resolver.resolve(HOST);
+
+        verify(delegate, times(2)).resolve(HOST);
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void resolveUnknownHost() throws UnknownHostException {
+        DnsResolver delegate = createDelegate();
+        when(delegate.resolve("foo")).thenThrow(UnknownHostException.class);
+
+        new CachingDnsResolver(delegate, 60000, new HttpMetrics()).resolve("foo");
+    }
+}
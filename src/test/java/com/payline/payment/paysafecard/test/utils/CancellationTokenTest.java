@@ -0,0 +1,57 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.CancellationToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CancellationTokenTest {
+
+    @Test
+    public void boundToThread() {
+        Assert.assertNull(CancellationToken.current());
+        try (CancellationToken token = CancellationToken.start()) {
+            Assert.assertSame(token, CancellationToken.current());
+        }
+        Assert.assertNull(CancellationToken.current());
+    }
+
+    @Test
+    public void listenersRunOnce() {
+        AtomicInteger cancelled = new AtomicInteger();
+        try (CancellationToken token = CancellationToken.start()) {
+            token.addListener(cancelled::incrementAndGet);
+            Runnable removed = () -> Assert.fail("the listener is removed");
+            token.addListener(removed);
+            token.removeListener(removed);
+
+            token.cancel();
+            token.cancel();
+            Assert.assertTrue(token.isCancelled());
+            Assert.assertEquals(1, cancelled.get());
+
+            // a listener added too late runs at once
+            token.addListener(cancelled::incrementAndGet);
+            Assert.assertEquals(2, cancelled.get());
+        }
+    }
+
+    @Test
+    public void nestedTokenIsCancelledWithParent() {
+        try (CancellationToken parent = CancellationToken.start()) {
+            try (CancellationToken child = CancellationToken.start()) {
+                parent.cancel();
+                Assert.assertTrue(child.isCancelled());
+            }
+            Assert.assertSame(parent, CancellationToken.current());
+        }
+
+        try (CancellationToken parent = CancellationToken.start()) {
+            try (CancellationToken child = CancellationToken.start()) {
+                child.cancel();
+            }
+            Assert.assertFalse(parent.isCancelled());
+        }
+    }
+}
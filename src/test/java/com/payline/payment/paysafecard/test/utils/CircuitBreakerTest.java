@@ -0,0 +1,114 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.CircuitBreaker;
+import com.payline.payment.template.utils.CircuitOpenException;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+public class CircuitBreakerTest {
+    private HttpMetrics metrics = new HttpMetrics();
+    private List<String> transitions = new ArrayList<>();
+
+    private CircuitBreaker createCircuitBreaker() {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.CIRCUIT_WINDOW, "10");
+        properties.setProperty(HttpConfiguration.CIRCUIT_MIN_CALLS, "4");
+        properties.setProperty(HttpConfiguration.CIRCUIT_FAILURE_RATE, "50");
+        properties.setProperty(HttpConfiguration.CIRCUIT_SLOW_CALL, "1000");
+        properties.setProperty(HttpConfiguration.CIRCUIT_SLOW_CALL_RATE, "75");
+        properties.setProperty(HttpConfiguration.CIRCUIT_OPEN_DURATION, "20");
+        properties.setProperty(HttpConfiguration.CIRCUIT_HALF_OPEN_CALLS, "2");
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", new HttpConfiguration(properties), metrics);
+        circuitBreaker.addListener((name, from, to) -> transitions.add(name + ":" + from + "->" + to));
+        return circuitBreaker;
+    }
+
+    @Test
+    public void opensOnFailureRate() throws CircuitOpenException {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        circuitBreaker.onSuccess(10);
+        circuitBreaker.onFailure(10);
+        circuitBreaker.onSuccess(10);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.onFailure(10);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        try {
+            circuitBreaker.acquire();
+            Assert.fail("the circuit is open");
+        } catch (CircuitOpenException e) {
+            Assert.assertEquals(1, metrics.getCount("http.circuit.test.rejected"));
+        }
+        Assert.assertEquals(1, metrics.snapshot().get("http.circuit.test.state"));
+    }
+
+    @Test
+    public void opensOnSlowCallRate() {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        circuitBreaker.onSuccess(1500);
+        circuitBreaker.onSuccess(1500);
+        circuitBreaker.onSuccess(10);
+        circuitBreaker.onSuccess(1500);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void halfOpenProbes() throws Exception {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure(10);
+        }
+        Thread.sleep(30);
+
+        // only two probes are let through
+        circuitBreaker.acquire();
+        circuitBreaker.acquire();
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        try {
+            circuitBreaker.acquire();
+            Assert.fail("the probes are limited");
+        } catch (CircuitOpenException e) {
+            // expected
+        }
+
+        circuitBreaker.onSuccess(10);
+        circuitBreaker.onSuccess(10);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertEquals(3, transitions.size());
+        Assert.assertEquals("test:CLOSED->OPEN", transitions.get(0));
+        Assert.assertEquals("test:OPEN->HALF_OPEN", transitions.get(1));
+        Assert.assertEquals("test:HALF_OPEN->CLOSED", transitions.get(2));
+        Assert.assertEquals(1, metrics.getCount("http.circuit.test.transitions.closed"));
+    }
+
+    @Test
+    public void halfOpenFailureReopens() throws Exception {
+        CircuitBreaker circuitBreaker = createCircuitBreaker();
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure(10);
+        }
+        Thread.sleep(30);
+
+        circuitBreaker.acquire();
+        circuitBreaker.onFailure(10);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertEquals(2, metrics.getCount("http.circuit.test.transitions.open"));
+    }
+
+    @Test
+    public void disabled() throws CircuitOpenException {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.CIRCUIT_ENABLED, "false");
+        properties.setProperty(HttpConfiguration.CIRCUIT_MIN_CALLS, "1");
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", new HttpConfiguration(properties), metrics);
+        circuitBreaker.onFailure(10);
+        circuitBreaker.acquire();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+}
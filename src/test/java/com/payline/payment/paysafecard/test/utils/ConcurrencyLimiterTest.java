@@ -0,0 +1,113 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.ConcurrencyLimitException;
+import com.payline.payment.template.utils.ConcurrencyLimiter;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.PartnerOperation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrencyLimiterTest {
+    private HttpMetrics metrics = new HttpMetrics();
+
+    private ConcurrencyLimiter createLimiter(int initial) {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.LIMITER_INITIAL, String.valueOf(initial));
+        properties.setProperty(HttpConfiguration.LIMITER_MIN, "2");
+        properties.setProperty(HttpConfiguration.LIMITER_MAX, "50");
+        return new ConcurrencyLimiter("test", new HttpConfiguration(properties), metrics);
+    }
+
+    /**
+     * Fill the limit, then end one call with the latency
+     */
+    private static void sample(ConcurrencyLimiter limiter, long latencyMillis, boolean dropped) throws ConcurrencyLimitException {
+        sample(limiter, PartnerOperation.RETRIEVE, latencyMillis, dropped);
+    }
+
+    private static void sample(ConcurrencyLimiter limiter, PartnerOperation operation, long latencyMillis, boolean dropped) throws ConcurrencyLimitException {
+        while (limiter.getInFlight() < limiter.getLimit()) {
+            limiter.acquire();
+        }
+        limiter.onSample(operation, TimeUnit.MILLISECONDS.toNanos(latencyMillis), dropped);
+    }
+
+    @Test
+    public void shedsAboveLimit() throws ConcurrencyLimitException {
+        ConcurrencyLimiter limiter = createLimiter(2);
+        limiter.acquire();
+        limiter.acquire();
+        try {
+            limiter.acquire();
+            Assert.fail("the limit is reached");
+        } catch (ConcurrencyLimitException e) {
+            Assert.assertEquals(1, metrics.getCount("http.limiter.test.shed"));
+        }
+        Assert.assertEquals(2, metrics.snapshot().get("http.limiter.test.limit"));
+
+        limiter.release();
+        limiter.acquire();
+        Assert.assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    public void growsWhileLatencyIsStable() throws ConcurrencyLimitException {
+        ConcurrencyLimiter limiter = createLimiter(10);
+        for (int i = 0; i < 20; i++) {
+            sample(limiter, 10, false);
+        }
+        Assert.assertTrue(limiter.getLimit() > 10);
+        Assert.assertEquals(10, limiter.getNoLoadLatency(PartnerOperation.RETRIEVE));
+    }
+
+    @Test
+    public void shrinksWhenLatencyRises() throws ConcurrencyLimitException {
+        ConcurrencyLimiter limiter = createLimiter(30);
+        sample(limiter, 10, false);
+        int limit = limiter.getLimit();
+        for (int i = 0; i < 5; i++) {
+            sample(limiter, 100, false);
+        }
+        Assert.assertTrue(limiter.getLimit() < limit);
+    }
+
+    @Test
+    public void slowOperationIsNotQueueing() throws ConcurrencyLimitException {
+        ConcurrencyLimiter limiter = createLimiter(30);
+        sample(limiter, PartnerOperation.RETRIEVE, 10, false);
+        int limit = limiter.getLimit();
+        for (int i = 0; i < 5; i++) {
+            // a capture is always slower than a retrieve
+            sample(limiter, PartnerOperation.CAPTURE, 500, false);
+        }
+        Assert.assertTrue(limiter.getLimit() >= limit);
+        Assert.assertEquals(10, limiter.getNoLoadLatency(PartnerOperation.RETRIEVE));
+        Assert.assertEquals(500, limiter.getNoLoadLatency(PartnerOperation.CAPTURE));
+        Assert.assertEquals(-1, limiter.getNoLoadLatency(PartnerOperation.REFUND));
+    }
+
+    @Test
+    public void backsOffOnFailure() throws ConcurrencyLimitException {
+        ConcurrencyLimiter limiter = createLimiter(20);
+        sample(limiter, 10, true);
+        Assert.assertEquals(18, limiter.getLimit());
+
+        for (int i = 0; i < 50; i++) {
+            sample(limiter, 10, true);
+        }
+        Assert.assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void ignoresLatencyWithFewCalls() throws ConcurrencyLimitException {
+        ConcurrencyLimiter limiter = createLimiter(20);
+        limiter.acquire();
+        limiter.onSample(PartnerOperation.RETRIEVE, TimeUnit.MILLISECONDS.toNanos(10), false);
+        Assert.assertEquals(20, limiter.getLimit());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,49 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.Deadline;
+import com.payline.payment.template.utils.DeadlineExceededException;
+import com.payline.payment.template.utils.PartnerOperation;
+import org.apache.http.client.config.RequestConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeadlineTest {
+
+    @Test
+    public void boundToThread() {
+        Assert.assertNull(Deadline.current());
+        try (Deadline outer = Deadline.start(10000)) {
+            Assert.assertSame(outer, Deadline.current());
+            try (Deadline inner = Deadline.start(60000)) {
+                Assert.assertSame(inner, Deadline.current());
+                // the earliest deadline applies
+                Assert.assertTrue(inner.remainingMillis() <= 10000);
+            }
+            Assert.assertSame(outer, Deadline.current());
+        }
+        Assert.assertNull(Deadline.current());
+    }
+
+    @Test
+    public void shrink() {
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(2000)
+                .setConnectionRequestTimeout(50)
+                .setSocketTimeout(4000)
+                .build();
+        try (Deadline deadline = Deadline.start(1000)) {
+            RequestConfig shrunk = deadline.shrink(config);
+            Assert.assertTrue(shrunk.getConnectTimeout() <= 1000);
+            Assert.assertEquals(50, shrunk.getConnectionRequestTimeout());
+            Assert.assertTrue(shrunk.getSocketTimeout() <= 1000);
+            Assert.assertTrue(shrunk.getSocketTimeout() > 0);
+        }
+    }
+
+    @Test(expected = DeadlineExceededException.class)
+    public void check() throws DeadlineExceededException {
+        try (Deadline deadline = Deadline.start(0)) {
+            deadline.check(PartnerOperation.CAPTURE);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.EndpointRouter;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.PartnerEndpoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+public class EndpointRouterTest {
+    private HttpMetrics metrics = new HttpMetrics();
+
+    private EndpointRouter createRouter(String... hosts) {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.ROUTING_EJECTION_CONSECUTIVE_FAILURES, "3");
+        properties.setProperty(HttpConfiguration.ROUTING_EJECTION_TIME, "100");
+        return new EndpointRouter("test", Arrays.asList(hosts), new HttpConfiguration(properties), metrics);
+    }
+
+    @Test
+    public void singleEndpoint() {
+        EndpointRouter router = createRouter("a.test");
+        PartnerEndpoint endpoint = router.select(null);
+        Assert.assertEquals("a.test", endpoint.getHost());
+        // no other host to fail over to
+        Assert.assertSame(endpoint, router.select(endpoint));
+    }
+
+    @Test
+    public void prefersFastEndpoint() {
+        EndpointRouter router = createRouter("a.test", "b.test");
+        PartnerEndpoint a = router.getEndpoints().get(0);
+        PartnerEndpoint b = router.getEndpoints().get(1);
+        router.onSuccess(a, 200);
+        router.onSuccess(b, 20);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertSame(b, router.select(null));
+        }
+        Assert.assertEquals(200, a.getLatency(), 0.001);
+    }
+
+    @Test
+    public void avoidsFailingEndpoint() {
+        EndpointRouter router = createRouter("a.test", "b.test");
+        PartnerEndpoint a = router.getEndpoints().get(0);
+        PartnerEndpoint b = router.getEndpoints().get(1);
+        router.onSuccess(a, 20);
+        router.onSuccess(b, 50);
+        router.onFailure(a);
+        // the errors weigh more than the latency
+        Assert.assertSame(b, router.select(null));
+        Assert.assertTrue(a.getErrorRate() > 0);
+        Assert.assertFalse(a.isEjected());
+    }
+
+    @Test
+    public void failsOverToAnotherEndpoint() {
+        EndpointRouter router = createRouter("a.test", "b.test", "c.test");
+        for (int i = 0; i < 10; i++) {
+            PartnerEndpoint first = router.select(null);
+            Assert.assertNotSame(first, router.select(first));
+        }
+    }
+
+    @Test
+    public void ejectsThenReadmits() throws InterruptedException {
+        EndpointRouter router = createRouter("a.test", "b.test");
+        PartnerEndpoint a = router.getEndpoints().get(0);
+        PartnerEndpoint b = router.getEndpoints().get(1);
+        for (int i = 0; i < 3; i++) {
+            router.onFailure(a);
+        }
+        Assert.assertTrue(a.isEjected());
+        Assert.assertEquals(1, metrics.getCount("http.endpoint.a.test.ejections"));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertSame(b, router.select(null));
+        }
+
+        Thread.sleep(150);
+        router.select(null);
+        Assert.assertFalse(a.isEjected());
+        Assert.assertEquals(1, metrics.getCount("http.endpoint.a.test.readmissions"));
+        Assert.assertEquals(0, a.getErrorRate(), 0.001);
+
+        // a failure during the probation ejects it again, for twice the time
+        router.onFailure(a);
+        Assert.assertTrue(a.isEjected());
+        Thread.sleep(150);
+        router.select(null);
+        Assert.assertTrue(a.isEjected());
+    }
+
+    @Test
+    public void usesFirstBackWhenAllEjected() {
+        EndpointRouter router = createRouter("a.test", "b.test");
+        PartnerEndpoint a = router.getEndpoints().get(0);
+        PartnerEndpoint b = router.getEndpoints().get(1);
+        for (int i = 0; i < 3; i++) {
+            router.onFailure(a);
+        }
+        for (int i = 0; i < 3; i++) {
+            router.onFailure(b);
+        }
+        Assert.assertSame(a, router.select(null));
+    }
+}
@@ -0,0 +1,44 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.EndpointTemplate;
+import com.payline.payment.template.utils.PartnerEndpoints;
+import com.payline.payment.template.utils.PartnerOperation;
+import org.apache.http.Header;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+
+public class EndpointTemplateTest {
+    private PartnerEndpoints endpoints = new PartnerEndpoints("gzip, deflate");
+
+    @Test
+    public void createUri() throws Exception {
+        Assert.assertEquals(URI.create("https://apitest.template.com/v1/payments/"), endpoints.get(PartnerOperation.INITIATE, true).createUri(null));
+        Assert.assertEquals(URI.create("https://api.template.com/v1/payments/pay_1/"), endpoints.get(PartnerOperation.RETRIEVE, false).createUri("pay_1"));
+        Assert.assertEquals(URI.create("https://api.template.com/v1/payments/pay_1/capture/"), endpoints.get(PartnerOperation.CAPTURE, false).createUri("pay_1"));
+        Assert.assertEquals(URI.create("https://apitest.template.com/v1/payments/pay_1/refunds/"), endpoints.get(PartnerOperation.REFUND, true).createUri("pay_1"));
+    }
+
+    @Test
+    public void createUriEncodesPaymentId() throws Exception {
+        URI uri = endpoints.get(PartnerOperation.RETRIEVE, false).createUri("pay 1/\u00e9?#");
+        Assert.assertEquals("/v1/payments/pay%201%2F%C3%A9%3F%23/", uri.getRawPath());
+        Assert.assertNull(uri.getRawQuery());
+        Assert.assertNull(uri.getRawFragment());
+    }
+
+    @Test
+    public void createHeaders() {
+        EndpointTemplate endpoint = endpoints.get(PartnerOperation.CAPTURE, true);
+        Header[] headers = endpoint.createHeaders("Basic abc");
+        Assert.assertEquals(3, headers.length);
+        Assert.assertEquals("application/json", headers[0].getValue());
+        Assert.assertEquals("gzip, deflate", headers[1].getValue());
+        Assert.assertEquals("Authorization", headers[2].getName());
+        Assert.assertEquals("Basic abc", headers[2].getValue());
+        Assert.assertEquals("Basic def", endpoint.createHeaders("Basic def")[2].getValue());
+
+        Assert.assertEquals(2, new PartnerEndpoints(null).get(PartnerOperation.CAPTURE, true).createHeaders("Basic abc").length);
+    }
+}
@@ -0,0 +1,69 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.HedgePolicy;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.LatencyTracker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Properties;
+
+public class HedgePolicyTest {
+    private HttpMetrics metrics = new HttpMetrics();
+
+    private HedgePolicy createPolicy() {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.HEDGE_ENABLED, "true");
+        properties.setProperty(HttpConfiguration.HEDGE_PERCENTILE, "90");
+        properties.setProperty(HttpConfiguration.HEDGE_MIN_DELAY, "5");
+        properties.setProperty(HttpConfiguration.HEDGE_MIN_SAMPLES, "10");
+        properties.setProperty(HttpConfiguration.HEDGE_BUDGET_RATIO, "0.5");
+        properties.setProperty(HttpConfiguration.HEDGE_BUDGET_RESERVE, "1");
+        return new HedgePolicy(new HttpConfiguration(properties), metrics);
+    }
+
+    @Test
+    public void percentile() {
+        LatencyTracker tracker = new LatencyTracker(100);
+        Assert.assertEquals(-1, tracker.percentile(99));
+        for (int i = 1; i <= 200; i++) {
+            tracker.record(i);
+        }
+        // only the last 100 latencies are kept
+        Assert.assertEquals(200, tracker.getCount());
+        Assert.assertEquals(101, tracker.percentile(0));
+        Assert.assertEquals(150, tracker.percentile(50));
+        Assert.assertEquals(199, tracker.percentile(99));
+        Assert.assertEquals(200, tracker.percentile(100));
+    }
+
+    @Test
+    public void getDelay() {
+        HedgePolicy policy = createPolicy();
+        Assert.assertTrue(policy.isEnabled());
+        for (int i = 0; i < 9; i++) {
+            policy.recordAttempt(1);
+        }
+        Assert.assertEquals(-1, policy.getDelay());
+
+        policy.recordAttempt(1);
+        // the minimum delay applies
+        Assert.assertEquals(5, policy.getDelay());
+    }
+
+    @Test
+    public void budgetAndRate() {
+        HedgePolicy policy = createPolicy();
+        policy.onCall();
+        Assert.assertTrue(policy.tryHedge());
+        Assert.assertFalse(policy.tryHedge());
+        policy.onCall();
+        Assert.assertEquals(1, metrics.getCount("http.hedge.budgetExhausted"));
+        Assert.assertEquals(0.5, policy.getRate(), 0.001);
+
+        policy.recordCall(42, true);
+        Assert.assertEquals(1, metrics.getCount("http.hedge.wins"));
+        Assert.assertEquals(42L, metrics.snapshot().get("http.hedge.latency.p99"));
+    }
+}
@@ -0,0 +1,190 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.HttpCompression;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.PooledEntity;
+import com.payline.payment.template.utils.RequestBufferPool;
+import com.payline.payment.template.utils.ResponseTooLargeException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class HttpCompressionTest {
+    private static final String JSON = "{\"card_details\": [{\"serial\": \"1234\", \"type\": \"00028\", \"country\": \"FR\", \"currency\": \"EUR\", \"amount\": \"1.00\"}]}";
+
+    private HttpMetrics metrics = new HttpMetrics();
+
+    private HttpCompression createCompression() {
+        return createCompression(new Properties());
+    }
+
+    private HttpCompression createCompression(Properties properties) {
+        return new HttpCompression(createConfiguration(properties), metrics);
+    }
+
+    private static HttpConfiguration createConfiguration(Properties properties) {
+        properties.setProperty(HttpConfiguration.COMPRESSION_REQUEST_ENABLED, "false");
+        properties.setProperty(HttpConfiguration.COMPRESSION_REQUEST_ENABLED + ".sandbox", "true");
+        properties.setProperty(HttpConfiguration.COMPRESSION_REQUEST_THRESHOLD, "10");
+        return new HttpConfiguration(properties);
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void decodeGzipResponse() throws IOException {
+        byte[] compressed = gzip(JSON);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(compressed));
+        response.addHeader(HttpCompression.CONTENT_ENCODING_KEY, "gzip");
+
+        Assert.assertEquals(JSON, EntityUtils.toString(createCompression().decode(response), "UTF-8"));
+        Assert.assertEquals(compressed.length, metrics.getCount(HttpCompression.RESPONSE_WIRE_METRIC));
+        Assert.assertEquals(JSON.length(), metrics.getCount(HttpCompression.RESPONSE_DECODED_METRIC));
+    }
+
+    @Test
+    public void decodePlainResponse() throws IOException {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(JSON.getBytes(StandardCharsets.UTF_8)));
+
+        Assert.assertEquals(JSON, EntityUtils.toString(createCompression().decode(response), "UTF-8"));
+        Assert.assertEquals(JSON.length(), metrics.getCount(HttpCompression.RESPONSE_WIRE_METRIC));
+        Assert.assertEquals(JSON.length(), metrics.getCount(HttpCompression.RESPONSE_DECODED_METRIC));
+    }
+
+    @Test
+    public void declaredResponseTooLarge() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RESPONSE_MAX_BYTES, "10");
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(JSON.getBytes(StandardCharsets.UTF_8)));
+
+        try {
+            createCompression(properties).decode(response);
+            Assert.fail("the response is larger than the limit");
+        } catch (ResponseTooLargeException e) {
+            Assert.assertEquals(0, metrics.getCount(HttpCompression.RESPONSE_WIRE_METRIC));
+            Assert.assertEquals(1, metrics.getCount(HttpCompression.RESPONSE_TOO_LARGE_METRIC));
+        }
+    }
+
+    @Test
+    public void decodedResponseTooLarge() throws IOException {
+        // a small gzip body can hold a huge JSON
+        char[] padding = new char[100000];
+        Arrays.fill(padding, ' ');
+        byte[] compressed = gzip(new String(padding) + JSON);
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RESPONSE_MAX_BYTES, "1000");
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(compressed));
+        response.addHeader(HttpCompression.CONTENT_ENCODING_KEY, "gzip");
+
+        try {
+            EntityUtils.toString(createCompression(properties).decode(response), "UTF-8");
+            Assert.fail("the decoded response is larger than the limit");
+        } catch (ResponseTooLargeException e) {
+            Assert.assertTrue(compressed.length < 1000);
+            Assert.assertEquals(1001, metrics.getCount(HttpCompression.RESPONSE_DECODED_METRIC));
+        }
+    }
+
+    @Test
+    public void compressRequestPerEnvironment() throws IOException {
+        HttpCompression compression = createCompression();
+
+        HttpEntity sandbox = compression.createEntity(JSON, true);
+        Assert.assertEquals("gzip", sandbox.getContentEncoding().getValue());
+        Assert.assertEquals(JSON, EntityUtils.toString(new ByteArrayEntity(readGzip(sandbox)), "UTF-8"));
+
+        HttpEntity production = compression.createEntity(JSON, false);
+        Assert.assertNull(production.getContentEncoding());
+        Assert.assertEquals(JSON, EntityUtils.toString(production, "UTF-8"));
+    }
+
+    @Test
+    public void pooledRequestPerEnvironment() throws IOException {
+        HttpConfiguration configuration = createConfiguration(new Properties());
+        RequestBufferPool buffers = new RequestBufferPool(configuration, metrics);
+        HttpCompression compression = new HttpCompression(configuration, metrics, buffers);
+
+        PooledEntity sandbox = compression.createEntity(encode(buffers, JSON), true);
+        Assert.assertEquals("gzip", sandbox.getContentEncoding().getValue());
+        Assert.assertEquals(JSON, EntityUtils.toString(new ByteArrayEntity(readGzip(sandbox)), "UTF-8"));
+        sandbox.release();
+
+        PooledEntity production = compression.createEntity(encode(buffers, JSON), false);
+        Assert.assertNull(production.getContentEncoding());
+        Assert.assertEquals(JSON.length(), production.getContentLength());
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        production.writeTo(sent);
+        production.writeTo(sent);
+        Assert.assertEquals(JSON + JSON, sent.toString("UTF-8"));
+        production.release();
+        production.release();
+
+        // the raw and the gzipped bodies of the sandbox, then the production body, went through two buffers
+        Assert.assertEquals(2, metrics.getCount(RequestBufferPool.ALLOCATED_METRIC));
+        Assert.assertEquals(1, metrics.getCount(RequestBufferPool.REUSED_METRIC));
+        Assert.assertEquals(2, metrics.snapshot().get("http.buffer.pooled").intValue());
+    }
+
+    @Test
+    public void largeBufferIsNotKept() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.BUFFER_INITIAL_SIZE, "16");
+        properties.setProperty(HttpConfiguration.BUFFER_MAX_RETAINED, "64");
+        RequestBufferPool buffers = new RequestBufferPool(new HttpConfiguration(properties), metrics);
+
+        encode(buffers, JSON).release();
+        encode(buffers, "{}").release();
+
+        Assert.assertEquals(2, metrics.getCount(RequestBufferPool.ALLOCATED_METRIC));
+        Assert.assertEquals(1, metrics.snapshot().get("http.buffer.pooled").intValue());
+    }
+
+    private static RequestBufferPool.Buffer encode(RequestBufferPool buffers, String json) throws IOException {
+        RequestBufferPool.Buffer buffer = buffers.acquire();
+        buffer.getWriter().write(json);
+        buffer.getWriter().flush();
+        return buffer;
+    }
+
+    @Test
+    public void smallRequestIsNotCompressed() throws IOException {
+        Assert.assertNull(createCompression().createEntity("{}", true).getContentEncoding());
+    }
+
+    private static byte[] readGzip(HttpEntity entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(entity.getContent())) {
+            byte[] buffer = new byte[256];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
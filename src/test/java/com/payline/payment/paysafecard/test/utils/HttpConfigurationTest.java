@@ -0,0 +1,63 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.TemplateCardConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+public class HttpConfigurationTest {
+
+    private HttpConfiguration createConfiguration() {
+        Properties properties = new Properties();
+        properties.setProperty("foo.int", "12");
+        properties.setProperty("foo.bad", "bar");
+        properties.setProperty("foo.bool", "true");
+        return new HttpConfiguration(properties);
+    }
+
+    @Test
+    public void getValues() {
+        HttpConfiguration configuration = createConfiguration();
+        Assert.assertEquals(12, configuration.getInt("foo.int", 0));
+        Assert.assertEquals(12L, configuration.getLong("foo.int", 0L));
+        Assert.assertTrue(configuration.getBoolean("foo.bool", false));
+        Assert.assertEquals("bar", configuration.getString("foo.bad", null));
+    }
+
+    @Test
+    public void getDefaultValues() {
+        HttpConfiguration configuration = createConfiguration();
+        Assert.assertEquals(5, configuration.getInt("foo.bad", 5));
+        Assert.assertEquals(5, configuration.getInt("foo.missing", 5));
+        Assert.assertFalse(configuration.getBoolean("foo.missing", false));
+        Assert.assertNull(configuration.getString("foo.missing", null));
+    }
+
+    @Test
+    public void systemPropertyOverride() {
+        System.setProperty("foo.int", "42");
+        try {
+            Assert.assertEquals(42, createConfiguration().getInt("foo.int", 0));
+        } finally {
+            System.clearProperty("foo.int");
+        }
+    }
+
+    @Test
+    public void defaultFileIsLoaded() {
+        Assert.assertTrue(HttpConfiguration.getInstance().getInt(HttpConfiguration.POOL_MAX_TOTAL, 0) > 0);
+    }
+
+    @Test
+    public void getHosts() {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.ENDPOINTS_PRODUCTION, "eu.template.com, us.template.com,,eu.template.com");
+        HttpConfiguration configuration = new HttpConfiguration(properties);
+        Assert.assertEquals(Arrays.asList("eu.template.com", "us.template.com"), configuration.getHosts(false));
+        Assert.assertEquals(Collections.singletonList(TemplateCardConstants.SANDBOX_URL), configuration.getHosts(true));
+    }
+}
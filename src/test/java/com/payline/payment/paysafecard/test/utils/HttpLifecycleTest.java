@@ -0,0 +1,99 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpLifecycle;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.ShuttingDownException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class HttpLifecycleTest {
+    private HttpMetrics metrics = new HttpMetrics();
+
+    private HttpLifecycle createLifecycle() {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.LIFECYCLE_SHUTDOWN_HOOK, "false");
+        return new HttpLifecycle(new HttpConfiguration(properties), metrics);
+    }
+
+    @Test
+    public void drainsCallsInProgress() throws Exception {
+        HttpLifecycle lifecycle = createLifecycle();
+        List<String> closed = new ArrayList<>();
+        lifecycle.register(() -> closed.add("transport"));
+        lifecycle.register(() -> closed.add("scheduler"));
+        lifecycle.enter();
+
+        CompletableFuture<Boolean> shutdown = CompletableFuture.supplyAsync(() -> lifecycle.shutdown(5000));
+        while (lifecycle.getState() == HttpLifecycle.State.STARTED) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(HttpLifecycle.State.DRAINING, lifecycle.getState());
+        Assert.assertTrue(closed.isEmpty());
+        try {
+            lifecycle.enter();
+            Assert.fail("the new calls are rejected while draining");
+        } catch (ShuttingDownException e) {
+            Assert.assertEquals(1, metrics.getCount("http.lifecycle.rejected"));
+        }
+
+        lifecycle.exit();
+        Assert.assertTrue(shutdown.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(HttpLifecycle.State.CLOSED, lifecycle.getState());
+        // in the reverse order of their registration
+        Assert.assertEquals("scheduler", closed.get(0));
+        Assert.assertEquals("transport", closed.get(1));
+    }
+
+    @Test
+    public void drainWaitsForWholeFlow() throws Exception {
+        HttpLifecycle lifecycle = createLifecycle();
+        HttpLifecycle.Flow flow = lifecycle.startFlow();
+        // the retrieve of the flow
+        lifecycle.enter();
+        lifecycle.exit();
+
+        CompletableFuture<Boolean> shutdown = CompletableFuture.supplyAsync(() -> lifecycle.shutdown(5000));
+        while (lifecycle.getState() == HttpLifecycle.State.STARTED) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(1, lifecycle.getInFlight());
+
+        // the capture of the flow is still sent, a call outside the flow is not
+        lifecycle.enter();
+        lifecycle.exit();
+        Assert.assertTrue(CompletableFuture.supplyAsync(() -> {
+            try {
+                lifecycle.enter();
+                return false;
+            } catch (ShuttingDownException e) {
+                return true;
+            }
+        }).get(1, TimeUnit.SECONDS));
+        Assert.assertFalse(shutdown.isDone());
+
+        flow.close();
+        Assert.assertTrue(shutdown.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(HttpLifecycle.State.CLOSED, lifecycle.getState());
+    }
+
+    @Test
+    public void drainIsLimited() throws Exception {
+        HttpLifecycle lifecycle = createLifecycle();
+        List<String> closed = new ArrayList<>();
+        lifecycle.register(() -> closed.add("transport"));
+        lifecycle.enter();
+
+        Assert.assertFalse(lifecycle.shutdown(20));
+        Assert.assertEquals(1, closed.size());
+        // a resource registered too late is closed at once
+        lifecycle.register(() -> closed.add("late"));
+        Assert.assertEquals(2, closed.size());
+    }
+}
@@ -0,0 +1,31 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.ApacheHttpTransport;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.HttpTransports;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Properties;
+
+public class HttpTransportsTest {
+    private HttpConfiguration configuration = new HttpConfiguration(new Properties());
+
+    @Test
+    public void createDefault() {
+        Assert.assertTrue(HttpTransports.create(configuration, new HttpMetrics()) instanceof ApacheHttpTransport);
+        Assert.assertSame(HttpTransports.getDefault(), HttpTransports.getDefault());
+    }
+
+    @Test
+    public void createUnknown() {
+        Assert.assertTrue(HttpTransports.create("foo", configuration, new HttpMetrics()) instanceof ApacheHttpTransport);
+    }
+
+    @Test
+    public void createJdk() {
+        // falls back to apache when the Java 11 classes are not available
+        Assert.assertNotNull(HttpTransports.create(HttpTransports.JDK, configuration, new HttpMetrics()));
+    }
+}
@@ -0,0 +1,236 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.HttpCompression;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.HttpTransport;
+import com.payline.payment.template.utils.HttpTransports;
+import com.payline.payment.template.utils.RequestBufferPool;
+import com.payline.payment.template.utils.ResponseTooLargeException;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Only run on Java 11 or later, where the jdk transport is available.
+ */
+public class JdkHttpTransportTest {
+    private HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CompletableFuture<Headers> requestHeaders = new CompletableFuture<>();
+    private final CompletableFuture<byte[]> requestBody = new CompletableFuture<>();
+    private HttpTransport transport;
+
+    @Before
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            requestHeaders.complete(exchange.getRequestHeaders());
+            requestBody.complete(readAll(exchange.getRequestBody()));
+            byte[] response = "{\"id\": \"pay_1\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+
+        transport = HttpTransports.create(HttpTransports.JDK, new HttpConfiguration(new Properties()), new HttpMetrics());
+        Assume.assumeTrue("the jdk transport needs Java 11 or later", "JdkHttpTransport".equals(transport.getClass().getSimpleName()));
+    }
+
+    @After
+    public void stop() throws IOException {
+        transport.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String getUri() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/v1/payments/";
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void gzippedBodyIsSentWithItsEncoding() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.COMPRESSION_REQUEST_ENABLED, "true");
+        properties.setProperty(HttpConfiguration.COMPRESSION_REQUEST_THRESHOLD, "0");
+        HttpCompression compression = new HttpCompression(new HttpConfiguration(properties), new HttpMetrics());
+        HttpPost post = new HttpPost(getUri());
+        post.setHeader("Authorization", "Basic Zm9v");
+        post.setEntity(compression.createEntity("{\"amount\":\"0.01\"}", false));
+
+        HttpResponse response = transport.execute(post);
+
+        Assert.assertEquals("{\"id\": \"pay_1\"}", EntityUtils.toString(response.getEntity()));
+        Headers headers = requestHeaders.get(2, TimeUnit.SECONDS);
+        Assert.assertEquals("gzip", headers.getFirst("Content-Encoding"));
+        Assert.assertEquals("application/json; charset=UTF-8", headers.getFirst("Content-Type"));
+        Assert.assertEquals("{\"amount\":\"0.01\"}",
+                new String(readAll(new GZIPInputStream(new ByteArrayInputStream(requestBody.get()))), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void pooledBodyIsSentInPlace() throws Exception {
+        List<String> bodies = new CopyOnWriteArrayList<>();
+        List<String> lengths = new CopyOnWriteArrayList<>();
+        server.createContext("/echo/", exchange -> {
+            lengths.add(exchange.getRequestHeaders().getFirst("Content-Length"));
+            bodies.add(new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        RequestBufferPool pool = new RequestBufferPool(new HttpConfiguration(new Properties()), new HttpMetrics());
+        String json = "{\"amount\":\"0.01\",\"name\":\"é\"}";
+        RequestBufferPool.Buffer buffer = pool.acquire();
+        buffer.getWriter().write(json);
+        HttpPost post = new HttpPost(getUri().replace("/v1/payments/", "/echo/"));
+        post.setEntity(new HttpCompression(new HttpConfiguration(new Properties()), new HttpMetrics(), pool).createEntity(buffer, false));
+
+        // the entity can be sent again, by a retry
+        transport.execute(post);
+        transport.execute(post);
+
+        Assert.assertEquals(Arrays.asList(json, json), bodies);
+        String length = String.valueOf(json.getBytes(StandardCharsets.UTF_8).length);
+        Assert.assertEquals(Arrays.asList(length, length), lengths);
+    }
+
+    @Test
+    public void cancelAbortsExchange() throws Exception {
+        // the partner sends its body slowly, until the client goes away
+        CountDownLatch streaming = new CountDownLatch(1);
+        CompletableFuture<Boolean> aborted = new CompletableFuture<>();
+        server.createContext("/slow/", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 500; i++) {
+                    out.write(new byte[1024]);
+                    out.flush();
+                    streaming.countDown();
+                    Thread.sleep(10);
+                }
+                aborted.complete(false);
+            } catch (IOException e) {
+                aborted.complete(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CompletableFuture<HttpResponse> response = transport.executeAsync(new HttpGet(getUri().replace("/v1/payments/", "/slow/")));
+        Assert.assertTrue(streaming.await(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        response.cancel(true);
+
+        // the partner sees the exchange end long before the whole body is sent
+        Assert.assertTrue(aborted.get(2, TimeUnit.SECONDS));
+        Assert.assertEquals(0, transport.getPoolStats().getLeased());
+    }
+
+    @Test
+    public void responseTooLargeIsDroppedWhileReceived() throws Exception {
+        // a chunked body, without a Content-Length to reject it at once
+        CompletableFuture<Boolean> aborted = new CompletableFuture<>();
+        server.createContext("/large/", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 500; i++) {
+                    out.write(new byte[1024]);
+                    out.flush();
+                    Thread.sleep(10);
+                }
+                aborted.complete(false);
+            } catch (IOException e) {
+                aborted.complete(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RESPONSE_MAX_BYTES, "4096");
+        HttpMetrics metrics = new HttpMetrics();
+        try (HttpTransport limited = HttpTransports.create(HttpTransports.JDK, new HttpConfiguration(properties), metrics)) {
+            try {
+                limited.execute(new HttpGet(getUri().replace("/v1/payments/", "/large/")));
+                Assert.fail("the response is larger than the limit");
+            } catch (ResponseTooLargeException e) {
+                Assert.assertEquals(1, metrics.getCount(HttpCompression.RESPONSE_TOO_LARGE_METRIC));
+            }
+            Assert.assertTrue(aborted.get(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void invalidContentTypeFailsAsyncCall() throws Exception {
+        server.createContext("/charset/", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=x-unknown");
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+
+        CompletableFuture<HttpResponse> response = transport.executeAsync(new HttpGet(getUri().replace("/v1/payments/", "/charset/")));
+
+        try {
+            response.get(2, TimeUnit.SECONDS);
+            Assert.fail("the charset of the response is not supported");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof UnsupportedCharsetException);
+        }
+        Assert.assertEquals(0, transport.getPoolStats().getLeased());
+    }
+
+    @Test
+    public void requestContentTypeIsKept() throws Exception {
+        HttpPost post = new HttpPost(getUri());
+        post.setHeader("Content-Type", "application/json");
+        post.setEntity(new HttpCompression(new HttpConfiguration(new Properties()), new HttpMetrics()).createEntity("{}", false));
+
+        transport.execute(post);
+
+        Headers headers = requestHeaders.get(2, TimeUnit.SECONDS);
+        Assert.assertEquals(1, headers.get("Content-Type").size());
+        Assert.assertEquals("application/json", headers.getFirst("Content-Type"));
+        Assert.assertNull(headers.getFirst("Content-Encoding"));
+    }
+}
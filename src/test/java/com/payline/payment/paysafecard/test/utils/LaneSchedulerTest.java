@@ -0,0 +1,136 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.ConcurrencyLimiter;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.Lane;
+import com.payline.payment.template.utils.LaneBusyException;
+import com.payline.payment.template.utils.LaneScheduler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class LaneSchedulerTest {
+    private HttpMetrics metrics = new HttpMetrics();
+
+    private LaneScheduler createScheduler(int capacity, Properties properties) {
+        return new LaneScheduler("test", capacity, new HttpConfiguration(properties), metrics);
+    }
+
+    private static Properties noReservation() {
+        Properties properties = new Properties();
+        for (Lane lane : Lane.values()) {
+            properties.setProperty(HttpConfiguration.LANES_RESERVED + "." + lane.getKey(), "0");
+        }
+        return properties;
+    }
+
+    private static void waitUntilQueued(LaneScheduler scheduler, Lane lane) throws InterruptedException {
+        while (scheduler.getWaiting(lane) == 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private CompletableFuture<Void> acquireInBackground(LaneScheduler scheduler, Lane lane) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                scheduler.acquire(lane, null);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    public void capacityFollowsConcurrencyLimit() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.LIMITER_INITIAL, "10");
+        HttpConfiguration configuration = new HttpConfiguration(properties);
+        LaneScheduler scheduler = new LaneScheduler("test", 100, new ConcurrencyLimiter("test", configuration, metrics), configuration, metrics);
+        Assert.assertEquals(10, scheduler.getCapacity());
+        Assert.assertEquals(3, scheduler.getReserved(Lane.PAYMENT));
+
+        // the refunds stop at the limit, the payments keep their reserved places
+        for (int i = 0; i < 5; i++) {
+            scheduler.tryAcquire(Lane.REFUND);
+        }
+        try {
+            scheduler.tryAcquire(Lane.REFUND);
+            Assert.fail("no place left for the refunds");
+        } catch (LaneBusyException e) {
+            // expected
+        }
+        scheduler.tryAcquire(Lane.PAYMENT);
+    }
+
+    @Test
+    public void reservedPlacesAreKept() throws IOException {
+        LaneScheduler scheduler = createScheduler(10, new Properties());
+        Assert.assertEquals(3, scheduler.getReserved(Lane.PAYMENT));
+        Assert.assertEquals(1, scheduler.getReserved(Lane.CHECK));
+
+        // the refunds take their place and all the shared ones
+        for (int i = 0; i < 5; i++) {
+            scheduler.tryAcquire(Lane.REFUND);
+        }
+        try {
+            scheduler.tryAcquire(Lane.REFUND);
+            Assert.fail("no place left for the refunds");
+        } catch (LaneBusyException e) {
+            Assert.assertEquals(1, metrics.getCount("http.lane.test.refund.rejected"));
+        }
+
+        // but the payments still have their reserved places
+        for (int i = 0; i < 3; i++) {
+            scheduler.tryAcquire(Lane.PAYMENT);
+        }
+        Assert.assertEquals(3, metrics.snapshot().get("http.lane.test.payment.inFlight"));
+        try {
+            scheduler.tryAcquire(Lane.PAYMENT);
+            Assert.fail("the shared places are taken");
+        } catch (LaneBusyException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void higherLaneIsServedFirst() throws Exception {
+        LaneScheduler scheduler = createScheduler(2, noReservation());
+        scheduler.tryAcquire(Lane.REFUND);
+        scheduler.tryAcquire(Lane.REFUND);
+
+        CompletableFuture<Void> check = acquireInBackground(scheduler, Lane.CHECK);
+        waitUntilQueued(scheduler, Lane.CHECK);
+        CompletableFuture<Void> payment = acquireInBackground(scheduler, Lane.PAYMENT);
+        waitUntilQueued(scheduler, Lane.PAYMENT);
+        Assert.assertEquals(1, metrics.snapshot().get("http.lane.test.check.queued"));
+
+        scheduler.release(Lane.REFUND);
+        payment.get(1, TimeUnit.SECONDS);
+        Assert.assertFalse(check.isDone());
+
+        scheduler.release(Lane.REFUND);
+        check.get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(1, metrics.getCount("http.lane.test.payment.waited"));
+        Assert.assertEquals(1, metrics.getCount("http.lane.test.check.waited"));
+    }
+
+    @Test
+    public void waitIsLimited() throws IOException {
+        Properties properties = noReservation();
+        properties.setProperty(HttpConfiguration.LANES_MAX_WAIT, "20");
+        LaneScheduler scheduler = createScheduler(1, properties);
+        scheduler.acquire(Lane.PAYMENT, null);
+        try {
+            scheduler.acquire(Lane.PAYMENT, null);
+            Assert.fail("the place is not released");
+        } catch (LaneBusyException e) {
+            Assert.assertEquals(0, scheduler.getWaiting(Lane.PAYMENT));
+            Assert.assertTrue(metrics.getCount("http.lane.test.payment.waitTime") >= 20);
+        }
+    }
+}
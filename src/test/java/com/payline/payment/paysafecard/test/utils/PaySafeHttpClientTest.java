@@ -1,8 +1,74 @@
 package com.payline.payment.template.test.utils;
 
+import com.payline.payment.template.bean.TemplateCaptureRequest;
+import com.payline.payment.template.bean.TemplatePaymentRequest;
+import com.payline.payment.template.bean.TemplatePaymentResponse;
+import com.payline.payment.template.utils.BulkheadFullException;
+import com.payline.payment.template.utils.CancellationToken;
+import com.payline.payment.template.utils.CircuitBreaker;
+import com.payline.payment.template.utils.CircuitOpenException;
+import com.payline.payment.template.utils.ConcurrencyLimitException;
+import com.payline.payment.template.utils.Deadline;
+import com.payline.payment.template.utils.DeadlineExceededException;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpLifecycle;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.HttpTransport;
+import com.payline.payment.template.utils.InvalidRequestException;
+import com.payline.payment.template.utils.PartnerUnavailableException;
+import com.payline.payment.template.utils.RateLimitedException;
+import com.payline.payment.template.utils.RequestBufferPool;
+import com.payline.payment.template.utils.ResponseTooLargeException;
+import com.payline.payment.template.utils.ShuttingDownException;
+import com.payline.payment.template.utils.TemplateCardConstants;
 import com.payline.payment.template.utils.TemplateHttpClient;
+import com.payline.pmapi.bean.common.Amount;
+import com.payline.pmapi.bean.common.Buyer;
+import com.payline.pmapi.bean.payment.ContractConfiguration;
+import com.payline.pmapi.bean.payment.ContractProperty;
+import com.payline.pmapi.bean.payment.Environment;
+import com.payline.pmapi.bean.refund.request.RefundRequest;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.math.BigInteger;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
 
 public class PaySafeHttpClientTest {
     private TemplateHttpClient client = new TemplateHttpClient();
@@ -20,4 +86,814 @@ public class PaySafeHttpClientTest {
         Assert.assertEquals("/foo/bar/", client.createPath( path1, path2));
         Assert.assertEquals("/", client.createPath());
     }
+
+    @Test
+    public void getPoolStats() {
+        Assert.assertEquals(0, client.getPoolStats().getLeased());
+        Assert.assertTrue(client.getPoolStats().getMax() > 0);
+        Assert.assertTrue(client.getPoolStats(true).getMax() > 0);
+        Assert.assertTrue(client.getPoolStats(false).getMax() > 0);
+    }
+
+    @Test
+    public void retrievePaymentData() throws IOException, URISyntaxException, InvalidRequestException {
+        TrackingInputStream content = new TrackingInputStream("{\"id\": \"pay_1\", \"status\": \"AUTHORIZED\"}");
+        TemplateHttpClient mockedClient = new TemplateHttpClient(createTransport(content));
+
+        TemplatePaymentResponse response = mockedClient.retrievePaymentData(createCaptureRequest(), true);
+
+        Assert.assertEquals("pay_1", response.getId());
+        Assert.assertEquals(TemplateCardConstants.STATUS_AUTHORIZED, response.getStatus());
+        Assert.assertTrue(content.closed);
+    }
+
+    @Test
+    public void retrievePaymentDataReadsAllFieldsByDefault() throws IOException, URISyntaxException, InvalidRequestException {
+        TrackingInputStream content = new TrackingInputStream("{\"object\": \"PAYMENT\", \"id\": \"pay_1\", \"updated\": 1521817281384,"
+                + " \"customer\": {\"id\": \"cus_1\"}}");
+        TemplateHttpClient mockedClient = new TemplateHttpClient(createTransport(content), new HttpConfiguration(new Properties()), new HttpMetrics());
+
+        TemplatePaymentResponse response = mockedClient.retrievePaymentData(createCaptureRequest(), true);
+
+        // skipping the unused fields is opt-in
+        Assert.assertEquals("PAYMENT", response.getObject());
+        Assert.assertEquals("1521817281384", response.getUpdated());
+        Assert.assertNotNull(response.getCustomer());
+    }
+
+    @Test
+    public void retrievePaymentDataTimeouts() throws IOException, URISyntaxException, InvalidRequestException {
+        HttpTransport transport = createTransport(new TrackingInputStream("{\"id\": \"pay_1\"}"));
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.TIMEOUT_SOCKET + ".retrieve", "1234");
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), new HttpMetrics());
+
+        mockedClient.retrievePaymentData(createCaptureRequest(), true);
+
+        ArgumentCaptor<HttpUriRequest> request = ArgumentCaptor.forClass(HttpUriRequest.class);
+        Mockito.verify(transport).execute(request.capture());
+        Assert.assertEquals(1234, ((HttpRequestBase) request.getValue()).getConfig().getSocketTimeout());
+    }
+
+    @Test
+    public void retrievePaymentDataWithinDeadline() throws IOException, URISyntaxException, InvalidRequestException {
+        HttpTransport transport = createTransport(new TrackingInputStream("{\"id\": \"pay_1\"}"));
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(new Properties()), new HttpMetrics());
+
+        try (Deadline deadline = Deadline.start(500)) {
+            mockedClient.retrievePaymentData(createCaptureRequest(), true);
+        }
+
+        ArgumentCaptor<HttpUriRequest> request = ArgumentCaptor.forClass(HttpUriRequest.class);
+        Mockito.verify(transport).execute(request.capture());
+        Assert.assertTrue(((HttpRequestBase) request.getValue()).getConfig().getSocketTimeout() <= 500);
+    }
+
+    @Test
+    public void captureAfterDeadline() throws IOException, URISyntaxException, InvalidRequestException {
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(new Properties()), metrics);
+
+        try (Deadline deadline = Deadline.start(0)) {
+            mockedClient.capture(createCaptureRequest(), true);
+            Assert.fail("the deadline is exceeded");
+        } catch (DeadlineExceededException e) {
+            Mockito.verify(transport, Mockito.never()).execute(any(HttpUriRequest.class));
+            Assert.assertEquals(1, metrics.getCount("http.deadline.exceeded"));
+        }
+    }
+
+    @Test
+    public void retrievePaymentDataReleasesBadResponse() throws IOException, URISyntaxException, InvalidRequestException {
+        TrackingInputStream content = new TrackingInputStream("<html>502 Bad Gateway</html>");
+        TemplateHttpClient mockedClient = new TemplateHttpClient(createTransport(content));
+
+        try {
+            mockedClient.retrievePaymentData(createCaptureRequest(), true);
+            Assert.fail("a non JSON body cannot be parsed");
+        } catch (RuntimeException e) {
+            // the entity must be released anyway
+            Assert.assertTrue(content.closed);
+        }
+    }
+
+    @Test
+    public void retrievePaymentDataRejectsResponseTooLarge() throws IOException, URISyntaxException, InvalidRequestException {
+        TrackingInputStream content = new TrackingInputStream("{\"id\": \"pay_1\", \"status\": \"AUTHORIZED\"}");
+        HttpTransport transport = createTransport(content);
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RETRY_BACKOFF_INITIAL, "1");
+        properties.setProperty(HttpConfiguration.RESPONSE_MAX_BYTES, "16");
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), new HttpMetrics());
+
+        try {
+            mockedClient.retrievePaymentData(createCaptureRequest(), true);
+            Assert.fail("the response is larger than the limit");
+        } catch (ResponseTooLargeException e) {
+            // the connection is closed rather than drained, and the same response is not asked again
+            ArgumentCaptor<HttpUriRequest> request = ArgumentCaptor.forClass(HttpUriRequest.class);
+            Mockito.verify(transport, Mockito.times(1)).execute(request.capture());
+            Assert.assertTrue(request.getValue().isAborted());
+            Assert.assertTrue(content.closed);
+        }
+    }
+
+    @Test
+    public void retrievePaymentDataRetriesWhenBodyIsCut() throws IOException, URISyntaxException, InvalidRequestException {
+        BasicHttpResponse cut = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        cut.setEntity(new InputStreamEntity(new SequenceInputStream(new ByteArrayInputStream("{\"id\": \"pa".getBytes(StandardCharsets.UTF_8)),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new SocketException("Connection reset");
+                    }
+                })));
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new InputStreamEntity(new TrackingInputStream("{\"id\": \"pay_1\", \"status\": \"AUTHORIZED\"}")));
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenReturn(cut).thenReturn(response);
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, createRetryConfiguration(), metrics);
+
+        // the failure of the stream read by the parser is a failure of the exchange, not an invalid body
+        Assert.assertEquals("pay_1", mockedClient.retrievePaymentData(createCaptureRequest(), true).getId());
+        Assert.assertEquals(1, metrics.getCount("http.retry.attempts.retrieve"));
+    }
+
+    @Test
+    public void initiateBodyBufferIsReused() throws IOException, URISyntaxException, InvalidRequestException {
+        List<String> bodies = new CopyOnWriteArrayList<>();
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) invocation.getArguments()[0]).getEntity();
+            bodies.add(EntityUtils.toString(entity, "UTF-8"));
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 201, "Created");
+            response.setEntity(new InputStreamEntity(new TrackingInputStream("{\"id\": \"pay_1\", \"status\": \"INITIATED\"}")));
+            return response;
+        });
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(new Properties()), metrics);
+
+        mockedClient.initiate(createCaptureRequest(), true);
+        mockedClient.initiate(createCaptureRequest(), true);
+
+        // the buffer of the first body is given back once the call is over, and encodes the second one
+        Assert.assertEquals(Arrays.asList("{\"paymentId\":\"pay_1\"}", "{\"paymentId\":\"pay_1\"}"), bodies);
+        Assert.assertEquals(1, metrics.getCount(RequestBufferPool.ALLOCATED_METRIC));
+        Assert.assertEquals(1, metrics.getCount(RequestBufferPool.REUSED_METRIC));
+    }
+
+    @Test
+    public void retrievePaymentDataRetriesOnTimeout() throws IOException, URISyntaxException, InvalidRequestException {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new InputStreamEntity(new TrackingInputStream("{\"id\": \"pay_1\", \"status\": \"AUTHORIZED\"}")));
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class)))
+                .thenThrow(new SocketTimeoutException())
+                .thenReturn(response);
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, createRetryConfiguration(), metrics);
+
+        Assert.assertEquals("pay_1", mockedClient.retrievePaymentData(createCaptureRequest(), true).getId());
+        Assert.assertEquals(1, metrics.getCount("http.retry.attempts.retrieve"));
+    }
+
+    @Test
+    public void adaptiveTimeoutGrowsWhenPartnerSlowsDown() throws IOException, URISyntaxException, InvalidRequestException {
+        AtomicBoolean slow = new AtomicBoolean();
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            if (slow.get()) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            response.setEntity(new InputStreamEntity(new TrackingInputStream("{}")));
+            return response;
+        });
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RETRY_ENABLED, "false");
+        properties.setProperty(HttpConfiguration.CIRCUIT_ENABLED, "false");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_ENABLED, "true");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_FLOOR, "100");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_MIN_SAMPLES, "100");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_WINDOW, "100");
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), metrics);
+
+        for (int i = 0; i < 101; i++) {
+            mockedClient.capture(createCaptureRequest(), false);
+        }
+        Assert.assertEquals(100, metrics.snapshot().get("http.timeout.capture.socket"));
+
+        // the partner is now slower than the learned timeout: the calls which time out raise it
+        slow.set(true);
+        for (int i = 0; i < 150; i++) {
+            try {
+                mockedClient.capture(createCaptureRequest(), false);
+                Assert.fail("the partner is too slow");
+            } catch (SocketTimeoutException e) {
+                // expected
+            }
+        }
+        Assert.assertTrue((Integer) metrics.snapshot().get("http.timeout.capture.socket") > 200);
+    }
+
+    @Test
+    public void captureIsNotRetriedOnTimeout() throws IOException, URISyntaxException, InvalidRequestException {
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenThrow(new SocketTimeoutException());
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, createRetryConfiguration(), metrics);
+
+        try {
+            mockedClient.capture(createCaptureRequest(), true);
+            Assert.fail("the partner may have captured the payment");
+        } catch (SocketTimeoutException e) {
+            Mockito.verify(transport, Mockito.times(1)).execute(any(HttpUriRequest.class));
+            Assert.assertEquals(0, metrics.getCount("http.retry.attempts"));
+        }
+    }
+
+    @Test
+    public void captureAsync() throws Exception {
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.executeAsync(any(HttpUriRequest.class))).thenReturn(CompletableFuture.completedFuture(createResponse("{\"id\": \"pay_1\", \"status\": \"SUCCESS\"}")));
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, createRetryConfiguration(), new HttpMetrics());
+
+        Assert.assertEquals("pay_1", mockedClient.captureAsync(createCaptureRequest(), true).get(2, TimeUnit.SECONDS).getId());
+        Mockito.verify(transport, Mockito.never()).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    public void initiateAsyncRetriesOnConnectFailure() throws Exception {
+        CompletableFuture<HttpResponse> refused = new CompletableFuture<>();
+        refused.completeExceptionally(new ConnectException("Connection refused"));
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.executeAsync(any(HttpUriRequest.class)))
+                .thenReturn(refused)
+                .thenReturn(CompletableFuture.completedFuture(createResponse("{\"id\": \"pay_1\", \"status\": \"INITIATED\"}")));
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, createRetryConfiguration(), metrics);
+
+        // the retry is scheduled, the caller never waits
+        Assert.assertEquals("pay_1", mockedClient.initiateAsync(createCaptureRequest(), true).get(2, TimeUnit.SECONDS).getId());
+        Mockito.verify(transport, Mockito.times(2)).executeAsync(any(HttpUriRequest.class));
+        Assert.assertEquals(1, metrics.getCount("http.retry.attempts.initiate"));
+    }
+
+    @Test
+    public void refundAsyncCancelAbortsExchange() throws Exception {
+        CompletableFuture<HttpResponse> exchange = new CompletableFuture<>();
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.executeAsync(any(HttpUriRequest.class))).thenReturn(exchange);
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, createRetryConfiguration(), metrics);
+
+        CompletableFuture<TemplatePaymentResponse> refund = mockedClient.refundAsync(createRefundRequest(), true);
+        Assert.assertFalse(refund.isDone());
+        refund.cancel(true);
+
+        Assert.assertTrue(exchange.isCancelled());
+        Assert.assertEquals(0, metrics.getCount("http.retry.attempts"));
+        Mockito.verify(transport, Mockito.times(1)).executeAsync(any(HttpUriRequest.class));
+    }
+
+    @Test
+    public void blockingCallWaitsForAsyncTransport() throws IOException, URISyntaxException, InvalidRequestException {
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.isAsyncMode()).thenReturn(true);
+        when(transport.executeAsync(any(HttpUriRequest.class))).thenReturn(CompletableFuture.completedFuture(createResponse("{\"id\": \"pay_1\", \"status\": \"SUCCESS\"}")));
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, createRetryConfiguration(), new HttpMetrics());
+
+        Assert.assertEquals("pay_1", mockedClient.capture(createCaptureRequest(), true).getId());
+        Mockito.verify(transport).executeAsync(any(HttpUriRequest.class));
+        Mockito.verify(transport, Mockito.never()).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    public void retrievePaymentDataIsHedged() throws IOException, URISyntaxException, InvalidRequestException {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new InputStreamEntity(new TrackingInputStream("{\"id\": \"pay_1\", \"status\": \"AUTHORIZED\"}")));
+        CompletableFuture<HttpResponse> slow = new CompletableFuture<>();
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.executeAsync(any(HttpUriRequest.class)))
+                .thenReturn(slow)
+                .thenReturn(CompletableFuture.completedFuture(response));
+
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.HEDGE_ENABLED, "true");
+        properties.setProperty(HttpConfiguration.HEDGE_MIN_SAMPLES, "0");
+        properties.setProperty(HttpConfiguration.HEDGE_MIN_DELAY, "10");
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), metrics);
+
+        Assert.assertEquals("pay_1", mockedClient.retrievePaymentData(createCaptureRequest(), true).getId());
+        Assert.assertTrue(slow.isCancelled());
+        Assert.assertEquals(1, metrics.getCount("http.hedge.sent"));
+        Assert.assertEquals(1, metrics.getCount("http.hedge.wins"));
+    }
+
+    @Test
+    public void openCircuitFailsFast() throws IOException, URISyntaxException, InvalidRequestException {
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenThrow(new ConnectException());
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RETRY_ENABLED, "false");
+        properties.setProperty(HttpConfiguration.CIRCUIT_MIN_CALLS, "2");
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), new HttpMetrics());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                mockedClient.capture(createCaptureRequest(), false);
+                Assert.fail("the partner cannot be reached");
+            } catch (ConnectException e) {
+                // expected
+            }
+        }
+        try {
+            mockedClient.capture(createCaptureRequest(), false);
+            Assert.fail("the circuit is open");
+        } catch (CircuitOpenException e) {
+            Mockito.verify(transport, Mockito.times(2)).execute(any(HttpUriRequest.class));
+        }
+        // the sandbox host has its own circuit
+        try {
+            mockedClient.capture(createCaptureRequest(), true);
+            Assert.fail("the partner cannot be reached");
+        } catch (ConnectException e) {
+            Mockito.verify(transport, Mockito.times(3)).execute(any(HttpUriRequest.class));
+        }
+    }
+
+    @Test
+    public void excessCallsAreShed() throws Exception {
+        CountDownLatch sent = new CountDownLatch(1);
+        CountDownLatch answer = new CountDownLatch(1);
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            sent.countDown();
+            answer.await();
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            response.setEntity(new InputStreamEntity(new TrackingInputStream("{}")));
+            return response;
+        });
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.LIMITER_MIN, "1");
+        properties.setProperty(HttpConfiguration.LIMITER_MAX, "1");
+        // without the lanes, the limiter sheds the calls itself
+        properties.setProperty(HttpConfiguration.LANES_ENABLED, "false");
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), metrics);
+
+        CompletableFuture<TemplatePaymentResponse> first = captureInBackground(mockedClient, "mid_1");
+        sent.await();
+        try {
+            mockedClient.capture(createCaptureRequest(), false);
+            Assert.fail("the only call allowed is in flight");
+        } catch (ConcurrencyLimitException e) {
+            Assert.assertEquals(1, metrics.getCount("http.limiter.production.shed"));
+        }
+        // the sandbox host has its own limit
+        Assert.assertEquals(1, mockedClient.getConcurrencyLimit(true));
+
+        answer.countDown();
+        Assert.assertNotNull(first.get());
+        Mockito.verify(transport, Mockito.times(1)).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    public void merchantBurstIsIsolated() throws Exception {
+        CountDownLatch sent = new CountDownLatch(1);
+        CountDownLatch answer = new CountDownLatch(1);
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            sent.countDown();
+            answer.await();
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            response.setEntity(new InputStreamEntity(new TrackingInputStream("{}")));
+            return response;
+        });
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.BULKHEAD_MAX_CONCURRENT + ".mid_1", "1");
+        properties.setProperty(HttpConfiguration.BULKHEAD_MAX_QUEUE, "0");
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), metrics);
+
+        CompletableFuture<TemplatePaymentResponse> first = captureInBackground(mockedClient, "mid_1");
+        sent.await();
+        try {
+            mockedClient.capture(createCaptureRequest("mid_1"), false);
+            Assert.fail("the only call allowed for the merchant is in progress");
+        } catch (BulkheadFullException e) {
+            Assert.assertEquals(1, metrics.getCount("http.bulkhead.mid_1.rejected"));
+        }
+        // the other merchants are not affected
+        CompletableFuture<TemplatePaymentResponse> other = captureInBackground(mockedClient, "mid_2");
+
+        answer.countDown();
+        Assert.assertNotNull(first.get());
+        Assert.assertNotNull(other.get());
+        Assert.assertEquals(0, metrics.getCount("http.bulkhead.mid_2.rejected"));
+    }
+
+    private static CompletableFuture<TemplatePaymentResponse> captureInBackground(TemplateHttpClient client, String merchantId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.capture(createCaptureRequest(merchantId), false);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    public void saturatedRefundLaneLeavesPaymentsThrough() throws Exception {
+        CountDownLatch partnerBlocked = new CountDownLatch(1);
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            HttpUriRequest request = (HttpUriRequest) invocation.getArguments()[0];
+            if (request.getURI().getPath().contains("refunds")) {
+                partnerBlocked.await(5, TimeUnit.SECONDS);
+            }
+            return createResponse("{\"id\": \"pay_1\", \"status\": \"SUCCESS\"}");
+        });
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.BULKHEAD_ENABLED, "false");
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), metrics);
+
+        // a batch of refunds, more than the concurrency limit
+        int refunds = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(refunds);
+        List<CompletableFuture<TemplatePaymentResponse>> results = new CopyOnWriteArrayList<>();
+        try {
+            for (int i = 0; i < refunds; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return mockedClient.refund(createRefundRequest(), false);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, executor));
+            }
+            while (metrics.snapshot().get("http.lane.production.refund.inFlight").longValue()
+                    + metrics.snapshot().get("http.lane.production.refund.queued").longValue()
+                    + results.stream().filter(CompletableFuture::isDone).count() < refunds) {
+                Thread.sleep(1);
+            }
+
+            // the refunds queue in their lane, the payments keep their places
+            Assert.assertEquals("pay_1", mockedClient.retrievePaymentData(createCaptureRequest(), false).getId());
+            Assert.assertEquals(0, metrics.getCount("http.limiter.production.shed"));
+
+            partnerBlocked.countDown();
+            for (CompletableFuture<TemplatePaymentResponse> result : results) {
+                Assert.assertEquals("pay_1", result.get(5, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            partnerBlocked.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void partnerRateLimitIsHonored() throws IOException, URISyntaxException, InvalidRequestException {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, "Too Many Requests");
+        response.addHeader("Retry-After", "30");
+        response.setEntity(new InputStreamEntity(new TrackingInputStream("{}")));
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenReturn(response);
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, createRetryConfiguration(), metrics);
+
+        try {
+            mockedClient.retrievePaymentData(createCaptureRequest(), false);
+            Assert.fail("the partner refused the call");
+        } catch (RateLimitedException e) {
+            Assert.assertEquals(30000, e.getRetryAfter());
+        }
+        // the next call is rejected without reaching the partner
+        try {
+            mockedClient.retrievePaymentData(createCaptureRequest(), false);
+            Assert.fail("the partner window is not reset");
+        } catch (RateLimitedException e) {
+            Mockito.verify(transport, Mockito.times(1)).execute(any(HttpUriRequest.class));
+            Assert.assertEquals(1, metrics.getCount("http.rateLimit.rejected"));
+        }
+    }
+
+    @Test
+    public void partnerRateLimitKeepsCircuitClosed() throws IOException, URISyntaxException, InvalidRequestException {
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, "Too Many Requests");
+            response.setEntity(new InputStreamEntity(new TrackingInputStream("{}")));
+            return response;
+        });
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.CIRCUIT_MIN_CALLS, "2");
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), metrics);
+
+        // one merchant exhausts the quota of each of its credentials
+        for (int i = 0; i < 20; i++) {
+            ContractConfiguration configuration = createContractConfiguration("mid_1");
+            configuration.getContractProperties().put(TemplateCardConstants.AUTHORISATIONKEY_KEY, new ContractProperty("key_" + i));
+            try {
+                mockedClient.capture(new TemplateCaptureRequest("pay_1", configuration), false);
+                Assert.fail("the partner refused the call");
+            } catch (RateLimitedException e) {
+                // expected
+            }
+        }
+
+        Mockito.verify(transport, Mockito.times(20)).execute(any(HttpUriRequest.class));
+        Assert.assertEquals(CircuitBreaker.State.CLOSED.ordinal(), metrics.snapshot().get("http.circuit.production.state"));
+        Assert.assertEquals(20, metrics.snapshot().get("http.limiter.production.limit"));
+    }
+
+    @Test
+    public void failingEndpointIsAvoided() throws IOException, URISyntaxException, InvalidRequestException {
+        // the hosts are recorded when sent, the request being rewritten by each attempt
+        List<String> hosts = new CopyOnWriteArrayList<>();
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            HttpUriRequest request = (HttpUriRequest) invocation.getArguments()[0];
+            hosts.add(request.getURI().getHost());
+            if ("eu.template.com".equals(request.getURI().getHost())) {
+                throw new ConnectException("region down");
+            }
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            response.setEntity(new InputStreamEntity(new TrackingInputStream("{}")));
+            return response;
+        });
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RETRY_BACKOFF_INITIAL, "1");
+        properties.setProperty(HttpConfiguration.ENDPOINTS_PRODUCTION, "eu.template.com,us.template.com");
+        properties.setProperty(HttpConfiguration.ROUTING_EJECTION_CONSECUTIVE_FAILURES, "2");
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), metrics);
+
+        // each failed attempt is retried on the other host, until the failing one is ejected
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNotNull(mockedClient.retrievePaymentData(createCaptureRequest(), false));
+        }
+        long failed = hosts.stream().filter("eu.template.com"::equals).count();
+        Assert.assertEquals(10 + failed, hosts.size());
+        Assert.assertTrue(failed <= 2);
+        Assert.assertEquals(failed == 2 ? 1 : 0, metrics.getCount("http.endpoint.eu.template.com.ejections"));
+    }
+
+    @Test
+    public void unavailableEndpointIsEjectedAndOpensCircuit() throws IOException, URISyntaxException, InvalidRequestException {
+        List<String> hosts = new CopyOnWriteArrayList<>();
+        AtomicBoolean down = new AtomicBoolean();
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            HttpUriRequest request = (HttpUriRequest) invocation.getArguments()[0];
+            hosts.add(request.getURI().getHost());
+            boolean unavailable = down.get() || "eu.template.com".equals(request.getURI().getHost());
+            BasicHttpResponse response = unavailable
+                    ? new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Service Unavailable")
+                    : new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            response.setEntity(new InputStreamEntity(new TrackingInputStream("{}")));
+            return response;
+        });
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RETRY_BACKOFF_INITIAL, "1");
+        properties.setProperty(HttpConfiguration.ENDPOINTS_PRODUCTION, "eu.template.com,us.template.com");
+        properties.setProperty(HttpConfiguration.ROUTING_EJECTION_CONSECUTIVE_FAILURES, "2");
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, new HttpConfiguration(properties), metrics);
+
+        // the captures refused by the unavailable region are sent again to the other one, until it is ejected
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNotNull(mockedClient.capture(createCaptureRequest(), false));
+        }
+        long failed = hosts.stream().filter("eu.template.com"::equals).count();
+        Assert.assertEquals(10 + failed, hosts.size());
+        Assert.assertTrue(failed <= 2);
+        Assert.assertEquals(failed == 2 ? 1 : 0, metrics.getCount("http.endpoint.eu.template.com.ejections"));
+        Assert.assertEquals(0, metrics.getCount("http.rateLimit.throttled"));
+
+        // all the regions are unavailable: the circuit opens
+        down.set(true);
+        for (int i = 0; i < 20; i++) {
+            try {
+                mockedClient.capture(createCaptureRequest(), false);
+                Assert.fail("the partner is unavailable");
+            } catch (PartnerUnavailableException e) {
+                // expected
+            } catch (CircuitOpenException e) {
+                break;
+            }
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN.ordinal(), metrics.snapshot().get("http.circuit.production.state"));
+    }
+
+    @Test
+    public void cancelledTokenAbortsCall() throws Exception {
+        CountDownLatch sent = new CountDownLatch(1);
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(createAbortableTransport(sent), createRetryConfiguration(), metrics);
+
+        CompletableFuture<CancellationToken> token = new CompletableFuture<>();
+        CompletableFuture<TemplatePaymentResponse> call = CompletableFuture.supplyAsync(() -> {
+            try (CancellationToken callToken = CancellationToken.start()) {
+                token.complete(callToken);
+                return mockedClient.retrievePaymentData(createCaptureRequest(), false);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        sent.await();
+        token.get().cancel();
+
+        try {
+            call.get(2, TimeUnit.SECONDS);
+            Assert.fail("the call is cancelled");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof InterruptedIOException);
+            Assert.assertEquals(1, metrics.getCount("http.cancel.aborted"));
+            // an aborted call is not retried
+            Assert.assertEquals(0, metrics.getCount("http.retry.attempts"));
+        }
+    }
+
+    @Test
+    public void abortedCallKeepsBodyBuffer() throws Exception {
+        CountDownLatch sent = new CountDownLatch(1);
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(createAbortableTransport(sent), createRetryConfiguration(), metrics);
+
+        CompletableFuture<CancellationToken> token = new CompletableFuture<>();
+        CompletableFuture<TemplatePaymentResponse> call = CompletableFuture.supplyAsync(() -> {
+            try (CancellationToken callToken = CancellationToken.start()) {
+                token.complete(callToken);
+                return mockedClient.initiate(createCaptureRequest(), false);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        sent.await();
+        token.get().cancel();
+        try {
+            call.get(2, TimeUnit.SECONDS);
+            Assert.fail("the call is cancelled");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof InterruptedIOException);
+        }
+
+        // the aborted exchange may still be sending the body: its buffer is not given to the next call
+        try (CancellationToken callToken = CancellationToken.start()) {
+            callToken.cancel();
+            mockedClient.initiate(createCaptureRequest(), false);
+            Assert.fail("the call is cancelled");
+        } catch (InterruptedIOException e) {
+            Assert.assertEquals(2, metrics.getCount(RequestBufferPool.ALLOCATED_METRIC));
+            Assert.assertEquals(0, metrics.getCount(RequestBufferPool.REUSED_METRIC));
+        }
+    }
+
+    @Test
+    public void interruptedThreadAbortsCall() throws Exception {
+        CountDownLatch sent = new CountDownLatch(1);
+        HttpMetrics metrics = new HttpMetrics();
+        TemplateHttpClient mockedClient = new TemplateHttpClient(createAbortableTransport(sent), createRetryConfiguration(), metrics);
+
+        CompletableFuture<Exception> failure = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                mockedClient.retrievePaymentData(createCaptureRequest(), false);
+                failure.complete(null);
+            } catch (Exception e) {
+                failure.complete(e);
+            }
+        });
+        thread.start();
+        sent.await();
+        thread.interrupt();
+
+        Assert.assertTrue(failure.get(2, TimeUnit.SECONDS) instanceof InterruptedIOException);
+        Assert.assertEquals(1, metrics.getCount("http.cancel.aborted"));
+    }
+
+    @Test
+    public void shutdownDrainsCalls() throws Exception {
+        CountDownLatch sent = new CountDownLatch(1);
+        CountDownLatch answer = new CountDownLatch(1);
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            sent.countDown();
+            answer.await();
+            BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            response.setEntity(new InputStreamEntity(new TrackingInputStream("{}")));
+            return response;
+        });
+        TemplateHttpClient mockedClient = new TemplateHttpClient(transport, createRetryConfiguration(), new HttpMetrics());
+
+        CompletableFuture<TemplatePaymentResponse> capture = captureInBackground(mockedClient, "mid_1");
+        sent.await();
+        CompletableFuture<Boolean> shutdown = CompletableFuture.supplyAsync(() -> mockedClient.getLifecycle().shutdown(5000));
+        while (mockedClient.getLifecycle().getState() == HttpLifecycle.State.STARTED) {
+            Thread.sleep(1);
+        }
+        try {
+            mockedClient.capture(createCaptureRequest(), false);
+            Assert.fail("the client is shutting down");
+        } catch (ShuttingDownException e) {
+            Mockito.verify(transport, Mockito.never()).close();
+        }
+
+        // the capture in progress ends before the transport is closed
+        answer.countDown();
+        Assert.assertNotNull(capture.get());
+        Assert.assertTrue(shutdown.get(1, TimeUnit.SECONDS));
+        Mockito.verify(transport).close();
+    }
+
+    /**
+     * A transport blocked like on a socket read, which ignores the interruptions and only ends when the request is aborted
+     */
+    private static HttpTransport createAbortableTransport(CountDownLatch sent) throws IOException {
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+            HttpRequestBase request = (HttpRequestBase) invocation.getArguments()[0];
+            CountDownLatch aborted = new CountDownLatch(1);
+            request.setCancellable(() -> {
+                aborted.countDown();
+                return true;
+            });
+            sent.countDown();
+            while (aborted.getCount() > 0) {
+                Thread.yield();
+            }
+            throw new InterruptedIOException("request aborted");
+        });
+        return transport;
+    }
+
+    private static HttpConfiguration createRetryConfiguration() {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RETRY_BACKOFF_INITIAL, "1");
+        return new HttpConfiguration(properties);
+    }
+
+    private static TemplateCaptureRequest createCaptureRequest() throws InvalidRequestException {
+        return createCaptureRequest("mid_1");
+    }
+
+    private static TemplateCaptureRequest createCaptureRequest(String merchantId) throws InvalidRequestException {
+        return new TemplateCaptureRequest("pay_1", createContractConfiguration(merchantId));
+    }
+
+    private static ContractConfiguration createContractConfiguration(String merchantId) {
+        ContractConfiguration configuration = new ContractConfiguration("", new HashMap<>());
+        configuration.getContractProperties().put(TemplateCardConstants.AUTHORISATIONKEY_KEY, new ContractProperty("foo"));
+        configuration.getContractProperties().put(TemplateCardConstants.MERCHANT_ID_KEY, new ContractProperty(merchantId));
+        return configuration;
+    }
+
+    private static TemplatePaymentRequest createRefundRequest() throws InvalidRequestException {
+        Buyer buyer = Mockito.mock(Buyer.class);
+        when(buyer.getCustomerIdentifier()).thenReturn("cus_1");
+        when(buyer.getEmail()).thenReturn("cus_1@template.com");
+        RefundRequest request = Mockito.mock(RefundRequest.class);
+        when(request.getContractConfiguration()).thenReturn(createContractConfiguration("mid_1"));
+        when(request.getPartnerTransactionId()).thenReturn("pay_1");
+        when(request.getAmount()).thenReturn(new Amount(BigInteger.ONE, Currency.getInstance("EUR")));
+        when(request.getEnvironment()).thenReturn(new Environment("https://notification", "https://redirection", "https://cancel", true));
+        when(request.getBuyer()).thenReturn(buyer);
+        return new TemplatePaymentRequest(request);
+    }
+
+    private static BasicHttpResponse createResponse(String content) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new InputStreamEntity(new TrackingInputStream(content)));
+        return response;
+    }
+
+    private static HttpTransport createTransport(TrackingInputStream content) throws IOException {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new InputStreamEntity(content));
+
+        HttpTransport transport = Mockito.mock(HttpTransport.class);
+        when(transport.execute(any(HttpUriRequest.class))).thenReturn(response);
+        return transport;
+    }
+
+    private static class TrackingInputStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        TrackingInputStream(String content) {
+            super(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
 }
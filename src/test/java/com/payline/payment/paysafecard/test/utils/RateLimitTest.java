@@ -0,0 +1,123 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.Deadline;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.RateLimit;
+import com.payline.payment.template.utils.RateLimitedException;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Properties;
+
+public class RateLimitTest {
+    private HttpMetrics metrics = new HttpMetrics();
+
+    private RateLimit createRateLimit(String rate, String maxWait) {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RATE_LIMIT_RATE, rate);
+        properties.setProperty(HttpConfiguration.RATE_LIMIT_BURST, "1");
+        properties.setProperty(HttpConfiguration.RATE_LIMIT_MAX_WAIT, maxWait);
+        return new RateLimit(new HttpConfiguration(properties), metrics);
+    }
+
+    private static BasicHttpResponse createResponse(int status, String... headers) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+
+    @Test
+    public void pacesCalls() throws RateLimitedException {
+        RateLimit rateLimit = createRateLimit("10", "1000");
+        Assert.assertEquals(0, rateLimit.reserve(null));
+        long wait = rateLimit.reserve(null);
+        Assert.assertTrue(wait > 50 && wait <= 100);
+        Assert.assertTrue(rateLimit.reserve(null) > 150);
+        Assert.assertEquals(2, metrics.getCount("http.rateLimit.paced"));
+    }
+
+    @Test
+    public void rejectsLongWait() throws RateLimitedException {
+        RateLimit rateLimit = createRateLimit("1", "100");
+        rateLimit.reserve(null);
+        try {
+            rateLimit.reserve(null);
+            Assert.fail("the next token comes in one second");
+        } catch (RateLimitedException e) {
+            Assert.assertTrue(e.getRetryAfter() > 100);
+            Assert.assertEquals(1, metrics.getCount("http.rateLimit.rejected"));
+        }
+    }
+
+    @Test
+    public void waitIsLimitedByDeadline() throws RateLimitedException {
+        RateLimit rateLimit = createRateLimit("1", "5000");
+        rateLimit.reserve(null);
+        try (Deadline deadline = Deadline.start(200)) {
+            rateLimit.reserve(deadline);
+            Assert.fail("the next token comes after the deadline");
+        } catch (RateLimitedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void honorsRetryAfter() throws RateLimitedException {
+        RateLimit rateLimit = createRateLimit("0", "1000");
+        try {
+            rateLimit.update(createResponse(429, "Retry-After", "2"));
+            Assert.fail("the partner refused the call");
+        } catch (RateLimitedException e) {
+            Assert.assertEquals(2000, e.getRetryAfter());
+            Assert.assertEquals(1, metrics.getCount("http.rateLimit.throttled"));
+        }
+        try {
+            rateLimit.reserve(null);
+            Assert.fail("no call before Retry-After");
+        } catch (RateLimitedException e) {
+            Assert.assertTrue(e.getRetryAfter() > 1000);
+        }
+    }
+
+    @Test
+    public void honorsRetryAfterDate() throws RateLimitedException {
+        RateLimit rateLimit = createRateLimit("0", "5000");
+        String date = DateUtils.formatDate(new Date(System.currentTimeMillis() + 3000));
+        try {
+            rateLimit.update(createResponse(503, "Retry-After", date));
+            Assert.fail("the partner refused the call");
+        } catch (RateLimitedException e) {
+            Assert.assertTrue(e.getRetryAfter() > 1000 && e.getRetryAfter() <= 3000);
+        }
+        Assert.assertTrue(rateLimit.reserve(null) > 1000);
+    }
+
+    @Test
+    public void plainServiceUnavailableIsNotThrottled() throws RateLimitedException {
+        RateLimit rateLimit = createRateLimit("0", "1000");
+        rateLimit.update(createResponse(503));
+        Assert.assertEquals(0, rateLimit.reserve(null));
+        Assert.assertEquals(0, metrics.getCount("http.rateLimit.throttled"));
+    }
+
+    @Test
+    public void followsPartnerWindow() throws RateLimitedException {
+        RateLimit rateLimit = createRateLimit("0", "5000");
+        rateLimit.update(createResponse(200, "RateLimit-Remaining", "0", "RateLimit-Reset", "1"));
+        long wait = rateLimit.reserve(null);
+        Assert.assertTrue(wait > 500 && wait <= 1000);
+
+        rateLimit = createRateLimit("0", "5000");
+        rateLimit.update(createResponse(200, "X-RateLimit-Remaining", "10", "X-RateLimit-Reset", "1"));
+        Assert.assertEquals(0, rateLimit.reserve(null));
+        wait = rateLimit.reserve(null);
+        Assert.assertTrue(wait > 50 && wait <= 100);
+    }
+}
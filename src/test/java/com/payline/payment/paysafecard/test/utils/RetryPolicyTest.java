@@ -0,0 +1,94 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.PartnerOperation;
+import com.payline.payment.template.utils.RetryBudget;
+import com.payline.payment.template.utils.RetryPolicy;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.HttpHostConnectException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Properties;
+
+public class RetryPolicyTest {
+    private HttpMetrics metrics = new HttpMetrics();
+
+    private RetryPolicy createPolicy(String ratio, String reserve) {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.RETRY_MAX_ATTEMPTS, "3");
+        properties.setProperty(HttpConfiguration.RETRY_MAX_ATTEMPTS + ".refund", "1");
+        properties.setProperty(HttpConfiguration.RETRY_BACKOFF_INITIAL, "100");
+        properties.setProperty(HttpConfiguration.RETRY_BACKOFF_MAX, "250");
+        properties.setProperty(HttpConfiguration.RETRY_BUDGET_RATIO, ratio);
+        properties.setProperty(HttpConfiguration.RETRY_BUDGET_RESERVE, reserve);
+        return new RetryPolicy(new HttpConfiguration(properties), metrics);
+    }
+
+    @Test
+    public void isRetryable() {
+        RetryPolicy policy = createPolicy("0.1", "10");
+
+        Assert.assertTrue(policy.isRetryable(PartnerOperation.RETRIEVE, new SocketTimeoutException()));
+        Assert.assertTrue(policy.isRetryable(PartnerOperation.RETRIEVE, new IOException("connection reset")));
+        Assert.assertFalse(policy.isRetryable(PartnerOperation.RETRIEVE, new InterruptedIOException()));
+        Assert.assertFalse(policy.isRetryable(PartnerOperation.RETRIEVE, new SSLHandshakeException("bad certificate")));
+
+        Assert.assertTrue(policy.isRetryable(PartnerOperation.CAPTURE, new ConnectTimeoutException()));
+        Assert.assertTrue(policy.isRetryable(PartnerOperation.INITIATE, new HttpHostConnectException(new ConnectException(), null)));
+        Assert.assertFalse(policy.isRetryable(PartnerOperation.CAPTURE, new SocketTimeoutException()));
+        Assert.assertFalse(policy.isRetryable(PartnerOperation.INITIATE, new IOException("connection reset")));
+    }
+
+    @Test
+    public void nextDelay() {
+        RetryPolicy policy = createPolicy("0.1", "10");
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(policy.backoff(1) <= 100);
+            Assert.assertTrue(policy.backoff(2) <= 200);
+            Assert.assertTrue(policy.backoff(10) <= 250);
+        }
+
+        Assert.assertTrue(policy.nextDelay(PartnerOperation.RETRIEVE, new SocketTimeoutException(), 1) >= 0);
+        Assert.assertTrue(policy.nextDelay(PartnerOperation.RETRIEVE, new SocketTimeoutException(), 2) >= 0);
+        Assert.assertEquals(-1, policy.nextDelay(PartnerOperation.RETRIEVE, new SocketTimeoutException(), 3));
+        Assert.assertEquals(-1, policy.nextDelay(PartnerOperation.REFUND, new ConnectException(), 1));
+        Assert.assertEquals(2, metrics.getCount("http.retry.attempts"));
+        Assert.assertEquals(2, metrics.getCount("http.retry.attempts.retrieve"));
+        Assert.assertEquals(2, metrics.getCount("http.retry.maxAttemptsReached"));
+    }
+
+    @Test
+    public void budget() {
+        RetryPolicy policy = createPolicy("0.5", "1");
+
+        Assert.assertTrue(policy.nextDelay(PartnerOperation.RETRIEVE, new SocketTimeoutException(), 1) >= 0);
+        Assert.assertEquals(-1, policy.nextDelay(PartnerOperation.RETRIEVE, new SocketTimeoutException(), 1));
+        Assert.assertEquals(1, metrics.getCount("http.retry.budgetExhausted"));
+
+        // two calls give one retry
+        policy.onCall();
+        policy.onCall();
+        Assert.assertTrue(policy.nextDelay(PartnerOperation.RETRIEVE, new SocketTimeoutException(), 1) >= 0);
+        Assert.assertEquals(0.0, metrics.snapshot().get("http.retry.budget.balance").doubleValue(), 0.001);
+    }
+
+    @Test
+    public void budgetIsCapped() {
+        RetryBudget budget = new RetryBudget(0.1, 2);
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+        Assert.assertEquals(2.0, budget.getBalance(), 0.001);
+        Assert.assertTrue(budget.tryWithdraw());
+        Assert.assertTrue(budget.tryWithdraw());
+        Assert.assertFalse(budget.tryWithdraw());
+    }
+}
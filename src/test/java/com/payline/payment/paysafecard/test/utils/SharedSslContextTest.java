@@ -0,0 +1,71 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.SharedSslContext;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import java.security.GeneralSecurityException;
+import java.util.Properties;
+
+import static org.mockito.Mockito.when;
+
+public class SharedSslContextTest {
+
+    private static SharedSslContext createContext(String protocols) {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.TLS_SESSION_CACHE_SIZE, "42");
+        properties.setProperty(HttpConfiguration.TLS_SESSION_TIMEOUT, "600");
+        if (protocols != null) {
+            properties.setProperty(HttpConfiguration.TLS_PROTOCOLS, protocols);
+        }
+        return new SharedSslContext(new HttpConfiguration(properties));
+    }
+
+    @Test
+    public void sessionCache() {
+        SharedSslContext context = createContext(null);
+        Assert.assertEquals(42, context.getContext().getClientSessionContext().getSessionCacheSize());
+        Assert.assertEquals(600, context.getContext().getClientSessionContext().getSessionTimeout());
+    }
+
+    @Test
+    public void defaultContextIsUsed() throws GeneralSecurityException {
+        // the client certificates of javax.net.ssl.keyStore are only known by the default context
+        Assert.assertSame(SSLContext.getDefault(), createContext(null).getContext());
+    }
+
+    @Test
+    public void protocols() {
+        Assert.assertNull(createContext(null).getProtocols());
+        Assert.assertArrayEquals(new String[]{"TLSv1.2"}, createContext("TLSv1.2, FOO").getProtocols());
+        Assert.assertNull(createContext("FOO").getProtocols());
+        Assert.assertArrayEquals(new String[]{"TLSv1.2"}, createContext("TLSv1.2").getSslParameters().getProtocols());
+    }
+
+    @Test
+    public void jvmDefaultsAreKeptByDefault() {
+        // the restriction is opt-in, a partner endpoint may not support it
+        SharedSslContext context = new SharedSslContext(HttpConfiguration.getInstance());
+        Assert.assertNull(context.getProtocols());
+        Assert.assertNull(context.getCipherSuites());
+    }
+
+    @Test
+    public void recordHandshake() {
+        HttpMetrics metrics = new HttpMetrics();
+        SSLSession session = Mockito.mock(SSLSession.class);
+        when(session.getCreationTime()).thenReturn(1000L);
+
+        SharedSslContext.recordHandshake(session, 1000L, 5000000L, metrics);
+        SharedSslContext.recordHandshake(session, 2000L, 1000000L, metrics);
+
+        Assert.assertEquals(1, metrics.getCount(SharedSslContext.FULL_HANDSHAKES_METRIC));
+        Assert.assertEquals(1, metrics.getCount(SharedSslContext.RESUMED_HANDSHAKES_METRIC));
+        Assert.assertEquals(6, metrics.getCount(SharedSslContext.HANDSHAKE_TIME_METRIC));
+    }
+}
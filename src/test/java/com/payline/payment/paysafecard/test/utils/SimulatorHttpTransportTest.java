@@ -0,0 +1,202 @@
+package com.payline.payment.template.test.utils;
+
+import com.google.gson.Gson;
+import com.payline.payment.template.bean.TemplateCaptureRequest;
+import com.payline.payment.template.bean.TemplatePaymentResponse;
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.HttpTransport;
+import com.payline.payment.template.utils.HttpTransports;
+import com.payline.payment.template.utils.InvalidRequestException;
+import com.payline.payment.template.utils.PartnerSimulator;
+import com.payline.payment.template.utils.SimulatedProductionException;
+import com.payline.payment.template.utils.SimulatorHttpTransport;
+import com.payline.payment.template.utils.TemplateCardConstants;
+import com.payline.payment.template.utils.TemplateHttpClient;
+import com.payline.pmapi.bean.payment.ContractConfiguration;
+import com.payline.pmapi.bean.payment.ContractProperty;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class SimulatorHttpTransportTest {
+    private static final String PAYMENTS = "https://apitest.template.com/v1/payments/";
+
+    private static Properties createProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.TRANSPORT, HttpTransports.SIMULATOR);
+        properties.setProperty(HttpConfiguration.SIMULATOR_LATENCY_MEDIAN, "0");
+        properties.setProperty(HttpConfiguration.SIMULATOR_OUTCOME_AUTHORIZED, "1");
+        properties.setProperty(HttpConfiguration.SIMULATOR_OUTCOME_CANCELED_CUSTOMER, "0");
+        properties.setProperty(HttpConfiguration.SIMULATOR_OUTCOME_EXPIRED, "0");
+        return properties;
+    }
+
+    private static HttpPost createPost(String uri, String body) {
+        HttpPost post = new HttpPost(uri);
+        post.setHeader("Authorization", "Basic Zm9v");
+        post.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        return post;
+    }
+
+    private static String send(HttpTransport transport, HttpPost post) throws IOException {
+        return EntityUtils.toString(transport.execute(post).getEntity());
+    }
+
+    private static TemplatePaymentResponse parse(String json) {
+        return new Gson().fromJson(json, TemplatePaymentResponse.class);
+    }
+
+    private static TemplateCaptureRequest createCaptureRequest(String paymentId) throws InvalidRequestException {
+        ContractConfiguration configuration = new ContractConfiguration("", new HashMap<>());
+        configuration.getContractProperties().put(TemplateCardConstants.AUTHORISATIONKEY_KEY, new ContractProperty("foo"));
+        return new TemplateCaptureRequest(paymentId, configuration);
+    }
+
+    private static String initiate(HttpTransport transport) throws IOException {
+        HttpResponse response = transport.execute(createPost(PAYMENTS, "{\"amount\":\"10.00\",\"currency\":\"EUR\","
+                + "\"redirect\":{\"success_url\":\"https://success\",\"failure_url\":\"https://failure\"}}"));
+        Assert.assertEquals(201, response.getStatusLine().getStatusCode());
+        TemplatePaymentResponse payment = parse(EntityUtils.toString(response.getEntity()));
+        Assert.assertEquals(PartnerSimulator.STATUS_INITIATED, payment.getStatus());
+        Assert.assertTrue(payment.getRedirectURL().contains(payment.getId()));
+        return payment.getId();
+    }
+
+    @Test
+    public void paymentLifecycle() throws IOException, URISyntaxException, InvalidRequestException {
+        HttpConfiguration configuration = new HttpConfiguration(createProperties());
+        HttpTransport transport = HttpTransports.create(configuration, new HttpMetrics());
+        Assert.assertTrue(transport instanceof SimulatorHttpTransport);
+        TemplateHttpClient client = new TemplateHttpClient(transport, configuration, new HttpMetrics());
+        String id = initiate(transport);
+
+        TemplatePaymentResponse retrieved = client.retrievePaymentData(createCaptureRequest(id), true);
+        Assert.assertEquals(TemplateCardConstants.STATUS_AUTHORIZED, retrieved.getStatus());
+        Assert.assertEquals("10.00", retrieved.getAmount());
+        TemplatePaymentResponse captured = client.capture(createCaptureRequest(id), true);
+        Assert.assertEquals(TemplateCardConstants.STATUS_SUCCESS, captured.getStatus());
+        Assert.assertNotNull(captured.getFirstCardDetails().getSerial());
+
+        String refunds = PAYMENTS + id + "/refunds/";
+        Assert.assertTrue(send(transport, createPost(refunds, "{\"amount\":\"4.00\",\"capture\":false}")).contains(TemplateCardConstants.STATUS_REFUND_SUCCESS));
+        Assert.assertTrue(send(transport, createPost(refunds, "{\"amount\":\"4.00\",\"capture\":true}")).contains("\"status\":\"SUCCESS\""));
+        Assert.assertTrue(send(transport, createPost(refunds, "{\"amount\":\"8.00\",\"capture\":true}")).contains("MERCHANT_REFUND_EXCEEDS_ORIGINAL_TRANSACTION"));
+        client.getLifecycle().shutdown();
+    }
+
+    @Test
+    public void captureNeedsAuthorizedPayment() throws IOException {
+        Properties properties = createProperties();
+        properties.setProperty(HttpConfiguration.SIMULATOR_OUTCOME_AUTHORIZED, "0");
+        properties.setProperty(HttpConfiguration.SIMULATOR_OUTCOME_EXPIRED, "1");
+        try (HttpTransport transport = new SimulatorHttpTransport(new HttpConfiguration(properties), new HttpMetrics())) {
+            String id = initiate(transport);
+            HttpGet get = new HttpGet(PAYMENTS + id + "/");
+            get.setHeader("Authorization", "Basic Zm9v");
+            Assert.assertTrue(EntityUtils.toString(transport.execute(get).getEntity()).contains(TemplateCardConstants.STATUS_EXPIRED));
+
+            HttpResponse response = transport.execute(createPost(PAYMENTS + id + "/capture/", ""));
+            Assert.assertEquals(409, response.getStatusLine().getStatusCode());
+            Assert.assertEquals("2017", parse(EntityUtils.toString(response.getEntity())).getNumber());
+        }
+    }
+
+    @Test
+    public void errorsUsePartnerNumbers() throws IOException {
+        Properties properties = createProperties();
+        properties.setProperty(HttpConfiguration.SIMULATOR_STRICT, "true");
+        try (HttpTransport transport = new SimulatorHttpTransport(new HttpConfiguration(properties), new HttpMetrics())) {
+            HttpResponse response = transport.execute(new HttpGet(PAYMENTS + "pay_1/"));
+            Assert.assertEquals(401, response.getStatusLine().getStatusCode());
+            Assert.assertEquals("10008", parse(EntityUtils.toString(response.getEntity())).getNumber());
+
+            response = transport.execute(createPost(PAYMENTS + "pay_1/capture/", ""));
+            Assert.assertEquals(404, response.getStatusLine().getStatusCode());
+        }
+
+        properties.setProperty(HttpConfiguration.SIMULATOR_ERROR_RATE, "1");
+        HttpMetrics metrics = new HttpMetrics();
+        try (HttpTransport transport = new SimulatorHttpTransport(new HttpConfiguration(properties), metrics)) {
+            HttpResponse response = transport.execute(createPost(PAYMENTS, "{}"));
+            Assert.assertEquals(500, response.getStatusLine().getStatusCode());
+            Assert.assertEquals("10007", parse(EntityUtils.toString(response.getEntity())).getNumber());
+            Assert.assertEquals(1, metrics.getCount("http.simulator.errors"));
+        }
+    }
+
+    @Test
+    public void latencyIsSimulated() throws IOException {
+        Properties properties = createProperties();
+        properties.setProperty(HttpConfiguration.SIMULATOR_LATENCY_MEDIAN, "50");
+        properties.setProperty(HttpConfiguration.SIMULATOR_LATENCY_P99, "50");
+        try (HttpTransport transport = new SimulatorHttpTransport(new HttpConfiguration(properties), new HttpMetrics())) {
+            long start = System.nanoTime();
+            initiate(transport);
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 45);
+            Assert.assertEquals(201, transport.executeAsync(createPost(PAYMENTS, "{\"amount\":\"1.00\",\"currency\":\"EUR\"}"))
+                    .join().getStatusLine().getStatusCode());
+        }
+    }
+
+    @Test
+    public void productionCallsAreRefused() throws Exception {
+        HttpConfiguration configuration = new HttpConfiguration(createProperties());
+        HttpTransport transport = HttpTransports.create(configuration, new HttpMetrics());
+        TemplateHttpClient client = new TemplateHttpClient(transport, configuration, new HttpMetrics());
+        try {
+            client.capture(createCaptureRequest("pay_1"), false);
+            Assert.fail("a production payment is never simulated by default");
+        } catch (SimulatedProductionException e) {
+            Assert.assertEquals(SimulatedProductionException.ERROR_CODE, e.getErrorCode());
+        }
+        try {
+            transport.executeAsync(new HttpGet("https://api.template.com/v1/payments/pay_1/")).get(1, TimeUnit.SECONDS);
+            Assert.fail("a production payment is never simulated by default");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SimulatedProductionException);
+        }
+        client.getLifecycle().shutdown();
+
+        // the load tests of the production settings ask for it explicitly
+        Properties properties = createProperties();
+        properties.setProperty(HttpConfiguration.SIMULATOR_PRODUCTION, "true");
+        configuration = new HttpConfiguration(properties);
+        client = new TemplateHttpClient(HttpTransports.create(configuration, new HttpMetrics()), configuration, new HttpMetrics());
+        Assert.assertEquals(TemplateCardConstants.STATUS_AUTHORIZED, client.retrievePaymentData(createCaptureRequest("pay_1"), false).getStatus());
+        client.getLifecycle().shutdown();
+    }
+
+    @Test
+    public void loopbackServer() throws IOException, URISyntaxException, InvalidRequestException {
+        Properties properties = createProperties();
+        properties.setProperty(HttpConfiguration.SIMULATOR_MODE, SimulatorHttpTransport.LOOPBACK);
+        HttpConfiguration configuration = new HttpConfiguration(properties);
+        SimulatorHttpTransport transport = new SimulatorHttpTransport(configuration, new HttpMetrics());
+        Assert.assertTrue(transport.getLoopback().getPort() > 0);
+        TemplateHttpClient client = new TemplateHttpClient(transport, configuration, new HttpMetrics());
+
+        TemplatePaymentResponse retrieved = client.retrievePaymentData(createCaptureRequest("pay_1"), true);
+        Assert.assertEquals(TemplateCardConstants.STATUS_AUTHORIZED, retrieved.getStatus());
+        Assert.assertEquals(TemplateCardConstants.STATUS_SUCCESS, client.capture(createCaptureRequest("pay_1"), true).getStatus());
+
+        // the request keeps its partner URI
+        HttpPost post = createPost(PAYMENTS, "{\"amount\":\"1.00\",\"currency\":\"EUR\"}");
+        Assert.assertEquals(201, transport.execute(post).getStatusLine().getStatusCode());
+        Assert.assertEquals(URI.create(PAYMENTS), post.getURI());
+        client.getLifecycle().shutdown();
+    }
+}
@@ -0,0 +1,36 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.TemplateKeepAliveStrategy;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TemplateKeepAliveStrategyTest {
+    private TemplateKeepAliveStrategy strategy = new TemplateKeepAliveStrategy(30000, 60000);
+
+    private static HttpResponse createResponse(String keepAlive) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        if (keepAlive != null) {
+            response.addHeader("Keep-Alive", keepAlive);
+        }
+        return response;
+    }
+
+    @Test
+    public void withoutHeader() {
+        Assert.assertEquals(30000, strategy.getKeepAliveDuration(createResponse(null), new BasicHttpContext()));
+    }
+
+    @Test
+    public void withHeader() {
+        Assert.assertEquals(5000, strategy.getKeepAliveDuration(createResponse("timeout=5"), new BasicHttpContext()));
+    }
+
+    @Test
+    public void withTooLongHeader() {
+        Assert.assertEquals(60000, strategy.getKeepAliveDuration(createResponse("timeout=3600"), new BasicHttpContext()));
+    }
+}
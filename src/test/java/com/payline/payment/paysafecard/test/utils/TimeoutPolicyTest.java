@@ -0,0 +1,93 @@
+package com.payline.payment.template.test.utils;
+
+import com.payline.payment.template.utils.HttpConfiguration;
+import com.payline.payment.template.utils.HttpMetrics;
+import com.payline.payment.template.utils.PartnerOperation;
+import com.payline.payment.template.utils.TimeoutPolicy;
+import org.apache.http.client.config.RequestConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Properties;
+
+public class TimeoutPolicyTest {
+    private HttpMetrics metrics = new HttpMetrics();
+
+    private Properties createProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(HttpConfiguration.TIMEOUT_CONNECT, "1000");
+        properties.setProperty(HttpConfiguration.TIMEOUT_SOCKET, "4000");
+        properties.setProperty(HttpConfiguration.TIMEOUT_SOCKET + ".retrieve", "2000");
+        properties.setProperty(HttpConfiguration.TIMEOUT_SOCKET + ".capture", "8000");
+        return properties;
+    }
+
+    @Test
+    public void profiles() {
+        TimeoutPolicy policy = new TimeoutPolicy(new HttpConfiguration(createProperties()), metrics);
+
+        RequestConfig retrieve = policy.getRequestConfig(PartnerOperation.RETRIEVE);
+        Assert.assertEquals(2000, retrieve.getSocketTimeout());
+        Assert.assertEquals(1000, retrieve.getConnectTimeout());
+        Assert.assertEquals(8000, policy.getRequestConfig(PartnerOperation.CAPTURE).getSocketTimeout());
+        Assert.assertEquals(4000, policy.getRequestConfig(PartnerOperation.CHECK).getSocketTimeout());
+        Assert.assertEquals(2000, metrics.snapshot().get("http.timeout.retrieve.socket"));
+    }
+
+    @Test
+    public void adaptive() {
+        Properties properties = createProperties();
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_ENABLED, "true");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_PERCENTILE, "99");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_FACTOR, "3");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_FLOOR, "500");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_MIN_SAMPLES, "100");
+        TimeoutPolicy policy = new TimeoutPolicy(new HttpConfiguration(properties), metrics);
+
+        for (int i = 0; i < 99; i++) {
+            policy.record(PartnerOperation.RETRIEVE, 300);
+            policy.record(PartnerOperation.CAPTURE, 100);
+            policy.record(PartnerOperation.REFUND, 5000);
+        }
+        // not enough samples yet
+        Assert.assertEquals(2000, policy.getRequestConfig(PartnerOperation.RETRIEVE).getSocketTimeout());
+
+        policy.record(PartnerOperation.RETRIEVE, 300);
+        policy.record(PartnerOperation.CAPTURE, 100);
+        policy.record(PartnerOperation.REFUND, 5000);
+        Assert.assertEquals(900, policy.getRequestConfig(PartnerOperation.RETRIEVE).getSocketTimeout());
+        // floor
+        Assert.assertEquals(500, policy.getRequestConfig(PartnerOperation.CAPTURE).getSocketTimeout());
+        // ceiling, the static timeout of the operation
+        Assert.assertEquals(4000, policy.getRequestConfig(PartnerOperation.REFUND).getSocketTimeout());
+    }
+
+    @Test
+    public void adaptiveFollowsSlowerPartner() {
+        Properties properties = createProperties();
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_ENABLED, "true");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_PERCENTILE, "99");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_FACTOR, "2");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_FLOOR, "100");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_MIN_SAMPLES, "100");
+        properties.setProperty(HttpConfiguration.TIMEOUT_ADAPTIVE_WINDOW, "100");
+        TimeoutPolicy policy = new TimeoutPolicy(new HttpConfiguration(properties), metrics);
+
+        for (int i = 0; i < 100; i++) {
+            policy.record(PartnerOperation.CAPTURE, 200);
+        }
+        int learned = policy.getRequestConfig(PartnerOperation.CAPTURE).getSocketTimeout();
+        Assert.assertEquals(400, learned);
+
+        // the partner now answers in 1 second: every call times out
+        int timeout = learned;
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 50; i++) {
+                policy.recordTimeout(PartnerOperation.CAPTURE, timeout);
+            }
+            timeout = policy.getRequestConfig(PartnerOperation.CAPTURE).getSocketTimeout();
+        }
+        Assert.assertTrue(timeout > 1000);
+        Assert.assertTrue(timeout <= 8000);
+    }
+}